@@ -1,5 +1,6 @@
 package com.cny;
 
+import com.cny.config.RedisShards;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
@@ -7,6 +8,7 @@ import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.zookeeper.ZooKeeper;
 import org.redisson.Redisson;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -15,6 +17,7 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.io.IOException;
+import java.util.List;
 
 @SpringBootApplication
 public class Application {
@@ -33,6 +36,15 @@ public class Application {
         return redisTemplate;
     }
 
+    /**
+     * 幂等 token 的备用 redis（idempotent.fallback-redis，host:port），主 redis 熔断期间在这里发放和校验新 token；未配置时为空
+     */
+    @Bean(destroyMethod = "close")
+    public RedisShards idempotentFallbackRedis(@Value("${idempotent.fallback-redis:}") List<String> addresses,
+                                               @Value("${lock.redis.watchdog-lease:30000}") long leaseMillis) {
+        return new RedisShards(addresses, leaseMillis);
+    }
+
     @Bean(initMethod = "start", destroyMethod = "close")
     public CuratorFramework curatorFramework() {
         RetryPolicy retryPolicy = new ExponentialBackoffRetry(1000, 3);
@@ -0,0 +1,41 @@
+package com.cny.annotation;
+
+import com.cny.lock.LockBackend;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 加上该注解表示方法执行期间持有分布式锁，获取锁失败时抛出 {@link com.cny.lock.LockException}，方法不会执行
+ * <p>
+ * key 为 SpEL 表达式，可以用 #参数名 或 #p0/#a0 引用方法参数，例如 "'order:' + #orderId"；
+ * 表达式只在方法第一次调用时解析并缓存。
+ * 方法返回 {@link java.util.concurrent.CompletionStage} 时异步等待锁，不占用调用线程，持有锁直到返回的 future 完成；
+ * 同一个 key 等待的请求超过上限时以 {@link com.cny.lock.LockRejectedException} 失败
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DistributedLock {
+
+    /**
+     * 锁的 key（SpEL 表达式）
+     */
+    String key();
+
+    /**
+     * 最长等待时间，0 表示只尝试一次
+     */
+    long waitTime() default 0;
+
+    /**
+     * 租约时间，小于等于 0 表示由看门狗/会话维持
+     */
+    long leaseTime() default -1;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    LockBackend backend() default LockBackend.REDIS;
+}
@@ -0,0 +1,201 @@
+package com.cny.aop;
+
+import com.cny.annotation.DistributedLock;
+import com.cny.lock.LockAdmission;
+import com.cny.lock.LockException;
+import com.cny.lock.LockHandle;
+import com.cny.lock.LockProvider;
+import com.cny.lock.LockRejectedException;
+import com.cny.lock.LockUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * @author : chennengyuan
+ * {@link DistributedLock} 注解的切面
+ * <p>
+ * 每个方法第一次调用时解析 key 表达式、参数名并缓存，之后每次调用只有一次 map 查找、一次表达式求值；
+ * 不引用参数的 key 直接缓存求值结果。表达式使用 MIXED 编译模式，多次求值后编译为字节码
+ * <p>
+ * 返回 {@link CompletionStage} 的方法异步加锁：先经过按 key 的准入限制（{@link LockAdmission}，超过上限以
+ * {@link LockRejectedException} 失败），等待锁期间不占用任何线程，获取到锁后在 lockBusinessExecutor 上执行方法，
+ * 方法返回的 future 完成后释放锁。Controller 方法返回 CompletableFuture 时请求线程在加锁前就归还给容器
+ */
+@Slf4j
+@Component
+@Aspect
+public class DistributedLockAspect {
+
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, DistributedLockAspect.class.getClassLoader()));
+
+    private static final ParameterNameDiscoverer PARAMETER_NAMES = new DefaultParameterNameDiscoverer();
+
+    @Autowired
+    private LockProvider lockProvider;
+
+    @Autowired
+    private LockAdmission lockAdmission;
+
+    @Resource(name = "lockBusinessExecutor")
+    private Executor lockBusinessExecutor;
+
+    private final ConcurrentMap<Method, LockKey> keys = new ConcurrentHashMap<>();
+
+    @Around("@annotation(distributedLock)")
+    public Object around(ProceedingJoinPoint joinPoint, DistributedLock distributedLock) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        //JDK8 的 computeIfAbsent 即使 key 已存在也会锁住桶，先 get
+        LockKey lockKey = keys.get(method);
+        if (lockKey == null) {
+            lockKey = keys.computeIfAbsent(method, m -> new LockKey(m, distributedLock.key()));
+        }
+        String key = lockKey.evaluate(joinPoint.getArgs());
+        if (CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+            return aroundAsync(joinPoint, distributedLock, key);
+        }
+
+        LockHandle handle = lockProvider.get(distributedLock.backend())
+                .tryLock(key, distributedLock.waitTime(), distributedLock.leaseTime(), distributedLock.unit());
+        if (handle == null) {
+            throw new LockException("获取分布式锁失败 key=" + key);
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            handle.unlock();
+        }
+    }
+
+    private CompletableFuture<Object> aroundAsync(ProceedingJoinPoint joinPoint, DistributedLock distributedLock, String key) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        if (!lockAdmission.tryEnter(key)) {
+            result.completeExceptionally(new LockRejectedException("等待分布式锁的请求过多 key=" + key));
+            return result;
+        }
+        result.whenComplete((value, e) -> lockAdmission.exit(key));
+        lockProvider.get(distributedLock.backend())
+                .tryLockAsync(key, distributedLock.waitTime(), distributedLock.leaseTime(), distributedLock.unit())
+                .whenComplete((handle, e) -> {
+                    if (unwrap(e) instanceof LockUnavailableException) {
+                        result.completeExceptionally(unwrap(e));
+                    } else if (e != null) {
+                        result.completeExceptionally(new LockException("获取分布式锁失败 key=" + key, unwrap(e)));
+                    } else if (handle == null) {
+                        result.completeExceptionally(new LockException("获取分布式锁失败 key=" + key));
+                    } else {
+                        //加锁回调可能在 Zookeeper 事件线程、Redisson 的 IO 线程上，业务方法切换到业务线程池执行
+                        try {
+                            lockBusinessExecutor.execute(() -> proceedAsync(joinPoint, handle, result));
+                        } catch (Exception ex) {
+                            release(handle);
+                            result.completeExceptionally(ex);
+                        }
+                    }
+                });
+        return result;
+    }
+
+    private void proceedAsync(ProceedingJoinPoint joinPoint, LockHandle handle, CompletableFuture<Object> result) {
+        CompletionStage<?> stage;
+        try {
+            stage = (CompletionStage<?>) joinPoint.proceed();
+        } catch (Throwable e) {
+            release(handle);
+            result.completeExceptionally(e);
+            return;
+        }
+        if (stage == null) {
+            release(handle);
+            result.complete(null);
+            return;
+        }
+        stage.whenComplete((value, e) -> {
+            release(handle);
+            if (e != null) {
+                result.completeExceptionally(unwrap(e));
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private static void release(LockHandle handle) {
+        try {
+            handle.unlock();
+        } catch (Exception e) {
+            log.error("释放分布式锁失败 key={}：{}", handle.getKey(), e.getMessage());
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * 一个方法解析好的 key 表达式和参数名
+     */
+    private static class LockKey {
+
+        private final Expression expression;
+
+        /**
+         * 每个参数可用的变量名：参数名、p{i}、a{i}
+         */
+        private final String[][] variableNames;
+
+        /**
+         * 不引用参数的 key 的求值结果
+         */
+        private final String constant;
+
+        LockKey(Method method, String key) {
+            this.expression = PARSER.parseExpression(key);
+            String[] names = PARAMETER_NAMES.getParameterNames(method);
+            this.variableNames = new String[method.getParameterCount()][];
+            for (int i = 0; i < variableNames.length; i++) {
+                variableNames[i] = names != null ? new String[]{names[i], "p" + i, "a" + i} : new String[]{"p" + i, "a" + i};
+            }
+            this.constant = key.contains("#") ? null : String.valueOf(expression.getValue(context()));
+        }
+
+        String evaluate(Object[] args) {
+            if (constant != null) {
+                return constant;
+            }
+            EvaluationContext context = context();
+            for (int i = 0; i < args.length; i++) {
+                for (String name : variableNames[i]) {
+                    context.setVariable(name, args[i]);
+                }
+            }
+            return String.valueOf(expression.getValue(context));
+        }
+
+        private static EvaluationContext context() {
+            return SimpleEvaluationContext.forReadOnlyDataBinding().build();
+        }
+    }
+}
@@ -1,88 +1,117 @@
 package com.cny.aop;
 
+import com.cny.service.IdempotentResponse;
+import com.cny.service.IdempotentTokenService;
+import com.cny.service.TokenConsumeResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.locks.InterProcessMutex;
-import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.Signature;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
-import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
-import org.springframework.web.context.request.ServletWebRequest;
-import org.springframework.web.servlet.mvc.condition.RequestConditionHolder;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.PrintWriter;
-import java.util.concurrent.TimeUnit;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 
 /**
  * @author : chennengyuan
+ * 接口幂等：第一次提交执行方法并保存状态码和 JSON 序列化的返回值，重复提交不执行方法，回放第一次的结果
+ * （第一次仍在执行时等待其完成），回放的响应带 Idempotent-Replayed 头
+ * <p>
+ * 状态码取自返回的 {@link ResponseEntity}（只保存状态码和 body，响应头不回放）或方法上的 {@link ResponseStatus}，
+ * 都没有时为 200；方法执行时响应还没有写出，不能从 HttpServletResponse 读取
  */
 @Slf4j
 @Component
 @Aspect
 public class IdempotentAspect {
 
+    static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
     @Autowired
-    private RedisTemplate redisTemplate;
+    private IdempotentTokenService tokenService;
+
     @Autowired
-    private CuratorFramework client;
+    private ObjectMapper objectMapper;
 
     @Pointcut("@annotation(com.cny.annotation.Idempotent)")
     public void point(){}
 
-    @Before("point()")
-    public void before(JoinPoint joinPoint) throws Exception {
-        Signature signature = joinPoint.getSignature();
-        Object target = joinPoint.getTarget();
-        Object[] args = joinPoint.getArgs();
-        String name = signature.getName();
-
+    @Around("point()")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
         ServletRequestAttributes requestAttributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
         HttpServletRequest request= requestAttributes.getRequest();
         HttpServletResponse response = requestAttributes.getResponse();
 
-        String addressTokenKey = "USER_ADDRESS_TOKEN_" + request.getSession().getId();
-        String addressLockKey = "/USER_ADDRESS_LOCK" + request.getSession().getId();
+        String sessionId = request.getSession().getId();
         String token = request.getParameter("token");
 
-        InterProcessMutex lock = new InterProcessMutex(client, addressLockKey);
-        try {
-            if (lock.acquire(60, TimeUnit.SECONDS)) {
-                //1.获取到redis中保存的key
-                String addressTokenInRedis = (String) redisTemplate.opsForValue().get(addressTokenKey);
-                if (StringUtils.isEmpty(addressTokenInRedis) || !addressTokenInRedis.equals(token)) {
-                    throw new Exception("token有误");
-                }
-
-                //3.删除redis中的token
-                redisTemplate.delete(addressTokenKey);
-
-            }
-
-            //joinPoint.proceed();
+        //校验并删除redis中的token，一次原子操作
+        TokenConsumeResult result = tokenService.consumeToken(sessionId, token);
+        if (result.isDuplicate()) {
+            return replay(joinPoint, sessionId, token, response);
+        }
+        if (!result.isConsumed()) {
+            log.error("校验token出现异常：{}", "token有误");
+            throw new Exception("token有误");
+        }
 
-        } catch (Exception e) {
-            log.error("校验token出现异常：{}", e.getMessage());
-            throw new Exception(e.getMessage());
+        Object value;
+        try {
+            value = joinPoint.proceed();
         } catch (Throwable e) {
-            throw new RuntimeException(e);
-        } finally {
-            try {
-                lock.release();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            tokenService.abandon(sessionId, token);
+            throw e;
         }
+        try {
+            tokenService.complete(sessionId, token, toResponse(joinPoint, value));
+        } catch (Exception e) {
+            //业务已经执行成功，保存结果失败时重复提交等执行中标记过期后按 token 不存在处理
+            log.error("保存幂等结果失败 token={}：{}", token, e.getMessage());
+        }
+        return value;
+    }
+
+    private Object replay(ProceedingJoinPoint joinPoint, String sessionId, String token, HttpServletResponse response) throws Exception {
+        IdempotentResponse replayed = tokenService.awaitResponse(sessionId, token);
+        if (replayed == null) {
+            log.error("校验token出现异常：{}", "token已使用，第一次提交执行失败或未在等待时间内完成");
+            throw new Exception("token有误");
+        }
+        log.info("重复提交，回放第一次的结果 token={}", token);
+        if (response != null) {
+            response.setStatus(replayed.getStatus());
+            response.setHeader(REPLAYED_HEADER, "true");
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        if (ResponseEntity.class.isAssignableFrom(method.getReturnType())) {
+            Type bodyType = ResolvableType.forMethodReturnType(method).as(ResponseEntity.class).getGeneric(0).getType();
+            return ResponseEntity.status(replayed.getStatus())
+                    .body(objectMapper.readValue(replayed.getBody(), objectMapper.constructType(bodyType)));
+        }
+        return objectMapper.readValue(replayed.getBody(), objectMapper.constructType(method.getGenericReturnType()));
     }
 
+    private IdempotentResponse toResponse(ProceedingJoinPoint joinPoint, Object value) throws Exception {
+        if (value instanceof ResponseEntity) {
+            ResponseEntity<?> entity = (ResponseEntity<?>) value;
+            return new IdempotentResponse(entity.getStatusCodeValue(), objectMapper.writeValueAsString(entity.getBody()));
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(method, ResponseStatus.class);
+        int status = responseStatus == null ? HttpStatus.OK.value() : responseStatus.code().value();
+        return new IdempotentResponse(status, objectMapper.writeValueAsString(value));
+    }
 }
@@ -0,0 +1,387 @@
+package com.cny.config;
+
+import com.cny.lock.CombiningLockExecutor;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.DistributedReadWriteLock;
+import com.cny.lock.DistributedSemaphore;
+import com.cny.lock.LockAdmission;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockProvider;
+import com.cny.lock.ReentrantDistributedLock;
+import com.cny.lock.ShardedDistributedLock;
+import com.cny.lock.TwoTierDistributedLock;
+import com.cny.lock.health.BackendHealthProbe;
+import com.cny.lock.health.CircuitBreakingDistributedLock;
+import com.cny.lock.health.LockBackendHealth;
+import com.cny.lock.metrics.HotKeySketch;
+import com.cny.lock.metrics.InstrumentedDistributedLock;
+import com.cny.lock.metrics.InstrumentedReadWriteLock;
+import com.cny.lock.metrics.KeyClassifier;
+import com.cny.lock.metrics.LockHotKeysEndpoint;
+import com.cny.lock.metrics.LockMetrics;
+import com.cny.lock.redis.AdaptiveBackoff;
+import com.cny.lock.redis.RedisDistributedLock;
+import com.cny.lock.redis.RedisDistributedSemaphore;
+import com.cny.lock.redis.RedisLeaseWatchdog;
+import com.cny.lock.redis.RedisLockNotifier;
+import com.cny.lock.redis.RedisReadWriteLock;
+import com.cny.lock.redis.RedlockDistributedLock;
+import com.cny.lock.redisson.RedissonDistributedLock;
+import com.cny.lock.redisson.RedissonDistributedSemaphore;
+import com.cny.lock.redisson.RedissonReadWriteLock;
+import com.cny.lock.zookeeper.CuratorDistributedLock;
+import com.cny.lock.zookeeper.CuratorDistributedSemaphore;
+import com.cny.lock.zookeeper.CuratorReadWriteLock;
+import com.cny.lock.zookeeper.ZkLockPathReaper;
+import com.cny.lock.zookeeper.ZkSessionManager;
+import com.cny.lock.zookeeper.ZooKeeperDistributedLock;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.curator.framework.CuratorFramework;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * @author : chennengyuan
+ * 各后端分布式锁实现的装配
+ */
+@Configuration
+public class LockConfig {
+
+    /**
+     * 异步加锁的超时、重试调度线程，所有后端共用
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService lockScheduler(@Value("${lock.async.threads:2}") int threads) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-scheduler-");
+        threadFactory.setDaemon(true);
+        return Executors.newScheduledThreadPool(threads, threadFactory);
+    }
+
+    /**
+     * 异步加锁的接口获取到锁后执行业务方法的线程池，与容器线程池隔离
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService lockBusinessExecutor(@Value("${lock.async.business-threads:16}") int threads) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-business-");
+        threadFactory.setDaemon(true);
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    @Bean
+    public LockAdmission lockAdmission(@Value("${lock.async.max-queued-per-key:50}") int maxPerKey) {
+        return new LockAdmission(maxPerKey);
+    }
+
+    @Bean
+    public RedisLockNotifier redisLockNotifier() {
+        return new RedisLockNotifier();
+    }
+
+    /**
+     * 订阅锁释放频道的监听容器，整个 JVM 只占用一个订阅连接
+     */
+    @Bean
+    public RedisMessageListenerContainer lockReleaseListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                      RedisLockNotifier redisLockNotifier) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(redisLockNotifier, RedisLockNotifier.TOPIC);
+        return container;
+    }
+
+    @Bean(destroyMethod = "close")
+    public RedisLeaseWatchdog redisLeaseWatchdog(@Qualifier("myRedisTemplate") RedisTemplate<String, String> redisTemplate,
+                                                 @Value("${lock.redis.watchdog-lease:30000}") long leaseMillis) {
+        return new RedisLeaseWatchdog(redisTemplate, leaseMillis);
+    }
+
+    @Bean(destroyMethod = "close")
+    public RedisShards redisShards(@Value("${lock.redis.shards:}") List<String> addresses,
+                                   @Value("${lock.redis.watchdog-lease:30000}") long leaseMillis) {
+        return new RedisShards(addresses, leaseMillis);
+    }
+
+    @Bean
+    public AdaptiveBackoff redisLockBackoff(@Value("${lock.redis.backoff.spin-threshold-micros:500}") long spinThresholdMicros,
+                                            @Value("${lock.redis.backoff.spin-attempts:3}") int spinAttempts,
+                                            @Value("${lock.redis.backoff.base:5}") long baseMillis,
+                                            @Value("${lock.redis.backoff.cap:1000}") long capMillis,
+                                            @Value("${lock.redis.backoff.max-keys:10000}") int maxKeys) {
+        return new AdaptiveBackoff(spinThresholdMicros, spinAttempts, baseMillis, capMillis, maxKeys);
+    }
+
+    /**
+     * 配置了 lock.redis.shards 时按一致性哈希把 key 分散到各分片，否则使用单节点
+     */
+    @Bean
+    public DistributedLock redisDistributedLock(@Qualifier("myRedisTemplate") RedisTemplate<String, String> redisTemplate,
+                                                RedisLeaseWatchdog redisLeaseWatchdog,
+                                                RedisLockNotifier redisLockNotifier,
+                                                ScheduledExecutorService lockScheduler,
+                                                AdaptiveBackoff redisLockBackoff,
+                                                @Qualifier("redisShards") RedisShards redisShards,
+                                                @Value("${lock.redis.fair:true}") boolean fair,
+                                                @Value("${lock.redis.queue-entry-timeout:5000}") long queueEntryTimeout,
+                                                @Value("${lock.redis.virtual-nodes:160}") int virtualNodes) {
+        if (redisShards.isEmpty()) {
+            return new RedisDistributedLock(redisTemplate, redisLeaseWatchdog, redisLockNotifier, lockScheduler, fair, queueEntryTimeout,
+                    redisLockBackoff);
+        }
+        return new ShardedDistributedLock(redisShards.ring(shard -> new RedisDistributedLock(shard.getRedisTemplate(),
+                shard.getWatchdog(), shard.getNotifier(), lockScheduler, fair, queueEntryTimeout, redisLockBackoff), virtualNodes));
+    }
+
+    /**
+     * Redlock 使用的独立 Redis 节点，配置了 lock.redlock.nodes 时才启用 REDLOCK 后端
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "lock.redlock", name = "nodes")
+    public RedisShards redlockNodes(@Value("${lock.redlock.nodes}") List<String> addresses,
+                                    @Value("${lock.redis.watchdog-lease:30000}") long leaseMillis) {
+        return new RedisShards(addresses, leaseMillis);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "lock.redlock", name = "nodes")
+    public RedlockDistributedLock redlockDistributedLock(@Qualifier("redlockNodes") RedisShards redlockNodes,
+                                                         ScheduledExecutorService lockScheduler,
+                                                         @Value("${lock.redlock.lease:30000}") long leaseMillis,
+                                                         @Value("${lock.redlock.node-timeout:50}") long nodeTimeoutMillis,
+                                                         @Value("${lock.redlock.retry-delay:100}") long retryDelayMillis,
+                                                         @Value("${lock.redlock.io-threads:16}") int ioThreads) {
+        List<RedisTemplate<String, String>> nodes = redlockNodes.getShards().stream()
+                .map(RedisShards.Shard::getRedisTemplate)
+                .collect(Collectors.toList());
+        return new RedlockDistributedLock(nodes, lockScheduler, leaseMillis, nodeTimeoutMillis, retryDelayMillis, ioThreads);
+    }
+
+    @Bean
+    public RedisReadWriteLock redisReadWriteLock(@Qualifier("myRedisTemplate") RedisTemplate<String, String> redisTemplate,
+                                                 RedisLeaseWatchdog redisLeaseWatchdog,
+                                                 RedisLockNotifier redisLockNotifier,
+                                                 ScheduledExecutorService lockScheduler,
+                                                 @Value("${lock.redis.queue-entry-timeout:5000}") long writerWaitingMillis) {
+        return new RedisReadWriteLock(redisTemplate, redisLeaseWatchdog, redisLockNotifier, lockScheduler, writerWaitingMillis);
+    }
+
+    @Bean
+    public RedisDistributedSemaphore redisDistributedSemaphore(@Qualifier("myRedisTemplate") RedisTemplate<String, String> redisTemplate,
+                                                               RedisLeaseWatchdog redisLeaseWatchdog,
+                                                               RedisLockNotifier redisLockNotifier) {
+        return new RedisDistributedSemaphore(redisTemplate, redisLeaseWatchdog, redisLockNotifier);
+    }
+
+    @Bean
+    public DistributedLock redissonDistributedLock(RedissonClient redissonClient, @Qualifier("redisShards") RedisShards redisShards,
+                                                   @Value("${lock.redis.virtual-nodes:160}") int virtualNodes) {
+        if (redisShards.isEmpty()) {
+            return new RedissonDistributedLock(redissonClient);
+        }
+        return new ShardedDistributedLock(redisShards.ring(shard -> new RedissonDistributedLock(shard.getRedissonClient()), virtualNodes));
+    }
+
+    @Bean
+    public RedissonReadWriteLock redissonReadWriteLock(RedissonClient redissonClient) {
+        return new RedissonReadWriteLock(redissonClient);
+    }
+
+    @Bean
+    public RedissonDistributedSemaphore redissonDistributedSemaphore(RedissonClient redissonClient, ScheduledExecutorService lockScheduler) {
+        return new RedissonDistributedSemaphore(redissonClient, lockScheduler);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ZkLockPathReaper curatorLockPathReaper(CuratorFramework curatorFramework,
+                                                  @Value("${lock.zookeeper.reaper.idle:60000}") long idleMillis,
+                                                  @Value("${lock.zookeeper.reaper.interval:10000}") long intervalMillis,
+                                                  @Value("${lock.zookeeper.reaper.max-deletes-per-run:100}") int maxDeletesPerRun) {
+        return new ZkLockPathReaper(CuratorDistributedLock.pathDeleter(curatorFramework), idleMillis, intervalMillis, maxDeletesPerRun);
+    }
+
+    @Bean
+    public CuratorDistributedLock curatorDistributedLock(CuratorFramework curatorFramework, ScheduledExecutorService lockScheduler,
+                                                         ZkLockPathReaper curatorLockPathReaper) {
+        return new CuratorDistributedLock(curatorFramework, lockScheduler, curatorLockPathReaper);
+    }
+
+    @Bean
+    public CuratorReadWriteLock curatorReadWriteLock(CuratorFramework curatorFramework, ScheduledExecutorService lockScheduler,
+                                                     ZkLockPathReaper curatorLockPathReaper) {
+        return new CuratorReadWriteLock(curatorFramework, lockScheduler, curatorLockPathReaper);
+    }
+
+    @Bean
+    public CuratorDistributedSemaphore curatorDistributedSemaphore(CuratorFramework curatorFramework) {
+        return new CuratorDistributedSemaphore(curatorFramework);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ZkSessionManager zkSessionManager(@Value("${lock.zookeeper.connect-string}") String connectString,
+                                             @Value("${lock.zookeeper.session-timeout:30000}") int sessionTimeout,
+                                             @Value("${lock.zookeeper.session-pool-size:1}") int poolSize) throws IOException {
+        return new ZkSessionManager(connectString, sessionTimeout, poolSize);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ZkLockPathReaper zkLockPathReaper(ZkSessionManager zkSessionManager,
+                                             @Value("${lock.zookeeper.reaper.idle:60000}") long idleMillis,
+                                             @Value("${lock.zookeeper.reaper.interval:10000}") long intervalMillis,
+                                             @Value("${lock.zookeeper.reaper.max-deletes-per-run:100}") int maxDeletesPerRun) {
+        return new ZkLockPathReaper(ZooKeeperDistributedLock.pathDeleter(zkSessionManager), idleMillis, intervalMillis, maxDeletesPerRun);
+    }
+
+    @Bean
+    public ZooKeeperDistributedLock zooKeeperDistributedLock(ZkSessionManager zkSessionManager, ScheduledExecutorService lockScheduler,
+                                                             ZkLockPathReaper zkLockPathReaper) {
+        return new ZooKeeperDistributedLock(zkSessionManager, lockScheduler, zkLockPathReaper);
+    }
+
+    /**
+     * 存活的锁路径数量：lock.zookeeper.paths{backend=curator|zookeeper}
+     */
+    @Bean
+    public MeterBinder lockPathMetrics(ZkLockPathReaper curatorLockPathReaper, ZkLockPathReaper zkLockPathReaper) {
+        return registry -> {
+            Gauge.builder("lock.zookeeper.paths", curatorLockPathReaper, ZkLockPathReaper::size)
+                    .tag("backend", LockBackend.CURATOR.name().toLowerCase())
+                    .description("未清理的 Curator 锁父节点数量")
+                    .register(registry);
+            Gauge.builder("lock.zookeeper.paths", zkLockPathReaper, ZkLockPathReaper::size)
+                    .tag("backend", LockBackend.ZOOKEEPER.name().toLowerCase())
+                    .description("未清理的原生 Zookeeper 锁根节点数量")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public HotKeySketch lockHotKeySketch(@Value("${lock.metrics.hot-keys.capacity:1024}") int capacity,
+                                         @Value("${lock.metrics.hot-keys.stripes:16}") int stripes) {
+        return new HotKeySketch(capacity, stripes);
+    }
+
+    @Bean
+    public LockMetrics lockMetrics(MeterRegistry meterRegistry, HotKeySketch lockHotKeySketch,
+                                   @Value("${lock.metrics.max-key-classes:200}") int maxKeyClasses) {
+        return new LockMetrics(meterRegistry, new KeyClassifier(maxKeyClasses), lockHotKeySketch);
+    }
+
+    @Bean
+    public LockHotKeysEndpoint lockHotKeysEndpoint(HotKeySketch lockHotKeySketch) {
+        return new LockHotKeysEndpoint(lockHotKeySketch);
+    }
+
+    /**
+     * 同一个 key 的短临界区在本地排队，一次获取远程锁后合并执行一批
+     */
+    @Bean
+    public CombiningLockExecutor combiningLockExecutor(LockProvider lockProvider,
+                                                       @Value("${lock.combining.backend:REDIS}") LockBackend backend,
+                                                       @Value("${lock.combining.wait:5000}") long waitMillis,
+                                                       @Value("${lock.combining.max-batch:64}") int maxBatch,
+                                                       @Value("${lock.combining.threads:4}") int threads) {
+        return new CombiningLockExecutor(lockProvider.get(backend), waitMillis, maxBatch, threads);
+    }
+
+    @Bean
+    public LockBackendHealth lockBackendHealth(@Value("${lock.health.p99-threshold:1000}") long p99ThresholdMillis,
+                                               @Value("${lock.health.error-rate-threshold:0.5}") double errorRateThreshold,
+                                               @Value("${lock.health.min-samples:5}") int minSamples,
+                                               @Value("${lock.health.window:10000}") long windowMillis,
+                                               @Value("${lock.health.open-duration:10000}") long openMillis,
+                                               @Value("${lock.health.trial-successes:3}") int trialSuccesses) {
+        return new LockBackendHealth(p99ThresholdMillis, errorRateThreshold, minSamples, windowMillis, openMillis, trialSuccesses);
+    }
+
+    /**
+     * 各后端的健康探测：Redis 系列 PING（配置了分片时每个分片都要通），Redlock 多数节点 PING 通，Zookeeper 系列 exists("/")
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "lock.health", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public BackendHealthProbe backendHealthProbe(@Qualifier("myRedisTemplate") RedisTemplate<String, String> redisTemplate,
+                                                 @Qualifier("redisShards") RedisShards redisShards,
+                                                 @Qualifier("redlockNodes") Optional<RedisShards> redlockNodes,
+                                                 RedissonClient redissonClient, CuratorFramework curatorFramework,
+                                                 ZkSessionManager zkSessionManager, LockBackendHealth lockBackendHealth,
+                                                 ScheduledExecutorService lockScheduler,
+                                                 @Value("${lock.health.probe-interval:1000}") long intervalMillis,
+                                                 @Value("${lock.health.probe-timeout:2000}") long timeoutMillis) {
+        List<RedisTemplate<String, String>> redisNodes = redisShards.isEmpty() ? Collections.singletonList(redisTemplate)
+                : redisShards.getShards().stream().map(RedisShards.Shard::getRedisTemplate).collect(Collectors.toList());
+        List<RedissonClient> redissonNodes = redisShards.isEmpty() ? Collections.singletonList(redissonClient)
+                : redisShards.getShards().stream().map(RedisShards.Shard::getRedissonClient).collect(Collectors.toList());
+        Map<LockBackend, BackendHealthProbe.Ping> pings = new EnumMap<>(LockBackend.class);
+        pings.put(LockBackend.REDIS, () -> redisNodes.forEach(RedisShards::ping));
+        pings.put(LockBackend.REDISSON, () -> {
+            for (RedissonClient client : redissonNodes) {
+                if (!client.getNodesGroup().pingAll()) {
+                    throw new IllegalStateException("Redisson 节点 PING 失败");
+                }
+            }
+        });
+        pings.put(LockBackend.CURATOR, () -> curatorFramework.checkExists().forPath("/"));
+        pings.put(LockBackend.ZOOKEEPER, () -> zkSessionManager.session("/").exists("/", false));
+        redlockNodes.ifPresent(nodes -> pings.put(LockBackend.REDLOCK, () -> {
+            int alive = 0;
+            for (RedisShards.Shard node : nodes.getShards()) {
+                try {
+                    RedisShards.ping(node.getRedisTemplate());
+                    alive++;
+                } catch (RuntimeException e) {
+                    //单个节点不通不影响 Redlock，多数派不通才算失败
+                }
+            }
+            if (alive <= nodes.getShards().size() / 2) {
+                throw new IllegalStateException("Redlock 多数节点 PING 失败");
+            }
+        }));
+        return new BackendHealthProbe(pings, lockBackendHealth, lockScheduler, intervalMillis, timeoutMillis);
+    }
+
+    /**
+     * 对外提供的锁统一入口，lock.local.enabled 开启时每个后端前面加一层 JVM 本地锁，
+     * lock.metrics.enabled 开启时记录等待、持有时间等指标，lock.health.enabled 开启时后端熔断后快速失败，
+     * lock.reentrant.enabled 开启时最外层处理同一线程的重入；读写锁不加本地锁层（本地锁是互斥的）
+     */
+    @Bean
+    public LockProvider lockProvider(List<DistributedLock> locks, List<DistributedReadWriteLock> readWriteLocks,
+                                     List<DistributedSemaphore> semaphores, LockMetrics lockMetrics,
+                                     LockBackendHealth lockBackendHealth,
+                                     @Value("${lock.local.enabled:true}") boolean localEnabled,
+                                     @Value("${lock.local.hold-across-waiters:true}") boolean holdAcrossWaiters,
+                                     @Value("${lock.local.max-handoffs:16}") int maxHandoffs,
+                                     @Value("${lock.metrics.enabled:true}") boolean metricsEnabled,
+                                     @Value("${lock.health.enabled:true}") boolean healthEnabled,
+                                     @Value("${lock.reentrant.enabled:true}") boolean reentrantEnabled) {
+        return new LockProvider(locks.stream()
+                .map(lock -> localEnabled ? new TwoTierDistributedLock(lock, holdAcrossWaiters, maxHandoffs) : lock)
+                .map(lock -> metricsEnabled ? new InstrumentedDistributedLock(lock, lockMetrics) : lock)
+                .map(lock -> healthEnabled ? new CircuitBreakingDistributedLock(lock, lockBackendHealth.get(lock.backend())) : lock)
+                .map(lock -> reentrantEnabled ? new ReentrantDistributedLock(lock) : lock)
+                .collect(Collectors.toList()),
+                readWriteLocks.stream()
+                        .map(lock -> metricsEnabled ? new InstrumentedReadWriteLock(lock, lockMetrics) : lock)
+                        .collect(Collectors.toList()),
+                semaphores);
+    }
+}
@@ -1,22 +0,0 @@
-package com.cny.config;
-
-import com.cny.inteceptor.IdempotentInteceptor;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-
-/**
- * @author : chennengyuan
- */
-@Configuration
-public class MyWebMvcConfig implements WebMvcConfigurer {
-
-    @Autowired
-    private IdempotentInteceptor idempotentInteceptor;
-
-    @Override
-    public void addInterceptors(InterceptorRegistry registry) {
-        //registry.addInterceptor(idempotentInteceptor).addPathPatterns("/**");
-    }
-}
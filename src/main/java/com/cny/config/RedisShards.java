@@ -0,0 +1,180 @@
+package com.cny.config;
+
+import com.cny.lock.ConsistentHashRing;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.redis.RedisLeaseWatchdog;
+import com.cny.lock.redis.RedisLockNotifier;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * @author : chennengyuan
+ * 一组独立的 Redis 节点（host:port 逗号分隔），每个节点有自己的连接，看门狗、释放通知订阅和 Redisson 客户端在第一次使用时创建
+ * <p>
+ * 用于锁分片（lock.redis.shards，没有配置分片时为空，锁仍然使用 spring.redis 和 Application 中的单节点客户端）
+ * 和 Redlock（lock.redlock.nodes）。分片只作用于 REDIS / REDISSON 的互斥锁，读写锁和信号量始终使用单节点客户端
+ */
+@Slf4j
+public class RedisShards implements AutoCloseable {
+
+    private final List<Shard> shards = new ArrayList<>();
+
+    public RedisShards(List<String> addresses, long watchdogLeaseMillis) {
+        try {
+            for (String address : addresses) {
+                if (!address.trim().isEmpty()) {
+                    shards.add(new Shard(address.trim(), watchdogLeaseMillis));
+                }
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public boolean isEmpty() {
+        return shards.isEmpty();
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * 为每个分片创建锁实现，按节点地址组成一致性哈希环
+     */
+    public ConsistentHashRing<DistributedLock> ring(Function<Shard, DistributedLock> lockFactory, int virtualNodes) {
+        Map<String, DistributedLock> locks = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            locks.put(shard.address, lockFactory.apply(shard));
+        }
+        return new ConsistentHashRing<>(locks, virtualNodes);
+    }
+
+    /**
+     * 对节点执行一次 PING，不通时抛出异常
+     */
+    public static void ping(RedisTemplate<String, String> redisTemplate) {
+        String pong = redisTemplate.execute(RedisConnection::ping, true);
+        if (!"PONG".equalsIgnoreCase(pong)) {
+            throw new IllegalStateException("Redis PING 返回 " + pong);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            try {
+                shard.close();
+            } catch (Exception e) {
+                log.error("关闭锁分片失败 address={}：{}", shard.address, e.getMessage());
+            }
+        }
+    }
+
+    @Getter
+    public static class Shard {
+
+        private final String address;
+
+        private final RedisTemplate<String, String> redisTemplate;
+
+        @Getter(lombok.AccessLevel.NONE)
+        private final long watchdogLeaseMillis;
+
+        @Getter(lombok.AccessLevel.NONE)
+        private final LettuceConnectionFactory connectionFactory;
+
+        @Getter(lombok.AccessLevel.NONE)
+        private RedisLeaseWatchdog watchdog;
+
+        @Getter(lombok.AccessLevel.NONE)
+        private RedisLockNotifier notifier;
+
+        @Getter(lombok.AccessLevel.NONE)
+        private RedisMessageListenerContainer listenerContainer;
+
+        @Getter(lombok.AccessLevel.NONE)
+        private RedissonClient redissonClient;
+
+        Shard(String address, long watchdogLeaseMillis) {
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("锁分片地址格式应为 host:port：" + address);
+            }
+            this.address = address;
+            this.watchdogLeaseMillis = watchdogLeaseMillis;
+            this.connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                    address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+            connectionFactory.afterPropertiesSet();
+
+            this.redisTemplate = new RedisTemplate<>();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            redisTemplate.setKeySerializer(new StringRedisSerializer());
+            redisTemplate.setValueSerializer(new StringRedisSerializer());
+            redisTemplate.afterPropertiesSet();
+            //提前建立连接，避免第一次加锁时建连超过 Redlock 的单节点超时；节点暂时不可用不影响启动
+            try {
+                connectionFactory.getConnection().close();
+            } catch (Exception e) {
+                log.warn("连接 Redis 节点失败 address={}：{}", address, e.getMessage());
+            }
+        }
+
+        public synchronized RedisLeaseWatchdog getWatchdog() {
+            if (watchdog == null) {
+                watchdog = new RedisLeaseWatchdog(redisTemplate, watchdogLeaseMillis);
+            }
+            return watchdog;
+        }
+
+        public synchronized RedisLockNotifier getNotifier() {
+            if (notifier == null) {
+                notifier = new RedisLockNotifier();
+                listenerContainer = new RedisMessageListenerContainer();
+                listenerContainer.setConnectionFactory(connectionFactory);
+                listenerContainer.addMessageListener(notifier, RedisLockNotifier.TOPIC);
+                listenerContainer.afterPropertiesSet();
+                listenerContainer.start();
+            }
+            return notifier;
+        }
+
+        public synchronized RedissonClient getRedissonClient() {
+            if (redissonClient == null) {
+                Config config = new Config();
+                config.useSingleServer().setAddress("redis://" + address);
+                redissonClient = Redisson.create(config);
+            }
+            return redissonClient;
+        }
+
+        synchronized void close() throws Exception {
+            if (redissonClient != null) {
+                redissonClient.shutdown();
+            }
+            if (listenerContainer != null) {
+                listenerContainer.destroy();
+            }
+            if (watchdog != null) {
+                watchdog.close();
+            }
+            connectionFactory.destroy();
+        }
+    }
+}
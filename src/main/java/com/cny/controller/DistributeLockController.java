@@ -1,25 +1,34 @@
 package com.cny.controller;
 
+import com.cny.annotation.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockException;
+import com.cny.lock.LockProvider;
+import com.cny.lock.LockRejectedException;
+import com.cny.lock.LockUnavailableException;
+import com.cny.lock.PermitHandle;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.locks.InterProcessMutex;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
-import java.util.Collections;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @author : chennengyuan
  * 分布式锁的实现 （Redis、Zookeeper）
+ * <p>
+ * 加锁的接口返回 CompletableFuture：等待锁期间不占用容器线程，同一个 key 等待的请求过多时直接返回 429，
+ * 获取到锁后业务逻辑在独立的业务线程池上执行，热点 key 的突发请求不会耗尽容器线程池拖垮其他接口。
+ * 示例中耗时的业务（调用慢下游）用 lockScheduler 定时完成 future 模拟，持有锁期间不占用业务线程
  */
 @Slf4j
 @RestController
@@ -27,22 +36,13 @@ import java.util.concurrent.TimeUnit;
 public class DistributeLockController {
 
     /**
-     * SpringDataRedis 客户端
-     */
-    @Resource(name = "myRedisTemplate")
-    private RedisTemplate<String, String> redisTemplate;
-
-    /**
-     * Redission 客户端
+     * 分布式锁统一入口，按后端获取对应实现（加锁由 @DistributedLock 切面完成，这里只用于信号量）
      */
     @Autowired
-    private RedissonClient redissonClient;
+    private LockProvider lockProvider;
 
-    /**
-     * Zookeeper 客户端
-     */
-    @Autowired
-    private CuratorFramework zookeeperClient;
+    @Resource(name = "lockScheduler")
+    private ScheduledExecutorService lockScheduler;
 
     /**
      * 基于Zookeeper的客户端Curator实现分布式锁
@@ -50,30 +50,11 @@ public class DistributeLockController {
      * @return
      */
     @GetMapping("/curatorLock")
-    public String curatorLock() {
-        InterProcessMutex lock = new InterProcessMutex(zookeeperClient, "/user");
-        try {
-            if (lock.acquire(6, TimeUnit.SECONDS)) {
-                log.info("获取到锁成功 - {}", Thread.currentThread().getName());
-                try {
-                    log.info("开始执行具体的业务逻辑处理 - {}", Thread.currentThread().getName());
-                    Thread.sleep(12000);
-                    log.info("业务逻辑处理完毕，准备释放锁 - {}", Thread.currentThread().getName());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                return "success";
-            }
-        } catch (Exception e) {
-
-        } finally {
-            try {
-                lock.release();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        return "fail";
+    @DistributedLock(key = "'/user'", waitTime = 6, backend = LockBackend.CURATOR)
+    public CompletableFuture<String> curatorLock() {
+        log.info("获取到锁成功 - {}", Thread.currentThread().getName());
+        log.info("开始执行具体的业务逻辑处理 - {}", Thread.currentThread().getName());
+        return simulateWork(12000, "业务逻辑处理完毕，准备释放锁", "success");
     }
 
 
@@ -83,84 +64,99 @@ public class DistributeLockController {
      * @return
      */
     @RequestMapping("/zkLock")
-    public String zkLock() {
-        try (ZkDistirbuteLock lock = new ZkDistirbuteLock()) {
-            if (lock.lock("order")) {
-                log.info("获取锁成功 - {}", Thread.currentThread().getName());
-                log.info("开始处理业务逻辑 - {}", Thread.currentThread().getName());
-                Thread.sleep(30000);
-                log.info("结束处理业务逻辑 - {}", Thread.currentThread().getName());
-            }
-        } catch (Exception e) {
-            log.error(e.getMessage());
-        }
-        return "success";
+    @DistributedLock(key = "'order'", waitTime = 60, backend = LockBackend.ZOOKEEPER)
+    public CompletableFuture<String> zkLock() {
+        log.info("获取锁成功 - {}", Thread.currentThread().getName());
+        log.info("开始处理业务逻辑 - {}", Thread.currentThread().getName());
+        return simulateWork(30000, "结束处理业务逻辑", "success");
     }
 
     /**
-     * 基于 Redisson 实现分布式锁
+     * 基于 Redisson 实现分布式锁，未指定租约时间由看门狗续期
      *
      * @return
      */
     @RequestMapping("/redissonLock")
-    public String redissonLock() {
-        //获取到锁对象
-        RLock lock = redissonClient.getLock("6666");
-
-        try {
-            //尝试获取锁
-            lock.lock();
-            log.info("获取到锁成功 - {}", Thread.currentThread().getId());
-            log.info("处理业务逻辑中..... - {}", Thread.currentThread().getId());
-            Thread.sleep(10000);
-            log.info("业务逻辑处理完成 - {}", Thread.currentThread().getId());
-            return "SUCCESS";
-        } catch (Exception e) {
-            e.getStackTrace();
-        } finally {
-            //释放锁
-            lock.unlock();
-            log.info("释放锁成功 - {}", Thread.currentThread().getId());
-        }
-        return "FAIL";
+    @DistributedLock(key = "'6666'", waitTime = 60, backend = LockBackend.REDISSON)
+    public CompletableFuture<String> redissonLock() {
+        log.info("获取到锁成功 - {}", Thread.currentThread().getId());
+        log.info("处理业务逻辑中..... - {}", Thread.currentThread().getId());
+        return simulateWork(10000, "业务逻辑处理完成", "SUCCESS");
     }
 
 
     /**
-     * 基于 RedisTemplate 实现分布式锁
+     * 基于 RedisTemplate 实现分布式锁，最多排队等待30秒，被唤醒时不需要客户端重试，短租约由看门狗续期
      *
      * @return
      */
     @RequestMapping("/redisLock")
-    public String redisLock() {
-        //生成一个UUID作为value值
-        String key = "6666";
-        String value = UUID.randomUUID().toString();
-
-        //尝试获取到分布式锁
-        Boolean result = redisTemplate.opsForValue().setIfAbsent(key, value, 3000, TimeUnit.SECONDS);
-
-        //根据获取的结果做处理
-        if (Boolean.TRUE.equals(result)) {
-            log.info("获取锁成功 - {}", Thread.currentThread().getName());
-            try {
-                log.info("开始处理业务逻辑 - {}", Thread.currentThread().getName());
-                Thread.sleep(12000);
-                log.info("结束处理业务逻辑 - {}", Thread.currentThread().getName());
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            } finally {
-                String script = "if redis.call(\"get\",KEYS[1]) == ARGV[1] then\n" +
-                        " return redis.call(\"del\",KEYS[1])\n" +
-                        "else\n" +
-                        " return 0\n" +
-                        "end";
-                Boolean executeResult = redisTemplate.execute(RedisScript.of(script, Boolean.class), Collections.singletonList(key), value);
-                log.info("解锁结果为:{} - {}", executeResult, Thread.currentThread().getName());
+    @DistributedLock(key = "'6666'", waitTime = 30)
+    public CompletableFuture<String> redisLock() {
+        log.info("获取锁成功 - {}", Thread.currentThread().getName());
+        log.info("开始处理业务逻辑 - {}", Thread.currentThread().getName());
+        return simulateWork(12000, "结束处理业务逻辑", "SUCCESS");
+    }
+
+    /**
+     * 等待同一把锁的请求过多，请求被拒绝，客户端稍后重试
+     */
+    @ExceptionHandler(LockRejectedException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public String lockRejected(LockRejectedException e) {
+        log.info("请求被拒绝 - {}：{}", Thread.currentThread().getName(), e.getMessage());
+        return "BUSY";
+    }
+
+    /**
+     * 锁后端熔断中，请求快速失败，客户端稍后重试
+     */
+    @ExceptionHandler(LockUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public String lockUnavailable(LockUnavailableException e) {
+        log.info("锁后端不可用 - {}：{}", Thread.currentThread().getName(), e.getMessage());
+        return "UNAVAILABLE";
+    }
+
+    /**
+     * 获取锁失败（等待超时或后端异常）
+     */
+    @ExceptionHandler(LockException.class)
+    public String lockFailed(LockException e) {
+        log.info("获取锁失败 - {}：{}", Thread.currentThread().getName(), e.getMessage());
+        return "FAIL";
+    }
+
+    /**
+     * 基于分布式信号量限制全集群调用慢下游的并发数，最多 5 个请求同时执行
+     *
+     * @return
+     */
+    @GetMapping("/semaphore")
+    public CompletableFuture<String> semaphore(@RequestParam(defaultValue = "REDIS") LockBackend backend) {
+        try {
+            PermitHandle permit = lockProvider.getSemaphore(backend).tryAcquire("downstream", 1, 5, 30, -1, TimeUnit.SECONDS);
+            if (permit != null) {
+                log.info("获取许可成功 - {}", Thread.currentThread().getName());
+                //许可不绑定线程，下游调用完成后在调度线程上归还
+                return simulateWork(10000, "调用下游完成，归还许可", "SUCCESS").whenComplete((result, e) -> permit.release());
             }
-            return "SUCCESS";
+        } catch (Exception e) {
+            log.error(e.getMessage());
         }
-        log.info("获取锁失败 - {}", Thread.currentThread().getName());
-        return "FAIL";
+        log.info("获取许可失败 - {}", Thread.currentThread().getName());
+        return CompletableFuture.completedFuture("FAIL");
+    }
+
+    /**
+     * 模拟耗时 millis 毫秒的业务，到期后在调度线程上完成 future
+     */
+    private CompletableFuture<String> simulateWork(long millis, String message, String result) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        lockScheduler.schedule(() -> {
+            log.info(message + " - {}", Thread.currentThread().getName());
+            future.complete(result);
+        }, millis, TimeUnit.MILLISECONDS);
+        return future;
     }
 }
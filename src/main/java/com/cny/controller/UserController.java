@@ -1,20 +1,23 @@
 package com.cny.controller;
 
 import com.cny.annotation.Idempotent;
+import com.cny.lock.LockUnavailableException;
+import com.cny.service.IdempotentResponse;
+import com.cny.service.IdempotentTokenService;
+import com.cny.service.TokenConsumeResult;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.locks.InterProcessMutex;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.util.StringUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
-import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 /**
  * @author : chennengyuan
@@ -26,10 +29,7 @@ import java.util.concurrent.TimeUnit;
 public class UserController {
 
     @Autowired
-    private RedisTemplate redisTemplate;
-
-    @Autowired
-    private CuratorFramework client;
+    private IdempotentTokenService tokenService;
 
     /**
      * 获取token，保存到redis中
@@ -39,9 +39,19 @@ public class UserController {
      */
     @GetMapping("/getToken")
     public String getToken(HttpServletRequest request) {
-        String token = UUID.randomUUID().toString();
-        redisTemplate.opsForValue().set("USER_ADDRESS_TOKEN_" + request.getSession().getId(), token, 30, TimeUnit.MINUTES);
-        return token;
+        return tokenService.issueToken(request.getSession().getId());
+    }
+
+    /**
+     * 一次获取多个token（一次 redis 往返），供同时打开多个表单或高频调用的客户端使用
+     *
+     * @param count 数量，不超过 idempotent.token.max-batch
+     * @param request
+     * @return
+     */
+    @GetMapping("/getTokens")
+    public List<String> getTokens(@RequestParam(defaultValue = "1") int count, HttpServletRequest request) {
+        return tokenService.issueTokens(request.getSession().getId(), count);
     }
 
     /**
@@ -54,41 +64,48 @@ public class UserController {
      */
     @PostMapping("/createAddress")
     public String createAddress(String token, String address, HttpServletRequest request) throws Exception {
-        String addressTokenKey = "USER_ADDRESS_TOKEN_" + request.getSession().getId();
-        String addressLockKey = "/USER_ADDRESS_LOCK" + request.getSession().getId();
+        String sessionId = request.getSession().getId();
+        //1.校验并删除redis中的token，一次原子操作，并发的重复请求只有一个能通过；
+        //redis 熔断时抛出 LockUnavailableException，由 unavailable 返回 503，客户端携带同一个 token 重试
+        TokenConsumeResult result = tokenService.consumeToken(sessionId, token);
+        if (result.isDuplicate()) {
+            //重复提交：回放第一次的结果，第一次还在执行时等待它完成
+            IdempotentResponse replayed = tokenService.awaitResponse(sessionId, token);
+            if (replayed == null) {
+                log.error("创建用户地址出现异常：addressToken 已使用，第一次提交执行失败或未完成");
+                return "faild";
+            }
+            log.info("重复提交，回放第一次的结果");
+            return replayed.getBody();
+        }
+        if (!result.isConsumed()) {
+            log.error("创建用户地址出现异常：addressToken {}", result == TokenConsumeResult.MISSING ? "不存在" : "不匹配");
+            return "faild";
+        }
 
-        InterProcessMutex lock = new InterProcessMutex(client, addressLockKey);
         try {
-            if (lock.acquire(60, TimeUnit.SECONDS)) {
-                //1.获取到redis中保存的key
-                String addressTokenInRedis = (String) redisTemplate.opsForValue().get(addressTokenKey);
-                if (StringUtils.isEmpty(addressTokenInRedis)) {
-                    throw new Exception("addressToken 不存在");
-                }
-                if (!addressTokenInRedis.equals(token)) {
-                    throw new Exception("addressToken 不匹配");
-                }
-
-                //2.处理具体业务逻辑
-                log.info("模拟业务逻辑处理 保存地址信息成功 success");
-
-                //3.删除redis中的token
-                redisTemplate.delete(addressTokenKey);
-
-                return "success";
-            }
+            //2.处理具体业务逻辑
+            log.info("模拟业务逻辑处理 保存地址信息成功 success");
         } catch (Exception e) {
             log.error("创建用户地址出现异常：{}", e.getMessage());
-        } finally {
-            lock.release();
+            //第一次执行失败，等待中的重复提交不再回放
+            tokenService.abandon(sessionId, token);
+            return "faild";
         }
 
-        return "faild";
+        //3.保存结果，之后的重复提交直接回放
+        try {
+            tokenService.complete(sessionId, token, new IdempotentResponse(200, "success"));
+        } catch (Exception e) {
+            //业务已经执行成功，保存结果失败时重复提交等执行中标记过期后按 token 不存在处理
+            log.error("保存幂等结果失败 token={}：{}", token, e.getMessage());
+        }
+        return "success";
     }
 
 
     /**
-     * 基于Aop或拦截器实现接口幂等性
+     * 基于Aop实现接口幂等性，重复提交回放第一次的结果
      *
      * @param address
      * @return
@@ -101,5 +118,22 @@ public class UserController {
         return "success";
     }
 
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String badRequest(IllegalArgumentException e) {
+        log.info("请求参数有误：{}", e.getMessage());
+        return e.getMessage();
+    }
+
+    /**
+     * redis 熔断中，幂等校验快速失败，客户端稍后携带同一个 token 重试
+     */
+    @ExceptionHandler(LockUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public String unavailable(LockUnavailableException e) {
+        log.info("幂等校验失败：{}", e.getMessage());
+        return "UNAVAILABLE";
+    }
+
 
 }
@@ -2,86 +2,238 @@ package com.cny.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
+import org.apache.zookeeper.KeeperException.Code;
 
-import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author : chennengyuan
+ * 基于临时顺序节点的原生 Zookeeper 锁，复用外部传入的共享会话，close 时只删除自己的节点不关闭会话
+ * <p>
+ * 加锁过程全部基于异步回调（创建节点 -> 获取子节点 -> 监听上一个节点），等待期间不占用线程。
+ * 根节点使用容器节点，最后一个子节点删除后由服务端自动清理；服务端不支持时退回持久节点，由 ZkLockPathReaper 清理
  */
 @Slf4j
-public class ZkDistirbuteLock implements Watcher, AutoCloseable {
+public class ZkDistirbuteLock implements AutoCloseable {
 
-    private ZooKeeper zooKeeper;
+    /**
+     * 服务端不支持容器节点时退回持久节点，只探测一次
+     */
+    private static volatile boolean containerSupported = true;
 
-    private String znode;
+    private final ZooKeeper zooKeeper;
 
-    public ZkDistirbuteLock() throws IOException {
-        this.zooKeeper = new ZooKeeper("192.168.247.5:2181", 630000, this);
+    private final AtomicReference<String> znode = new AtomicReference<>();
+
+    private final CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+
+    private String rootNode;
+
+    private String self;
+
+    /**
+     * 自己节点的创建事务 id（czxid），全局单调递增，作为 fencing token
+     */
+    private volatile long fencingToken = -1L;
+
+    /**
+     * 只尝试一次：不是第一个节点时直接放弃，不监听等待
+     */
+    private boolean tryOnce;
+
+    public ZkDistirbuteLock(ZooKeeper zooKeeper) {
+        this.zooKeeper = zooKeeper;
     }
 
     //上锁
     public boolean lock(String businessCode) {
+        return lock(businessCode, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    //在等待时间内上锁，超时则删除自己创建的节点并返回 false
+    public boolean lock(String businessCode, long waitTime, TimeUnit unit) {
         try {
-            //1.创建业务根节点
-            Stat rootNodeStat = zooKeeper.exists("/" + businessCode, false);
-            if (rootNodeStat == null) {
-                zooKeeper.create("/" + businessCode, businessCode.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            if (waitTime <= 0) {
+                return lockAsync(businessCode, true).get();
+            }
+            return lockAsync(businessCode).get(waitTime, unit);
+        } catch (TimeoutException e) {
+            log.info("等待锁超时 - {}", Thread.currentThread().getName());
+            return !abandon();
+        } catch (InterruptedException e) {
+            abandon();
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            log.info(e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 异步上锁，获取到锁时完成为 true，调用 {@link #abandon()} 放弃等待时完成为 false
+     */
+    public CompletableFuture<Boolean> lockAsync(String businessCode) {
+        return lockAsync(businessCode, false);
+    }
+
+    /**
+     * @param tryOnce 为 true 时不是第一个节点直接完成为 false
+     */
+    public CompletableFuture<Boolean> lockAsync(String businessCode, boolean tryOnce) {
+        this.tryOnce = tryOnce;
+        rootNode = "/" + businessCode;
+        createNode(businessCode);
+        return acquired;
+    }
+
+    /**
+     * 放弃等待并删除自己的节点
+     *
+     * @return 放弃成功返回 true，已经获取到锁时返回 false
+     */
+    public boolean abandon() {
+        if (acquired.complete(false)) {
+            deleteNodeAsync();
+            return true;
+        }
+        return acquired.isCompletedExceptionally() || !acquired.getNow(false);
+    }
+
+    /**
+     * 获取到锁后可用，根节点被删除重建后依然单调递增（顺序节点编号会从头开始）
+     */
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    //1.根据根节点创建下面的临时顺序节点，根节点不存在时先创建根节点
+    private void createNode(String businessCode) {
+        zooKeeper.create(rootNode + "/" + businessCode, businessCode.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL,
+                (rc, path, ctx, name, stat) -> {
+                    Code code = Code.get(rc);
+                    if (code == Code.NONODE) {
+                        createRootNode(businessCode);
+                        return;
+                    }
+                    if (code != Code.OK) {
+                        fail(code, path);
+                        return;
+                    }
+                    fencingToken = stat.getCzxid();
+                    znode.set(name);
+                    self = name.substring(rootNode.length() + 1);
+                    checkChildren();
+                }, null);
+    }
+
+    private void createRootNode(String businessCode) {
+        CreateMode mode = containerSupported ? CreateMode.CONTAINER : CreateMode.PERSISTENT;
+        zooKeeper.create(rootNode, businessCode.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, mode,
+                (rc, path, ctx, name) -> {
+                    Code code = Code.get(rc);
+                    //其他客户端并发创建根节点，忽略
+                    if (code == Code.OK || code == Code.NODEEXISTS) {
+                        createNode(businessCode);
+                    } else if (code == Code.UNIMPLEMENTED && mode == CreateMode.CONTAINER) {
+                        log.warn("Zookeeper 服务端不支持容器节点，锁根节点退回持久节点");
+                        containerSupported = false;
+                        createRootNode(businessCode);
+                    } else {
+                        fail(code, path);
+                    }
+                }, null);
+    }
+
+    //2.判断是否为第一个节点，不是则监听上一个节点，上一个节点删除后重新检查（上一个节点可能是中途放弃等待的节点）
+    private void checkChildren() {
+        if (acquired.isDone()) {
+            //已放弃等待
+            deleteNodeAsync();
+            return;
+        }
+        zooKeeper.getChildren(rootNode, false, (rc, path, ctx, children) -> {
+            Code code = Code.get(rc);
+            if (code != Code.OK) {
+                fail(code, path);
+                return;
             }
-            //2.根据根节点创建下面的临时顺序节点
-            znode = zooKeeper.create("/" + businessCode + "/" + businessCode, businessCode.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
-            //2.1判断是否为第一个节点
-            List<String> children = zooKeeper.getChildren("/" + businessCode, false);
             Collections.sort(children);
-            String firstNode = children.get(0);
-            if (znode.endsWith(firstNode)) {
-                log.info("为当前第一个顺序节点，获取到锁成功 - {}", Thread.currentThread().getName());
-                return true;
+            int index = children.indexOf(self);
+            if (index < 0) {
+                fail(Code.NONODE, znode.get());
+                return;
             }
-            //2.2不是第一个节点 监听上一个节点 进入阻塞等待
-            String preNode = firstNode;
-            for (int i = 0; i < children.size(); i++) {
-                if (znode.endsWith(children.get(i))) {
-                    zooKeeper.exists("/" + businessCode + "/" + preNode, true);
-                    break;
-                } else {
-                    preNode = children.get(i);
-                }
+            if (index == 0) {
+                grant();
+                return;
             }
-            log.info("不是当前第一个子节点，进入监听等待的状态 - {}", Thread.currentThread().getName());
-            synchronized (this) {
-                wait();
+            if (tryOnce) {
+                abandon();
+                return;
             }
+            watchPreNode(rootNode + "/" + children.get(index - 1));
+        }, null);
+    }
 
-            //当被唤醒的时候，当前客户端创建的节点就是第一个节点
-            log.info("前一个节点已经删除，当前节点变为第一个节点，获取锁成功 - {}", Thread.currentThread().getName());
-            return true;
+    private void watchPreNode(String preNode) {
+        Watcher watcher = event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
+                checkChildren();
+            } else if (event.getState() == Watcher.Event.KeeperState.Expired) {
+                fail(Code.SESSIONEXPIRED, preNode);
+            }
+        };
+        zooKeeper.exists(preNode, watcher, (rc, path, ctx, stat) -> {
+            Code code = Code.get(rc);
+            if (code == Code.NONODE) {
+                checkChildren();
+            } else if (code != Code.OK) {
+                fail(code, path);
+            }
+        }, null);
+    }
 
-        } catch (Exception e) {
-            log.info(e.getMessage());
-            return false;
+    private void grant() {
+        if (acquired.complete(true)) {
+            log.info("为当前第一个顺序节点，获取到锁成功 - {}", znode.get());
+        } else {
+            deleteNodeAsync();
         }
-
     }
 
-    @Override
-    public void process(WatchedEvent watchedEvent) {
-        if (watchedEvent.getType() == Event.EventType.NodeDeleted) {
-            synchronized (this) {
-                notify();
-            }
+    private void fail(Code code, String path) {
+        if (acquired.completeExceptionally(KeeperException.create(code, path))) {
+            deleteNodeAsync();
         }
+    }
 
+    private void deleteNodeAsync() {
+        String node = znode.getAndSet(null);
+        if (node != null) {
+            zooKeeper.delete(node, -1, (rc, path, ctx) -> {
+            }, null);
+        }
     }
 
     @Override
     public void close() throws Exception {
-        zooKeeper.delete(znode, -1);
-        zooKeeper.close();
-        log.info("删除锁 - {}", Thread.currentThread().getName());
+        acquired.complete(false);
+        String node = znode.getAndSet(null);
+        if (node == null) {
+            return;
+        }
+        try {
+            zooKeeper.delete(node, -1);
+        } catch (KeeperException.NoNodeException e) {
+            //节点已随会话过期被删除
+        }
+        log.info("删除锁 - {}", node);
     }
 }
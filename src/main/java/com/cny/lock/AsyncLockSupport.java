@@ -0,0 +1,52 @@
+package com.cny.lock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 异步加锁的公共工具：等待超时调度、同步等待异步结果
+ */
+public final class AsyncLockSupport {
+
+    /**
+     * 超过该等待时间视为无限等待，不注册超时任务
+     */
+    private static final long UNBOUNDED_WAIT_NANOS = Long.MAX_VALUE / 2;
+
+    private AsyncLockSupport() {
+    }
+
+    /**
+     * 在等待时间到达时执行 onTimeout（通常是放弃等待并清理），future 先完成则取消超时任务
+     */
+    public static void scheduleTimeout(CompletableFuture<?> future, long waitTime, TimeUnit unit,
+                                       ScheduledExecutorService scheduler, Runnable onTimeout) {
+        if (unit.toNanos(waitTime) >= UNBOUNDED_WAIT_NANOS) {
+            return;
+        }
+        ScheduledFuture<?> timeout = scheduler.schedule(onTimeout, waitTime, unit);
+        future.whenComplete((result, e) -> timeout.cancel(false));
+    }
+
+    /**
+     * 同步等待异步加锁结果；等待线程被中断时执行 onInterrupt 放弃加锁
+     */
+    public static <T> T await(CompletableFuture<T> future, Runnable onInterrupt) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            onInterrupt.run();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
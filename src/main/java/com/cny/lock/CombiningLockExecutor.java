@@ -0,0 +1,182 @@
+package com.cny.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author : chennengyuan
+ * 合并执行（flat combining）：在分布式锁保护下执行提交的任务，同一个 key 的任务在本地排队，
+ * 由一个合并线程获取一次远程锁后连续执行一批任务再释放，结果通过各自的 future 返回
+ * <p>
+ * 临界区很短而同一个 key 的请求很多时，远程加锁、解锁的往返比任务本身贵得多，合并后一次远程加锁分摊到一批任务上。
+ * 同一批任务共用一个锁句柄（也就共用同一个 fencing token），按提交顺序串行执行；每批最多 maxBatch 个任务，
+ * 执行完释放锁让其他节点有机会获取，本地还有任务时再次竞争。获取锁超时或失败时当时排队的任务都以 {@link LockException} 失败。
+ * 合并线程在等待远程锁期间被占用，线程数决定了最多同时有多少个 key 在合并执行
+ */
+@Slf4j
+public class CombiningLockExecutor implements AutoCloseable {
+
+    private final DistributedLock lock;
+
+    private final long waitMillis;
+
+    private final int maxBatch;
+
+    private final ExecutorService executor;
+
+    private final ConcurrentMap<String, Combiner> combiners = new ConcurrentHashMap<>();
+
+    /**
+     * @param waitMillis 每次获取远程锁的最长等待时间（毫秒）
+     * @param maxBatch   一次持有远程锁最多执行的任务数
+     * @param threads    合并线程数
+     */
+    public CombiningLockExecutor(DistributedLock lock, long waitMillis, int maxBatch, int threads) {
+        this.lock = lock;
+        this.waitMillis = waitMillis;
+        this.maxBatch = maxBatch;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-combiner-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    /**
+     * 提交一个需要在 key 的锁保护下执行的任务
+     *
+     * @return 任务的结果；任务抛出的异常、获取锁失败的 {@link LockException} 通过 future 返回
+     */
+    public <T> CompletableFuture<T> submit(String key, Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        combiners.computeIfAbsent(key, Combiner::new).offer(new Pending<>(task, future));
+        return future;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在锁保护下执行的任务
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+
+        /**
+         * @param handle 本批任务共用的锁句柄，不要在任务中释放
+         */
+        T call(LockHandle handle) throws Exception;
+    }
+
+    /**
+     * 一个 key 的本地任务队列和合并线程状态
+     * <p>
+     * 队列排空后从 combiners 中移除；移除前拿到它的提交者仍然可以提交，会重新调度它执行，
+     * 这时同一个 key 短暂存在两个合并者，它们之间由远程锁互斥
+     */
+    private class Combiner implements Runnable {
+
+        private final String key;
+
+        private final Queue<Pending<?>> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger wip = new AtomicInteger();
+
+        Combiner(String key) {
+            this.key = key;
+        }
+
+        void offer(Pending<?> pending) {
+            queue.offer(pending);
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                while (!queue.isEmpty()) {
+                    combine();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+            combiners.remove(key, this);
+        }
+
+        /**
+         * 一次远程锁的持有期内执行一批任务
+         */
+        private void combine() {
+            LockHandle handle;
+            try {
+                handle = lock.tryLock(key, waitMillis, -1, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failQueued(new LockException("合并执行时获取锁被中断 key=" + key, e));
+                return;
+            } catch (Exception e) {
+                failQueued(new LockException("合并执行时获取锁失败 key=" + key, e));
+                return;
+            }
+            if (handle == null) {
+                failQueued(new LockException("合并执行时获取锁超时 key=" + key));
+                return;
+            }
+            try {
+                Pending<?> pending;
+                for (int i = 0; i < maxBatch && (pending = queue.poll()) != null; i++) {
+                    pending.run(handle);
+                }
+            } finally {
+                try {
+                    handle.unlock();
+                } catch (Exception e) {
+                    log.error("合并执行后释放锁失败 key={}：{}", key, e.getMessage());
+                }
+            }
+        }
+
+        private void failQueued(LockException e) {
+            Pending<?> pending;
+            while ((pending = queue.poll()) != null) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Pending<T> {
+
+        private final Task<T> task;
+
+        private final CompletableFuture<T> future;
+
+        Pending(Task<T> task, CompletableFuture<T> future) {
+            this.task = task;
+            this.future = future;
+        }
+
+        void run(LockHandle handle) {
+            //提交者已经取消的任务不再执行
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.call(handle));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.cny.lock;
+
+import java.util.List;
+
+/**
+ * @author : chennengyuan
+ * 多个 key 的锁句柄，释放时按加锁的逆序逐个释放
+ */
+public class CompositeLockHandle extends LockHandle {
+
+    private final List<LockHandle> handles;
+
+    public CompositeLockHandle(DistributedLock lock, List<LockHandle> handles) {
+        super(lock, joinKeys(handles), handles, NO_FENCING_TOKEN);
+        this.handles = handles;
+    }
+
+    public List<LockHandle> getHandles() {
+        return handles;
+    }
+
+    @Override
+    public long getFencingToken(String key) {
+        for (LockHandle handle : handles) {
+            if (handle.getKey().equals(key)) {
+                return handle.getFencingToken();
+            }
+        }
+        return NO_FENCING_TOKEN;
+    }
+
+    @Override
+    protected void release() {
+        MultiLockSupport.releaseAll(handles);
+    }
+
+    private static String joinKeys(List<LockHandle> handles) {
+        StringBuilder keys = new StringBuilder();
+        for (LockHandle handle : handles) {
+            if (keys.length() > 0) {
+                keys.append(',');
+            }
+            keys.append(handle.getKey());
+        }
+        return keys.toString();
+    }
+}
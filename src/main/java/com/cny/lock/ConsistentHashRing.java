@@ -0,0 +1,64 @@
+package com.cny.lock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author : chennengyuan
+ * 带虚拟节点的一致性哈希环，按 key 选择分片
+ * <p>
+ * 每个节点按名称生成 virtualNodes 个虚拟节点均匀分布在环上，key 落到顺时针方向的第一个虚拟节点。
+ * 虚拟节点的位置只取决于节点名称，与配置顺序无关：增加或删除一个节点时只有该节点负责的约 1/N 的 key 会迁移
+ */
+public class ConsistentHashRing<T> {
+
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    private final List<T> nodes;
+
+    /**
+     * @param nodes        节点名称（如 host:port）到节点的映射
+     * @param virtualNodes 每个节点的虚拟节点数量，越多分布越均匀
+     */
+    public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("一致性哈希环至少需要一个节点");
+        }
+        for (Map.Entry<String, T> node : nodes.entrySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node.getKey() + "#" + i), node.getValue());
+            }
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes.values()));
+    }
+
+    public T get(String key) {
+        Map.Entry<Long, T> node = ring.ceilingEntry(hash(key));
+        return node != null ? node.getValue() : ring.firstEntry().getValue();
+    }
+
+    public List<T> nodes() {
+        return nodes;
+    }
+
+    /**
+     * FNV-1a 再经过 murmur3 的 fmix64 打散，相近的 key（如 order:1、order:2）也会均匀分布
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,58 @@
+package com.cny.lock;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 分布式锁统一抽象，每种后端（Redis、Redisson、Curator、原生Zookeeper）提供一个实现
+ */
+public interface DistributedLock {
+
+    /**
+     * @return 当前实现对应的后端类型
+     */
+    LockBackend backend();
+
+    /**
+     * 尝试获取锁
+     *
+     * @param key       锁的业务key
+     * @param waitTime  最长等待时间，0 表示只尝试一次
+     * @param leaseTime 锁的租约时间，小于等于 0 表示使用后端默认值（Zookeeper 系列后端由会话保证，忽略该参数）
+     * @param unit      时间单位
+     * @return 获取成功返回锁句柄，超时未获取到返回 null
+     */
+    LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception;
+
+    /**
+     * 异步获取锁，等待期间不占用调用线程，由 Zookeeper 监听回调、Redisson 异步接口、Redis 发布订阅驱动
+     *
+     * @return 获取成功时完成为锁句柄，超时未获取到时完成为 null
+     */
+    CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit);
+
+    /**
+     * 同时获取多个 key 的锁，全部成功或全部失败；key 按固定顺序加锁，不同调用之间不会死锁
+     *
+     * @return 获取成功返回包含所有 key 的锁句柄，超时返回 null
+     */
+    default LockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        return MultiLockSupport.tryLockAll(this, keys, waitTime, leaseTime, unit);
+    }
+
+    /**
+     * 释放锁
+     *
+     * @param handle tryLock 返回的锁句柄
+     */
+    void unlock(LockHandle handle);
+
+    /**
+     * @return 锁句柄是否只能由加锁的线程释放
+     */
+    default boolean isThreadBound() {
+        return false;
+    }
+}
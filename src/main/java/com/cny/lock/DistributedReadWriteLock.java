@@ -0,0 +1,20 @@
+package com.cny.lock;
+
+/**
+ * @author : chennengyuan
+ * 分布式读写锁：同一个 key 的读锁之间可以并发持有，写锁与其他任何锁互斥
+ * <p>
+ * 读锁和写锁分别以 {@link DistributedLock} 的形式提供，同步、异步、多 key 加锁和锁句柄的用法与互斥锁一致；
+ * 读写锁与同名 key 的互斥锁相互独立
+ */
+public interface DistributedReadWriteLock {
+
+    /**
+     * @return 当前实现对应的后端类型
+     */
+    LockBackend backend();
+
+    DistributedLock readLock();
+
+    DistributedLock writeLock();
+}
@@ -0,0 +1,46 @@
+package com.cny.lock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 分布式信号量：同一个 key 最多 maxPermits 个许可同时被持有，用于限制全集群对慢下游的并发数
+ * <p>
+ * 许可带租约，持有者宕机后许可在租约到期（Zookeeper 系列后端为会话失效）后自动归还
+ */
+public interface DistributedSemaphore {
+
+    /**
+     * @return 当前实现对应的后端类型
+     */
+    LockBackend backend();
+
+    /**
+     * 尝试获取许可
+     *
+     * @param key        信号量的业务key
+     * @param permits    本次获取的许可数量
+     * @param maxPermits 该 key 的许可总数，同一个 key 的所有调用方应使用相同的值
+     * @param waitTime   最长等待时间，0 表示只尝试一次
+     * @param leaseTime  许可的租约时间，小于等于 0 表示由后端续期直到释放（Zookeeper 系列后端由会话保证，忽略该参数）
+     * @param unit       时间单位
+     * @return 获取成功返回许可句柄，超时未获取到返回 null
+     */
+    PermitHandle tryAcquire(String key, int permits, int maxPermits, long waitTime, long leaseTime, TimeUnit unit) throws Exception;
+
+    /**
+     * 归还许可
+     *
+     * @param handle tryAcquire 返回的许可句柄
+     */
+    void release(PermitHandle handle);
+
+    /**
+     * 校验许可数量，超过许可总数的请求永远不可能成功
+     */
+    static void checkPermits(int permits, int maxPermits) {
+        if (permits <= 0 || permits > maxPermits) {
+            throw new IllegalArgumentException("许可数量必须在 1 和许可总数 " + maxPermits + " 之间：" + permits);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.cny.lock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author : chennengyuan
+ * 按 key 限制同时等待、持有同一把锁的请求数
+ * <p>
+ * 热点 key 上的请求即使异步等待也会占用内存、后端的等待队列和客户端的超时，超过上限的请求直接拒绝，
+ * 比排在长队末尾等到超时更早失败，调用方可以稍后重试
+ */
+public class LockAdmission {
+
+    private final int maxPerKey;
+
+    private final ConcurrentMap<String, Integer> admitted = new ConcurrentHashMap<>();
+
+    public LockAdmission(int maxPerKey) {
+        this.maxPerKey = maxPerKey;
+    }
+
+    /**
+     * @return 是否准入，准入后必须调用 {@link #exit(String)}
+     */
+    public boolean tryEnter(String key) {
+        boolean[] entered = new boolean[1];
+        admitted.compute(key, (k, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxPerKey) {
+                return count;
+            }
+            entered[0] = true;
+            return current + 1;
+        });
+        return entered[0];
+    }
+
+    public void exit(String key) {
+        admitted.computeIfPresent(key, (k, count) -> count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * @return key 当前准入的请求数
+     */
+    public int admitted(String key) {
+        return admitted.getOrDefault(key, 0);
+    }
+}
@@ -0,0 +1,33 @@
+package com.cny.lock;
+
+/**
+ * @author : chennengyuan
+ * 分布式锁的后端实现类型
+ */
+public enum LockBackend {
+
+    /**
+     * 基于 RedisTemplate (SET NX PX + Lua 解锁)
+     */
+    REDIS,
+
+    /**
+     * 基于 Redisson RLock
+     */
+    REDISSON,
+
+    /**
+     * 基于 Curator InterProcessMutex
+     */
+    CURATOR,
+
+    /**
+     * 基于原生 Zookeeper 临时顺序节点
+     */
+    ZOOKEEPER,
+
+    /**
+     * 基于多个独立 Redis 节点的 Redlock 多数派加锁
+     */
+    REDLOCK
+}
@@ -0,0 +1,16 @@
+package com.cny.lock;
+
+/**
+ * @author : chennengyuan
+ * 分布式锁操作异常（释放锁失败、后端不可用等）
+ */
+public class LockException extends RuntimeException {
+
+    public LockException(String message) {
+        super(message);
+    }
+
+    public LockException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
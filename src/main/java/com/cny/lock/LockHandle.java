@@ -0,0 +1,88 @@
+package com.cny.lock;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author : chennengyuan
+ * 获取锁成功后返回的句柄，持有释放锁所需的后端资源，可配合 try-with-resources 使用
+ * <p>
+ * 每次加锁成功都会附带一个按 key 单调递增的 fencing token，下游写入时只接受不小于已见过的 token，
+ * 这样租约过期后仍在执行的旧持有者不会覆盖新持有者的结果
+ */
+@Getter
+public class LockHandle implements AutoCloseable {
+
+    /**
+     * 没有 fencing token（多 key 句柄本身），各个 key 的 token 见 {@link #getFencingToken(String)}
+     */
+    public static final long NO_FENCING_TOKEN = -1L;
+
+    private final String key;
+
+    private final LockBackend backend;
+
+    /**
+     * 后端相关的持有者信息（Redis 的 value、RLock、InterProcessMutex、znode 等）
+     */
+    private final Object owner;
+
+    private final long acquiredAt;
+
+    private final long fencingToken;
+
+    private final DistributedLock lock;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public LockHandle(DistributedLock lock, String key, Object owner, long fencingToken) {
+        this.lock = lock;
+        this.key = key;
+        this.backend = lock.backend();
+        this.owner = owner;
+        this.fencingToken = fencingToken;
+        this.acquiredAt = System.nanoTime();
+    }
+
+    /**
+     * 多 key 句柄中某个 key 的 fencing token
+     */
+    public long getFencingToken(String key) {
+        return this.key.equals(key) ? fencingToken : NO_FENCING_TOKEN;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T owner() {
+        return (T) owner;
+    }
+
+    public void unlock() {
+        if (released.compareAndSet(false, true)) {
+            try {
+                release();
+            } catch (RuntimeException | Error e) {
+                //释放失败（例如非加锁线程释放线程绑定的锁）时锁仍被持有，允许之后再次释放
+                released.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 实际释放锁，成功后只会被调用一次；抛出异常时句柄恢复为未释放
+     */
+    protected void release() {
+        lock.unlock(this);
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    @Override
+    public void close() {
+        unlock();
+    }
+}
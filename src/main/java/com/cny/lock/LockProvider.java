@@ -0,0 +1,64 @@
+package com.cny.lock;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author : chennengyuan
+ * 按后端类型获取分布式锁、读写锁、信号量实现（已按配置包装好本地锁层等装饰器）
+ */
+public class LockProvider {
+
+    private final Map<LockBackend, DistributedLock> locks = new EnumMap<>(LockBackend.class);
+
+    private final Map<LockBackend, DistributedReadWriteLock> readWriteLocks = new EnumMap<>(LockBackend.class);
+
+    private final Map<LockBackend, DistributedSemaphore> semaphores = new EnumMap<>(LockBackend.class);
+
+    public LockProvider(List<DistributedLock> locks) {
+        this(locks, Collections.emptyList());
+    }
+
+    public LockProvider(List<DistributedLock> locks, List<DistributedReadWriteLock> readWriteLocks) {
+        this(locks, readWriteLocks, Collections.emptyList());
+    }
+
+    public LockProvider(List<DistributedLock> locks, List<DistributedReadWriteLock> readWriteLocks,
+                        List<DistributedSemaphore> semaphores) {
+        for (DistributedLock lock : locks) {
+            this.locks.put(lock.backend(), lock);
+        }
+        for (DistributedReadWriteLock lock : readWriteLocks) {
+            this.readWriteLocks.put(lock.backend(), lock);
+        }
+        for (DistributedSemaphore semaphore : semaphores) {
+            this.semaphores.put(semaphore.backend(), semaphore);
+        }
+    }
+
+    public DistributedLock get(LockBackend backend) {
+        DistributedLock lock = locks.get(backend);
+        if (lock == null) {
+            throw new IllegalArgumentException("未配置的分布式锁后端：" + backend);
+        }
+        return lock;
+    }
+
+    public DistributedReadWriteLock getReadWrite(LockBackend backend) {
+        DistributedReadWriteLock lock = readWriteLocks.get(backend);
+        if (lock == null) {
+            throw new IllegalArgumentException("不支持读写锁的后端：" + backend);
+        }
+        return lock;
+    }
+
+    public DistributedSemaphore getSemaphore(LockBackend backend) {
+        DistributedSemaphore semaphore = semaphores.get(backend);
+        if (semaphore == null) {
+            throw new IllegalArgumentException("不支持信号量的后端：" + backend);
+        }
+        return semaphore;
+    }
+}
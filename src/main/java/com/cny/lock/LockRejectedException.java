@@ -0,0 +1,12 @@
+package com.cny.lock;
+
+/**
+ * @author : chennengyuan
+ * 等待同一把锁的请求已达上限，请求被直接拒绝（没有尝试加锁）
+ */
+public class LockRejectedException extends LockException {
+
+    public LockRejectedException(String message) {
+        super(message);
+    }
+}
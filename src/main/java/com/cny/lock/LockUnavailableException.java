@@ -0,0 +1,12 @@
+package com.cny.lock;
+
+/**
+ * @author : chennengyuan
+ * 锁后端熔断中，请求没有访问后端直接失败
+ */
+public class LockUnavailableException extends LockException {
+
+    public LockUnavailableException(String message) {
+        super(message);
+    }
+}
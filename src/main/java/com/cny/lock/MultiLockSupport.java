@@ -0,0 +1,95 @@
+package com.cny.lock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 多 key 加锁的通用实现
+ * <p>
+ * key 去重并按字典序排序后，先用异步接口并行地各尝试一次（不等待），全部成功只花一次最慢的往返；
+ * 有任何一个失败则按逆序释放已获取的锁，再按排序后的顺序逐个等待加锁（固定顺序不会互相死锁），
+ * 中途失败同样按逆序回滚
+ */
+@Slf4j
+public final class MultiLockSupport {
+
+    private MultiLockSupport() {
+    }
+
+    public static List<String> sortedKeys(Collection<String> keys) {
+        return new ArrayList<>(new TreeSet<>(keys));
+    }
+
+    public static LockHandle tryLockAll(DistributedLock lock, Collection<String> keys,
+                                        long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        long start = System.nanoTime();
+        List<String> sorted = sortedKeys(keys);
+        if (sorted.size() == 1) {
+            return lock.tryLock(sorted.get(0), waitTime, leaseTime, unit);
+        }
+
+        //1.并行尝试
+        List<CompletableFuture<LockHandle>> futures = new ArrayList<>(sorted.size());
+        for (String key : sorted) {
+            futures.add(lock.tryLockAsync(key, 0, leaseTime, unit));
+        }
+        List<LockHandle> acquired = new ArrayList<>(sorted.size());
+        Exception failure = null;
+        for (CompletableFuture<LockHandle> future : futures) {
+            try {
+                LockHandle handle = AsyncLockSupport.await(future, () -> {
+                });
+                if (handle != null) {
+                    acquired.add(handle);
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        if (failure == null && acquired.size() == sorted.size()) {
+            return new CompositeLockHandle(lock, acquired);
+        }
+        releaseAll(acquired);
+        if (failure != null) {
+            throw failure;
+        }
+
+        //2.按顺序等待
+        acquired = new ArrayList<>(sorted.size());
+        try {
+            for (String key : sorted) {
+                long remaining = unit.toNanos(waitTime) - (System.nanoTime() - start);
+                LockHandle handle = lock.tryLock(key, Math.max(0, remaining), unit.toNanos(leaseTime), TimeUnit.NANOSECONDS);
+                if (handle == null) {
+                    releaseAll(acquired);
+                    return null;
+                }
+                acquired.add(handle);
+            }
+        } catch (Exception e) {
+            releaseAll(acquired);
+            throw e;
+        }
+        return new CompositeLockHandle(lock, acquired);
+    }
+
+    /**
+     * 按加锁的逆序释放
+     */
+    public static void releaseAll(List<LockHandle> handles) {
+        for (int i = handles.size() - 1; i >= 0; i--) {
+            try {
+                handles.get(i).unlock();
+            } catch (Exception e) {
+                log.error("回滚释放锁失败 key={}：{}", handles.get(i).getKey(), e.getMessage());
+            }
+        }
+    }
+}
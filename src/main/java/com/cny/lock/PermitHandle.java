@@ -0,0 +1,63 @@
+package com.cny.lock;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author : chennengyuan
+ * 获取信号量许可成功后返回的句柄，持有归还许可所需的后端资源，可配合 try-with-resources 使用
+ */
+@Getter
+public class PermitHandle implements AutoCloseable {
+
+    private final String key;
+
+    private final LockBackend backend;
+
+    private final int permits;
+
+    /**
+     * 后端相关的持有者信息（Redis 的成员、Redisson 的许可 id、Curator 的 Lease 等）
+     */
+    private final Object owner;
+
+    private final long acquiredAt;
+
+    private final DistributedSemaphore semaphore;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public PermitHandle(DistributedSemaphore semaphore, String key, int permits, Object owner) {
+        this.semaphore = semaphore;
+        this.key = key;
+        this.backend = semaphore.backend();
+        this.permits = permits;
+        this.owner = owner;
+        this.acquiredAt = System.nanoTime();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T owner() {
+        return (T) owner;
+    }
+
+    /**
+     * 归还许可，只会执行一次
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            semaphore.release(this);
+        }
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
@@ -0,0 +1,160 @@
+package com.cny.lock;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 可重入：同一个线程对已持有的 key 再次加锁时只在本地计数，不访问后端
+ * <p>
+ * RedisTemplate 锁和原生 Zookeeper 锁不可重入，每次加锁新建 InterProcessMutex 的 Curator 锁也不可重入，
+ * 嵌套加锁同一个 key 会等待自己（Zookeeper 创建第二个顺序节点并监听第一个）直到超时。
+ * 这里按 加锁线程+key 记录持有和重入次数，只有最外层的加锁、解锁访问后端；
+ * 重入时沿用最外层的锁句柄、租约和 fencing token，内层指定的租约时间不生效。
+ * 重入按加锁线程识别，释放则跟随句柄：后端本身不绑定线程时（Redis、原生 Zookeeper 等）句柄可以交给其他线程释放，
+ * 只有线程绑定的后端（Curator）要求由加锁线程释放，其他线程释放时抛出 {@link IllegalMonitorStateException} 且锁保持不变。
+ * 异步加锁和多 key 加锁不属于某个线程，直接交给后端
+ */
+public class ReentrantDistributedLock implements DistributedLock {
+
+    private final DistributedLock delegate;
+
+    private final ConcurrentMap<Owner, Hold> holds = new ConcurrentHashMap<>();
+
+    public ReentrantDistributedLock(DistributedLock delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return delegate.backend();
+    }
+
+    @Override
+    public boolean isThreadBound() {
+        return delegate.isThreadBound();
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        Owner owner = new Owner(Thread.currentThread(), key);
+        //只有加锁线程自己写入、读取以自己为 owner 的记录，其他线程只会在释放最外层时删除
+        Hold hold = holds.get(owner);
+        if (hold == null || !hold.reenter()) {
+            LockHandle remote = delegate.tryLock(key, waitTime, leaseTime, unit);
+            if (remote == null) {
+                return null;
+            }
+            hold = new Hold(owner, remote);
+            holds.put(owner, hold);
+        }
+        return new LockHandle(this, key, hold, hold.remote.getFencingToken());
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return delegate.tryLockAsync(key, waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public LockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        return delegate.tryLockAll(keys, waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        Hold hold = handle.owner();
+        if (delegate.isThreadBound() && hold.owner.thread != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("只能由加锁线程释放锁 key=" + handle.getKey());
+        }
+        if (!hold.exit()) {
+            return;
+        }
+        holds.remove(hold.owner, hold);
+        hold.remote.unlock();
+    }
+
+    /**
+     * @return 当前线程对 key 的重入次数，未持有时为 0
+     */
+    public int getHoldCount(String key) {
+        Hold hold = holds.get(new Owner(Thread.currentThread(), key));
+        return hold == null ? 0 : hold.count();
+    }
+
+    /**
+     * 加锁线程和 key
+     */
+    private static class Owner {
+
+        private final Thread thread;
+
+        private final String key;
+
+        Owner(Thread thread, String key) {
+            this.thread = thread;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Owner)) {
+                return false;
+            }
+            Owner other = (Owner) o;
+            return thread == other.thread && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(thread), key);
+        }
+    }
+
+    /**
+     * 一个线程对一个 key 的持有：最外层的后端锁句柄和重入次数；
+     * 句柄可能交给其他线程释放，计数的增减互斥进行
+     */
+    private static class Hold {
+
+        private final Owner owner;
+
+        private final LockHandle remote;
+
+        private int count = 1;
+
+        Hold(Owner owner, LockHandle remote) {
+            this.owner = owner;
+            this.remote = remote;
+        }
+
+        /**
+         * @return 是否重入成功，最外层已经释放时返回 false，需要重新加锁
+         */
+        synchronized boolean reenter() {
+            if (count == 0) {
+                return false;
+            }
+            count++;
+            return true;
+        }
+
+        /**
+         * @return 是否是最外层的释放
+         */
+        synchronized boolean exit() {
+            return --count == 0;
+        }
+
+        synchronized int count() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.cny.lock;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 分片锁：按一致性哈希把 key 分散到多个 Redis 节点上各自的锁实现，锁的吞吐随节点数水平扩展
+ * <p>
+ * 同一个 key 始终落在同一个分片，fencing token 计数器也在该分片上；增删节点时迁移的 key 其 token 会从新分片的计数器重新开始，
+ * 迁移期间仍持有旧分片锁的持有者和新分片上的持有者不互斥，增删节点应在流量低峰进行。
+ * 多 key 加锁时所有 key 落在同一分片则交给该分片原子地加锁，否则按通用的多 key 加锁逐个加锁。
+ * 只有互斥锁分片，Redis / Redisson 的读写锁和信号量仍然落在 spring.redis 配置的单个节点上
+ */
+public class ShardedDistributedLock implements DistributedLock {
+
+    private final LockBackend backend;
+
+    private final ConsistentHashRing<DistributedLock> shards;
+
+    public ShardedDistributedLock(ConsistentHashRing<DistributedLock> shards) {
+        this.shards = shards;
+        this.backend = shards.nodes().get(0).backend();
+    }
+
+    @Override
+    public LockBackend backend() {
+        return backend;
+    }
+
+    @Override
+    public boolean isThreadBound() {
+        return shards.nodes().get(0).isThreadBound();
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        return shards.get(key).tryLock(key, waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return shards.get(key).tryLockAsync(key, waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public LockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        Set<DistributedLock> owners = new HashSet<>();
+        for (String key : keys) {
+            owners.add(shards.get(key));
+        }
+        if (owners.size() == 1) {
+            return owners.iterator().next().tryLockAll(keys, waitTime, leaseTime, unit);
+        }
+        return MultiLockSupport.tryLockAll(this, keys, waitTime, leaseTime, unit);
+    }
+
+    /**
+     * 分片返回的句柄直接由分片释放，这里只会收到按 key 路由的调用
+     */
+    @Override
+    public void unlock(LockHandle handle) {
+        shards.get(handle.getKey()).unlock(handle);
+    }
+}
@@ -0,0 +1,157 @@
+package com.cny.lock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 两级锁：在分布式锁前面加一层 JVM 本地的按 key 公平锁
+ * <p>
+ * 同一个 JVM 内同一个 key 只有一个线程去竞争远程锁，其余线程在本地排队；
+ * 开启 holdAcrossWaiters 时，释放时如果本地还有排队线程，远程锁不释放而是直接交给下一个本地线程，
+ * 最多连续交接 maxHandoffs 次后强制释放，避免其他节点饿死。
+ * 只有租约由看门狗/会话维持（leaseTime &lt;= 0）且句柄不绑定线程的后端才会交接远程锁。
+ * 本地锁是单许可的公平信号量，不可重入、不绑定线程，句柄可以在任意线程释放（是否绑定线程仍由远程锁决定）；
+ * 异步加锁和多 key 加锁不经过本地锁层，直接竞争远程锁。
+ */
+@Slf4j
+public class TwoTierDistributedLock implements DistributedLock {
+
+    private final DistributedLock delegate;
+
+    private final boolean holdAcrossWaiters;
+
+    private final int maxHandoffs;
+
+    private final ConcurrentMap<String, LocalEntry> entries = new ConcurrentHashMap<>();
+
+    public TwoTierDistributedLock(DistributedLock delegate, boolean holdAcrossWaiters, int maxHandoffs) {
+        this.delegate = delegate;
+        this.holdAcrossWaiters = holdAcrossWaiters && !delegate.isThreadBound();
+        this.maxHandoffs = maxHandoffs;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return delegate.backend();
+    }
+
+    @Override
+    public boolean isThreadBound() {
+        return delegate.isThreadBound();
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        long start = System.nanoTime();
+        LocalEntry entry = retain(key);
+        boolean success = false;
+        try {
+            //1.本地排队
+            if (!entry.local.tryAcquire(waitTime, unit)) {
+                return null;
+            }
+            try {
+                if (entry.remote == null) {
+                    //2.本地只有当前线程去竞争远程锁
+                    long remaining = unit.toNanos(waitTime) - (System.nanoTime() - start);
+                    LockHandle remote = delegate.tryLock(key, Math.max(0, remaining), unit.toNanos(leaseTime), TimeUnit.NANOSECONDS);
+                    if (remote == null) {
+                        return null;
+                    }
+                    entry.remote = remote;
+                    entry.leased = leaseTime > 0;
+                    entry.handoffs = 0;
+                } else {
+                    //3.上一个本地持有者交接过来的远程锁直接复用
+                    entry.handoffs++;
+                }
+                success = true;
+                //交接期间远程锁没有释放过，本地持有者共用同一个 fencing token，本地锁保证它们之间互斥
+                return new LockHandle(this, key, entry, entry.remote.getFencingToken());
+            } finally {
+                if (!success) {
+                    entry.local.release();
+                }
+            }
+        } finally {
+            if (!success) {
+                release(key, entry);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return delegate.tryLockAsync(key, waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public LockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        return delegate.tryLockAll(keys, waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        LocalEntry entry = handle.owner();
+        try {
+            boolean handoff = holdAcrossWaiters && !entry.leased
+                    && entry.handoffs < maxHandoffs && entry.local.hasQueuedThreads();
+            if (!handoff) {
+                LockHandle remote = entry.remote;
+                entry.remote = null;
+                remote.unlock();
+            }
+        } finally {
+            entry.local.release();
+            release(handle.getKey(), entry);
+        }
+    }
+
+    private LocalEntry retain(String key) {
+        return entries.compute(key, (k, entry) -> {
+            LocalEntry e = entry == null ? new LocalEntry() : entry;
+            e.users++;
+            return e;
+        });
+    }
+
+    private void release(String key, LocalEntry entry) {
+        boolean removed = entries.computeIfPresent(key, (k, e) -> --e.users == 0 ? null : e) == null;
+        //最后一个本地等待者放弃时，交接中的远程锁已经没有接收者，需要释放
+        if (removed && entry.remote != null) {
+            LockHandle remote = entry.remote;
+            entry.remote = null;
+            try {
+                remote.unlock();
+            } catch (Exception e) {
+                log.error("释放交接中的远程锁失败 key={}：{}", key, e.getMessage());
+            }
+        }
+    }
+
+    private static class LocalEntry {
+
+        private final Semaphore local = new Semaphore(1, true);
+
+        /**
+         * 引用计数，由 entries.compute 保护
+         */
+        private int users;
+
+        /**
+         * 当前持有的远程锁，只在持有 local 时读写
+         */
+        private volatile LockHandle remote;
+
+        private boolean leased;
+
+        private int handoffs;
+    }
+}
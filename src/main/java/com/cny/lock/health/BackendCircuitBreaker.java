@@ -0,0 +1,291 @@
+package com.cny.lock.health;
+
+import com.cny.lock.LockBackend;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author : chennengyuan
+ * 一个锁后端的健康统计和熔断器
+ * <p>
+ * 最近 window 内的调用按时间分成 10 个桶，每个桶记录调用数、失败数和延迟直方图（每个 2 的幂区间再分 4 档），
+ * 桶过期后整体重置，统计随时间滚动。调用数达到 minSamples 后，失败率或 p99 延迟超过阈值即熔断（OPEN），
+ * 熔断期间调用方快速失败；openDuration 后进入半开（HALF_OPEN），由健康探测决定恢复：
+ * 连续 trialSuccesses 次成功且延迟未超过阈值则关闭熔断并清空统计，任何一次失败重新熔断
+ */
+@Slf4j
+public class BackendCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int BUCKETS = 10;
+
+    /**
+     * 每个 2 的幂区间再分的档数
+     */
+    private static final int SUB_BINS = 4;
+
+    private static final int BINS = 64 * SUB_BINS;
+
+    /**
+     * 两次评估之间的最小间隔
+     */
+    private static final long EVALUATION_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final LockBackend backend;
+
+    private final long p99ThresholdMicros;
+
+    private final double errorRateThreshold;
+
+    private final int minSamples;
+
+    private final long openNanos;
+
+    private final int trialSuccesses;
+
+    private final long bucketNanos;
+
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final AtomicInteger trials = new AtomicInteger();
+
+    private final AtomicLong nextEvaluation = new AtomicLong();
+
+    private volatile long openedAt;
+
+    /**
+     * @param p99ThresholdMillis 最近窗口内 p99 延迟的上限（毫秒）
+     * @param errorRateThreshold 最近窗口内失败率的上限（0~1）
+     * @param minSamples         窗口内调用数达到该值才评估，避免少量调用误判
+     * @param windowMillis       统计窗口（毫秒）
+     * @param openMillis         熔断多久后进入半开（毫秒）
+     * @param trialSuccesses     半开时连续成功多少次后恢复
+     */
+    public BackendCircuitBreaker(LockBackend backend, long p99ThresholdMillis, double errorRateThreshold, int minSamples,
+                                 long windowMillis, long openMillis, int trialSuccesses) {
+        this.backend = backend;
+        this.p99ThresholdMicros = TimeUnit.MILLISECONDS.toMicros(p99ThresholdMillis);
+        this.errorRateThreshold = errorRateThreshold;
+        this.minSamples = minSamples;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.trialSuccesses = trialSuccesses;
+        this.bucketNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMillis) / BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    public LockBackend getBackend() {
+        return backend;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return 是否允许调用后端，只有熔断关闭时允许
+     */
+    public boolean allowRequest() {
+        State current = state.get();
+        if (current == State.OPEN && System.nanoTime() - openedAt >= openNanos && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            trials.set(0);
+            log.info("锁后端 {} 熔断到期，进入半开状态，等待健康探测结果", backend);
+        }
+        return state.get() == State.CLOSED;
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param latencyNanos 调用耗时，小于 0 表示耗时不反映后端健康（例如包含了等待锁的时间），只计入失败率
+     * @param success      后端是否正常响应（等待锁超时也算正常响应）
+     */
+    public void record(long latencyNanos, boolean success) {
+        long now = System.nanoTime();
+        long micros = latencyNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        bucket(now).add(micros, success);
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (!success || micros > p99ThresholdMicros) {
+                trip("半开状态下探测失败或延迟超过阈值");
+            } else if (trials.incrementAndGet() >= trialSuccesses && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                for (Bucket bucket : buckets) {
+                    bucket.reset(-1);
+                }
+                log.info("锁后端 {} 恢复健康，关闭熔断", backend);
+            }
+            return;
+        }
+        if (current == State.CLOSED) {
+            evaluate(now);
+        }
+    }
+
+    private void evaluate(long now) {
+        long next = nextEvaluation.get();
+        if (now - next < 0 || !nextEvaluation.compareAndSet(next, now + EVALUATION_INTERVAL_NANOS)) {
+            return;
+        }
+        Snapshot snapshot = snapshot();
+        if (snapshot.calls < minSamples) {
+            return;
+        }
+        if (snapshot.errorRate >= errorRateThreshold) {
+            trip("失败率 " + String.format("%.2f", snapshot.errorRate));
+        } else if (snapshot.p99Micros > p99ThresholdMicros) {
+            trip("p99 延迟 " + TimeUnit.MICROSECONDS.toMillis(snapshot.p99Micros) + "ms");
+        }
+    }
+
+    private void trip(String reason) {
+        openedAt = System.nanoTime();
+        if (state.getAndSet(State.OPEN) != State.OPEN) {
+            log.warn("锁后端 {} 熔断：{}，{} 秒内快速失败", backend, reason, TimeUnit.NANOSECONDS.toSeconds(openNanos));
+        }
+    }
+
+    /**
+     * @return 最近窗口内的统计
+     */
+    public Snapshot snapshot() {
+        long epoch = System.nanoTime() / bucketNanos;
+        long calls = 0;
+        long errors = 0;
+        long[] bins = new long[BINS];
+        for (Bucket bucket : buckets) {
+            if (epoch - bucket.epoch >= BUCKETS) {
+                continue;
+            }
+            calls += bucket.calls.sum();
+            errors += bucket.errors.sum();
+            for (int i = 0; i < BINS; i++) {
+                bins[i] += bucket.latencies.get(i);
+            }
+        }
+        return new Snapshot(state.get(), calls, errors, percentile(bins, 0.99));
+    }
+
+    private Bucket bucket(long now) {
+        long epoch = now / bucketNanos;
+        Bucket bucket = buckets[(int) (epoch % BUCKETS)];
+        if (bucket.epoch != epoch) {
+            synchronized (bucket) {
+                if (bucket.epoch != epoch) {
+                    bucket.reset(epoch);
+                }
+            }
+        }
+        return bucket;
+    }
+
+    static int bin(long micros) {
+        if (micros < SUB_BINS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int mantissa = (int) (micros >>> (exponent - 2)) & (SUB_BINS - 1);
+        return exponent * SUB_BINS + mantissa;
+    }
+
+    /**
+     * @return 档的上界（微秒）
+     */
+    static long upperBound(int bin) {
+        if (bin < SUB_BINS) {
+            return bin;
+        }
+        int exponent = bin / SUB_BINS;
+        long top = SUB_BINS + bin % SUB_BINS;
+        return ((top + 1) << (exponent - 2)) - 1;
+    }
+
+    private static long percentile(long[] bins, double percentile) {
+        long total = 0;
+        for (long count : bins) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < bins.length; i++) {
+            seen += bins[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(bins.length - 1);
+    }
+
+    /**
+     * 最近窗口内的统计
+     */
+    @Getter
+    public static class Snapshot {
+
+        private final State state;
+
+        private final long calls;
+
+        private final long errors;
+
+        private final double errorRate;
+
+        /**
+         * 有耗时的调用的 p99 延迟（微秒），精度为所在档的上界
+         */
+        private final long p99Micros;
+
+        Snapshot(State state, long calls, long errors, long p99Micros) {
+            this.state = state;
+            this.calls = calls;
+            this.errors = errors;
+            this.errorRate = calls == 0 ? 0 : (double) errors / calls;
+            this.p99Micros = p99Micros;
+        }
+    }
+
+    private static class Bucket {
+
+        private volatile long epoch = -1;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final AtomicLongArray latencies = new AtomicLongArray(BINS);
+
+        void add(long micros, boolean success) {
+            calls.increment();
+            if (!success) {
+                errors.increment();
+            }
+            if (micros >= 0) {
+                latencies.incrementAndGet(bin(micros));
+            }
+        }
+
+        void reset(long epoch) {
+            calls.reset();
+            errors.reset();
+            for (int i = 0; i < BINS; i++) {
+                latencies.set(i, 0);
+            }
+            this.epoch = epoch;
+        }
+    }
+}
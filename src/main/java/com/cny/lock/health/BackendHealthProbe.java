@@ -0,0 +1,104 @@
+package com.cny.lock.health;
+
+import com.cny.lock.AsyncLockSupport;
+import com.cny.lock.LockBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author : chennengyuan
+ * 定期对每个后端执行一次轻量的连通性检查（Redis PING、Zookeeper exists），记录耗时和成败
+ * <p>
+ * 业务加锁的耗时混有锁竞争，探测的耗时只有后端往返，是 p99 延迟的主要来源；熔断后也由探测结果决定何时恢复。
+ * 探测不加锁、不创建节点，不会给后端增加写入。检查在独立的线程上执行，超过 timeout 视为失败，
+ * 后端卡住时不会占住调度线程；同一个后端上一次检查未返回时不再发起新的检查，已超时的每轮记一次失败
+ */
+@Slf4j
+public class BackendHealthProbe implements AutoCloseable {
+
+    /**
+     * 一次连通性检查，抛出异常表示失败
+     */
+    @FunctionalInterface
+    public interface Ping {
+
+        void ping() throws Exception;
+    }
+
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService pingExecutor;
+
+    private final long timeoutMillis;
+
+    public BackendHealthProbe(Map<LockBackend, Ping> pings, LockBackendHealth health, ScheduledExecutorService scheduler,
+                              long intervalMillis, long timeoutMillis) {
+        this.scheduler = scheduler;
+        this.timeoutMillis = timeoutMillis;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-health-probe-");
+        threadFactory.setDaemon(true);
+        //每个后端同时最多一个探测在执行
+        this.pingExecutor = Executors.newCachedThreadPool(threadFactory);
+        for (Map.Entry<LockBackend, Ping> entry : pings.entrySet()) {
+            BackendCircuitBreaker breaker = health.get(entry.getKey());
+            AtomicBoolean probing = new AtomicBoolean();
+            AtomicLong probingSince = new AtomicLong();
+            tasks.add(scheduler.scheduleWithFixedDelay(() -> probe(entry.getKey(), entry.getValue(), breaker, probing, probingSince),
+                    intervalMillis, intervalMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void probe(LockBackend backend, Ping ping, BackendCircuitBreaker breaker, AtomicBoolean probing, AtomicLong probingSince) {
+        long start = System.nanoTime();
+        if (!probing.compareAndSet(false, true)) {
+            long elapsed = start - probingSince.get();
+            if (elapsed > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+                breaker.record(elapsed, false);
+            }
+            return;
+        }
+        probingSince.set(start);
+        CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+        AsyncLockSupport.scheduleTimeout(outcome, timeoutMillis, TimeUnit.MILLISECONDS, scheduler, () -> outcome.complete(false));
+        outcome.thenAccept(success -> breaker.record(System.nanoTime() - start, success));
+        try {
+            pingExecutor.execute(() -> {
+                try {
+                    ping.ping();
+                    outcome.complete(true);
+                } catch (Exception e) {
+                    log.debug("锁后端 {} 健康探测失败：{}", backend, e.getMessage());
+                    outcome.complete(false);
+                } finally {
+                    //超时后仍等检查本身返回才开始下一次，卡住的后端上不会堆积检查线程
+                    probing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            probing.set(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ScheduledFuture<?> task : tasks) {
+            task.cancel(false);
+        }
+        pingExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,114 @@
+package com.cny.lock.health;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockHandle;
+import com.cny.lock.LockUnavailableException;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 熔断装饰器：后端熔断时不再访问后端、等满超时，而是直接抛出 {@link LockUnavailableException}
+ * <p>
+ * 不会改用其他后端加锁：各节点对熔断的判断不同步，仍在使用原后端的节点与改用其他后端的节点之间不互斥。
+ * 加锁的耗时包含等待其他持有者的时间，不反映后端健康，只把后端异常计入失败率；
+ * 解锁只有一次往返，耗时计入延迟统计
+ */
+public class CircuitBreakingDistributedLock implements DistributedLock {
+
+    private final DistributedLock delegate;
+
+    private final BackendCircuitBreaker breaker;
+
+    public CircuitBreakingDistributedLock(DistributedLock delegate, BackendCircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return delegate.backend();
+    }
+
+    @Override
+    public boolean isThreadBound() {
+        return delegate.isThreadBound();
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        if (!breaker.allowRequest()) {
+            throw unavailable();
+        }
+        LockHandle handle;
+        try {
+            handle = delegate.tryLock(key, waitTime, leaseTime, unit);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            breaker.record(-1, false);
+            throw e;
+        }
+        breaker.record(-1, true);
+        return handle == null ? null : new LockHandle(this, key, handle, handle.getFencingToken());
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        if (!breaker.allowRequest()) {
+            CompletableFuture<LockHandle> failed = new CompletableFuture<>();
+            failed.completeExceptionally(unavailable());
+            return failed;
+        }
+        CompletableFuture<LockHandle> future = new CompletableFuture<>();
+        delegate.tryLockAsync(key, waitTime, leaseTime, unit).whenComplete((handle, e) -> {
+            breaker.record(-1, e == null);
+            if (e != null) {
+                future.completeExceptionally(e);
+                return;
+            }
+            LockHandle wrapped = handle == null ? null : new LockHandle(this, key, handle, handle.getFencingToken());
+            if (!future.complete(wrapped) && wrapped != null) {
+                wrapped.unlock();
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public LockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        if (!breaker.allowRequest()) {
+            throw unavailable();
+        }
+        try {
+            LockHandle handle = delegate.tryLockAll(keys, waitTime, leaseTime, unit);
+            breaker.record(-1, true);
+            return handle;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            breaker.record(-1, false);
+            throw e;
+        }
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        LockHandle inner = handle.owner();
+        long start = System.nanoTime();
+        try {
+            inner.unlock();
+        } catch (RuntimeException e) {
+            breaker.record(-1, false);
+            throw e;
+        }
+        breaker.record(System.nanoTime() - start, true);
+    }
+
+    private LockUnavailableException unavailable() {
+        return new LockUnavailableException("锁后端 " + backend() + " 熔断中，快速失败");
+    }
+}
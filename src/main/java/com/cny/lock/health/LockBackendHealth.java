@@ -0,0 +1,53 @@
+package com.cny.lock.health;
+
+import com.cny.lock.LockBackend;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 各锁后端的熔断器，同时作为 /actuator/health 中的 lockBackendHealth 项：
+ * 任一后端熔断时状态为 OUT_OF_SERVICE，details 中列出每个后端的熔断状态、最近窗口的调用数、失败率和 p99 延迟
+ */
+public class LockBackendHealth implements HealthIndicator {
+
+    private final Map<LockBackend, BackendCircuitBreaker> breakers = new EnumMap<>(LockBackend.class);
+
+    public LockBackendHealth(long p99ThresholdMillis, double errorRateThreshold, int minSamples,
+                             long windowMillis, long openMillis, int trialSuccesses) {
+        for (LockBackend backend : LockBackend.values()) {
+            breakers.put(backend, new BackendCircuitBreaker(backend, p99ThresholdMillis, errorRateThreshold, minSamples,
+                    windowMillis, openMillis, trialSuccesses));
+        }
+    }
+
+    public BackendCircuitBreaker get(LockBackend backend) {
+        return breakers.get(backend);
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = Health.up();
+        for (BackendCircuitBreaker breaker : breakers.values()) {
+            BackendCircuitBreaker.Snapshot snapshot = breaker.snapshot();
+            if (snapshot.getCalls() == 0 && snapshot.getState() == BackendCircuitBreaker.State.CLOSED) {
+                continue;
+            }
+            if (snapshot.getState() != BackendCircuitBreaker.State.CLOSED) {
+                builder.outOfService();
+            }
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", snapshot.getState());
+            details.put("calls", snapshot.getCalls());
+            details.put("errorRate", snapshot.getErrorRate());
+            details.put("p99Millis", TimeUnit.MICROSECONDS.toMillis(snapshot.getP99Micros()));
+            builder.withDetail(breaker.getBackend().name().toLowerCase(), details);
+        }
+        return builder.build();
+    }
+}
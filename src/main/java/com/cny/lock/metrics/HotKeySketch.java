@@ -0,0 +1,156 @@
+package com.cny.lock.metrics;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author : chennengyuan
+ * 热点 key 统计：Space-Saving 算法，只保留固定数量的计数器，key 的基数再高内存也不变
+ * <p>
+ * 计数器满了以后新 key 顶替计数最小的计数器并继承其计数作为误差上界，真正的热点 key 一定会留在计数器中。
+ * 按 key 的哈希分成多个分段，每个分段单独加锁，分段内用按计数排序的小顶堆，每次计数 O(log n)。
+ */
+public class HotKeySketch {
+
+    private final Stripe[] stripes;
+
+    public HotKeySketch(int capacity, int stripeCount) {
+        this.stripes = new Stripe[stripeCount];
+        int stripeCapacity = Math.max(1, capacity / stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    public void offer(String key) {
+        stripes[(key.hashCode() & Integer.MAX_VALUE) % stripes.length].offer(key);
+    }
+
+    /**
+     * @return 计数最大的 n 个 key，按计数降序
+     */
+    public List<HotKey> top(int n) {
+        List<HotKey> all = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.snapshot(all);
+        }
+        all.sort((a, b) -> Long.compare(b.count, a.count));
+        return all.size() > n ? new ArrayList<>(all.subList(0, n)) : all;
+    }
+
+    @Getter
+    public static class HotKey {
+
+        private final String key;
+
+        private final long count;
+
+        /**
+         * 计数的最大高估值，count - error 是该 key 的真实次数下界
+         */
+        private final long error;
+
+        HotKey(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private static class Counter {
+
+        private String key;
+
+        private long count;
+
+        private long error;
+
+        private int index;
+    }
+
+    private static class Stripe {
+
+        private final Counter[] heap;
+
+        private final Map<String, Counter> counters;
+
+        private int size;
+
+        Stripe(int capacity) {
+            this.heap = new Counter[capacity];
+            this.counters = new HashMap<>(capacity * 2);
+        }
+
+        synchronized void offer(String key) {
+            Counter counter = counters.get(key);
+            if (counter == null) {
+                if (size < heap.length) {
+                    counter = new Counter();
+                    counter.index = size;
+                    heap[size++] = counter;
+                } else {
+                    //顶替计数最小的 key
+                    counter = heap[0];
+                    counters.remove(counter.key);
+                    counter.error = counter.count;
+                }
+                counter.key = key;
+                counters.put(key, counter);
+                counter.count++;
+                siftUp(counter.index);
+                siftDown(counter.index);
+                return;
+            }
+            counter.count++;
+            siftDown(counter.index);
+        }
+
+        synchronized void snapshot(List<HotKey> out) {
+            for (int i = 0; i < size; i++) {
+                out.add(new HotKey(heap[i].key, heap[i].count, heap[i].error));
+            }
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (heap[parent].count <= heap[index].count) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = index * 2 + 1;
+                int right = left + 1;
+                if (left < size && heap[left].count < heap[smallest].count) {
+                    smallest = left;
+                }
+                if (right < size && heap[right].count < heap[smallest].count) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            Counter counter = heap[i];
+            heap[i] = heap[j];
+            heap[j] = counter;
+            heap[i].index = i;
+            heap[j].index = j;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cny.lock.metrics;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockHandle;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 记录加锁等待时间、超时、失败和持有时间的装饰器，放在最外层，统计的是调用方实际感受到的时间
+ */
+public class InstrumentedDistributedLock implements DistributedLock {
+
+    private final DistributedLock delegate;
+
+    private final LockMetrics metrics;
+
+    public InstrumentedDistributedLock(DistributedLock delegate, LockMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return delegate.backend();
+    }
+
+    @Override
+    public boolean isThreadBound() {
+        return delegate.isThreadBound();
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        LockMetrics.KeyTimers timers = metrics.attempt(backend(), key);
+        long start = System.nanoTime();
+        try {
+            return acquired(timers, start, delegate.tryLock(key, waitTime, leaseTime, unit));
+        } catch (Exception e) {
+            record(timers.failed, start);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        LockMetrics.KeyTimers timers = metrics.attempt(backend(), key);
+        long start = System.nanoTime();
+        CompletableFuture<LockHandle> future = new CompletableFuture<>();
+        delegate.tryLockAsync(key, waitTime, leaseTime, unit).whenComplete((handle, e) -> {
+            if (e != null) {
+                record(timers.failed, start);
+                future.completeExceptionally(e);
+                return;
+            }
+            LockHandle instrumented = acquired(timers, start, handle);
+            if (!future.complete(instrumented) && instrumented != null) {
+                instrumented.unlock();
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public LockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        for (String key : keys) {
+            metrics.offer(backend(), key);
+        }
+        LockMetrics.KeyTimers timers = metrics.timers(backend(), String.join(",", keys));
+        long start = System.nanoTime();
+        try {
+            return acquired(timers, start, delegate.tryLockAll(keys, waitTime, leaseTime, unit));
+        } catch (Exception e) {
+            record(timers.failed, start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        InstrumentedHandle instrumented = (InstrumentedHandle) handle;
+        try {
+            instrumented.inner.unlock();
+        } finally {
+            record(instrumented.timers.hold, instrumented.getAcquiredAt());
+        }
+    }
+
+    private LockHandle acquired(LockMetrics.KeyTimers timers, long start, LockHandle handle) {
+        if (handle == null) {
+            record(timers.timeout, start);
+            return null;
+        }
+        record(timers.acquired, start);
+        return new InstrumentedHandle(this, handle, timers);
+    }
+
+    private static void record(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 包装内层句柄，释放时记录持有时间；fencing token 和内层保持一致
+     */
+    private static class InstrumentedHandle extends LockHandle {
+
+        private final LockHandle inner;
+
+        private final LockMetrics.KeyTimers timers;
+
+        InstrumentedHandle(DistributedLock lock, LockHandle inner, LockMetrics.KeyTimers timers) {
+            super(lock, inner.getKey(), inner.getOwner(), inner.getFencingToken());
+            this.inner = inner;
+            this.timers = timers;
+        }
+
+        @Override
+        public long getFencingToken(String key) {
+            return inner.getFencingToken(key);
+        }
+    }
+}
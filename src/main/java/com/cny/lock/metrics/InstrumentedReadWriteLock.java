@@ -0,0 +1,39 @@
+package com.cny.lock.metrics;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.DistributedReadWriteLock;
+import com.cny.lock.LockBackend;
+
+/**
+ * @author : chennengyuan
+ * 读写锁的指标装饰器，读锁、写锁分别用 {@link InstrumentedDistributedLock} 包装
+ */
+public class InstrumentedReadWriteLock implements DistributedReadWriteLock {
+
+    private final LockBackend backend;
+
+    private final DistributedLock readLock;
+
+    private final DistributedLock writeLock;
+
+    public InstrumentedReadWriteLock(DistributedReadWriteLock delegate, LockMetrics metrics) {
+        this.backend = delegate.backend();
+        this.readLock = new InstrumentedDistributedLock(delegate.readLock(), metrics);
+        this.writeLock = new InstrumentedDistributedLock(delegate.writeLock(), metrics);
+    }
+
+    @Override
+    public LockBackend backend() {
+        return backend;
+    }
+
+    @Override
+    public DistributedLock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public DistributedLock writeLock() {
+        return writeLock;
+    }
+}
@@ -0,0 +1,81 @@
+package com.cny.lock.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author : chennengyuan
+ * 把锁的 key 归一化为 key 类别作为指标标签，避免会话 id、订单号等高基数 key 撑爆指标数量
+ * <p>
+ * key 按分隔符切段，含数字、过长或者像十六进制串的段替换为 {id}，例如 USER_ADDRESS_LOCK_8F3A... -> USER_ADDRESS_LOCK_{id}；
+ * 类别数量超过上限后新出现的类别统一归为 other
+ */
+public class KeyClassifier {
+
+    static final String ID = "{id}";
+
+    static final String OTHER = "other";
+
+    private static final int MAX_SEGMENT_LENGTH = 32;
+
+    private final int maxClasses;
+
+    private final Set<String> classes = ConcurrentHashMap.newKeySet();
+
+    public KeyClassifier(int maxClasses) {
+        this.maxClasses = maxClasses;
+    }
+
+    public String classify(String key) {
+        String keyClass = normalize(key);
+        if (classes.contains(keyClass)) {
+            return keyClass;
+        }
+        if (classes.size() >= maxClasses) {
+            return OTHER;
+        }
+        classes.add(keyClass);
+        return keyClass;
+    }
+
+    static String normalize(String key) {
+        StringBuilder keyClass = new StringBuilder(key.length());
+        int start = 0;
+        for (int i = 0; i <= key.length(); i++) {
+            if (i < key.length() && !isSeparator(key.charAt(i))) {
+                continue;
+            }
+            appendSegment(keyClass, key, start, i);
+            if (i < key.length()) {
+                keyClass.append(key.charAt(i));
+            }
+            start = i + 1;
+        }
+        return keyClass.toString();
+    }
+
+    private static void appendSegment(StringBuilder keyClass, String key, int start, int end) {
+        if (end - start > MAX_SEGMENT_LENGTH) {
+            keyClass.append(ID);
+            return;
+        }
+        boolean hex = end - start >= 8;
+        for (int i = start; i < end; i++) {
+            char c = key.charAt(i);
+            if (Character.isDigit(c)) {
+                keyClass.append(ID);
+                return;
+            }
+            hex &= (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+        }
+        if (hex) {
+            keyClass.append(ID);
+        } else {
+            keyClass.append(key, start, end);
+        }
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == ':' || c == '_' || c == '.' || c == ',';
+    }
+}
@@ -0,0 +1,28 @@
+package com.cny.lock.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * @author : chennengyuan
+ * 热点锁 key 查询：GET /actuator/lockhotkeys?limit=20，key 的格式为 后端:key
+ */
+@Endpoint(id = "lockhotkeys")
+public class LockHotKeysEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final HotKeySketch hotKeys;
+
+    public LockHotKeysEndpoint(HotKeySketch hotKeys) {
+        this.hotKeys = hotKeys;
+    }
+
+    @ReadOperation
+    public List<HotKeySketch.HotKey> hotKeys(@Nullable Integer limit) {
+        return hotKeys.top(limit == null ? DEFAULT_LIMIT : limit);
+    }
+}
@@ -0,0 +1,96 @@
+package com.cny.lock.metrics;
+
+import com.cny.lock.LockBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author : chennengyuan
+ * 分布式锁的指标：
+ * <ul>
+ *     <li>lock.acquire：获取锁的等待时间，outcome 为 acquired（获取成功）、timeout（超时）、failed（异常）</li>
+ *     <li>lock.hold：持有锁的时间</li>
+ * </ul>
+ * 标签为 backend 和 key 类别（{@link KeyClassifier}），同时把每次加锁的 key 计入热点 key 统计（{@link HotKeySketch}）。
+ * 每个 backend + key 类别的 Timer 只创建一次，之后只有一次 map 查找
+ */
+public class LockMetrics {
+
+    private final MeterRegistry registry;
+
+    private final KeyClassifier classifier;
+
+    private final HotKeySketch hotKeys;
+
+    private final Map<LockBackend, ConcurrentMap<String, KeyTimers>> timers = new EnumMap<>(LockBackend.class);
+
+    public LockMetrics(MeterRegistry registry, KeyClassifier classifier, HotKeySketch hotKeys) {
+        this.registry = registry;
+        this.classifier = classifier;
+        this.hotKeys = hotKeys;
+        for (LockBackend backend : LockBackend.values()) {
+            timers.put(backend, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * 记录一次加锁请求，返回该 key 对应的 Timer
+     */
+    KeyTimers attempt(LockBackend backend, String key) {
+        offer(backend, key);
+        return timers(backend, key);
+    }
+
+    void offer(LockBackend backend, String key) {
+        hotKeys.offer(backend.name().toLowerCase() + ":" + key);
+    }
+
+    KeyTimers timers(LockBackend backend, String key) {
+        ConcurrentMap<String, KeyTimers> backendTimers = timers.get(backend);
+        String keyClass = classifier.classify(key);
+        //JDK8 的 computeIfAbsent 即使 key 已存在也会锁住桶，先 get
+        KeyTimers keyTimers = backendTimers.get(keyClass);
+        return keyTimers != null ? keyTimers : backendTimers.computeIfAbsent(keyClass, c -> new KeyTimers(backend, c));
+    }
+
+    public HotKeySketch getHotKeys() {
+        return hotKeys;
+    }
+
+    class KeyTimers {
+
+        final Timer acquired;
+
+        final Timer timeout;
+
+        final Timer failed;
+
+        final Timer hold;
+
+        KeyTimers(LockBackend backend, String keyClass) {
+            String backendTag = backend.name().toLowerCase();
+            this.acquired = acquireTimer(backendTag, keyClass, "acquired");
+            this.timeout = acquireTimer(backendTag, keyClass, "timeout");
+            this.failed = acquireTimer(backendTag, keyClass, "failed");
+            this.hold = Timer.builder("lock.hold")
+                    .description("持有分布式锁的时间")
+                    .tag("backend", backendTag)
+                    .tag("key", keyClass)
+                    .register(registry);
+        }
+
+        private Timer acquireTimer(String backend, String keyClass, String outcome) {
+            return Timer.builder("lock.acquire")
+                    .description("获取分布式锁的等待时间")
+                    .tag("backend", backend)
+                    .tag("key", keyClass)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+    }
+}
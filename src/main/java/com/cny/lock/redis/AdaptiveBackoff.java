@@ -0,0 +1,142 @@
+package com.cny.lock.redis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * RedisTemplate 锁等待者的兜底重试策略：先自旋，再按带去相关抖动（decorrelated jitter）的指数退避重试
+ * <p>
+ * 释放消息是主要的唤醒方式，但 pub/sub 最多投递一次，订阅连接重连期间的消息会丢失，持有者宕机时也没有消息，
+ * 只按持有者剩余租约重试时等待者可能白等一整个看门狗租约。这里按本节点观察到的每个 key 的持有时间（EWMA）估计锁多久会释放：
+ * 估计的持有时间不超过 spinThresholdMicros 时立即重试最多 spinAttempts 次（持有时间比一次释放消息的往返还短），
+ * 之后从估计的持有时间开始退避，每次在 [base, 上次间隔 * 3) 之间随机、不超过 cap，既不会频繁空转浪费 redis 请求，
+ * 等待者之间也不会同时重试。key 数量超过 maxKeys 时清空重新统计，没有统计的 key 使用所有 key 的 EWMA
+ */
+public class AdaptiveBackoff {
+
+    /**
+     * EWMA 的平滑系数，新样本的权重
+     */
+    private static final double ALPHA = 0.2;
+
+    private final long spinThresholdMicros;
+
+    private final int spinAttempts;
+
+    private final long baseMillis;
+
+    private final long capMillis;
+
+    private final int maxKeys;
+
+    private final ConcurrentMap<String, HoldEstimate> estimates = new ConcurrentHashMap<>();
+
+    private final HoldEstimate overall = new HoldEstimate();
+
+    public AdaptiveBackoff() {
+        this(500, 3, 5, 1000, 10000);
+    }
+
+    /**
+     * @param spinThresholdMicros 估计的持有时间不超过该值（微秒）时先自旋重试
+     * @param spinAttempts        自旋重试的最多次数
+     * @param baseMillis          退避间隔的下限（毫秒）
+     * @param capMillis           退避间隔的上限（毫秒），也是等待者丢失释放消息后最多多等的时间
+     * @param maxKeys             最多统计多少个 key 的持有时间
+     */
+    public AdaptiveBackoff(long spinThresholdMicros, int spinAttempts, long baseMillis, long capMillis, int maxKeys) {
+        if (baseMillis <= 0 || capMillis < baseMillis) {
+            throw new IllegalArgumentException("退避间隔需满足 0 < base <= cap：" + baseMillis + "," + capMillis);
+        }
+        this.spinThresholdMicros = spinThresholdMicros;
+        this.spinAttempts = spinAttempts;
+        this.baseMillis = baseMillis;
+        this.capMillis = capMillis;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * 记录一次持有时间，解锁时调用
+     */
+    public void recordHold(String key, long holdNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(holdNanos);
+        overall.update(micros);
+        HoldEstimate estimate = estimates.get(key);
+        if (estimate == null) {
+            if (estimates.size() >= maxKeys) {
+                estimates.clear();
+            }
+            estimate = estimates.computeIfAbsent(key, k -> new HoldEstimate());
+        }
+        estimate.update(micros);
+    }
+
+    /**
+     * @return 估计的持有时间（微秒），没有任何统计时为 -1
+     */
+    public long estimatedHoldMicros(String key) {
+        HoldEstimate estimate = estimates.get(key);
+        return estimate != null && estimate.micros >= 0 ? (long) estimate.micros : (long) overall.micros;
+    }
+
+    /**
+     * 一个等待者的退避状态，每次加锁新建一个
+     */
+    public Sequence sequence(String key, boolean spin) {
+        long estimate = estimatedHoldMicros(key);
+        boolean spinning = spin && estimate >= 0 && estimate <= spinThresholdMicros;
+        long first = estimate < 0 ? baseMillis : Math.max(baseMillis, Math.min(capMillis, TimeUnit.MICROSECONDS.toMillis(estimate)));
+        return new Sequence(spinning ? spinAttempts : 0, first);
+    }
+
+    /**
+     * 退避序列，只在等待者的重试线程上使用
+     */
+    public class Sequence {
+
+        private int spinsLeft;
+
+        private long previous;
+
+        private boolean started;
+
+        Sequence(int spins, long first) {
+            this.spinsLeft = spins;
+            this.previous = first;
+        }
+
+        /**
+         * @return 下一次重试的间隔（毫秒），0 表示立即重试
+         */
+        public long nextDelayMillis() {
+            if (spinsLeft > 0) {
+                spinsLeft--;
+                return 0;
+            }
+            if (!started) {
+                //第一次退避等待估计的持有时间
+                started = true;
+                return previous;
+            }
+            long upper = Math.min(capMillis, previous * 3);
+            previous = upper <= baseMillis ? baseMillis : ThreadLocalRandom.current().nextLong(baseMillis, upper + 1);
+            return previous;
+        }
+    }
+
+    /**
+     * 持有时间的 EWMA（微秒），并发更新时丢失个别样本不影响估计
+     */
+    private static class HoldEstimate {
+
+        private volatile double micros = -1;
+
+        void update(long sample) {
+            double current = micros;
+            micros = current < 0 ? sample : current + ALPHA * (sample - current);
+        }
+    }
+}
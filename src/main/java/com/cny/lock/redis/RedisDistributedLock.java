@@ -0,0 +1,687 @@
+package com.cny.lock.redis;
+
+import com.cny.lock.AsyncLockSupport;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockHandle;
+import com.cny.lock.MultiLockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author : chennengyuan
+ * 基于 RedisTemplate 实现分布式锁：SET NX PX 加锁，Lua 脚本比较 value 后删除解锁
+ * <p>
+ * 未指定租约时间时使用看门狗的短租约，由 {@link RedisLeaseWatchdog} 统一续期直到解锁。
+ * 等待锁时不轮询：等待者订阅释放消息（{@link RedisLockNotifier}），公平模式下还会进入按 key 的 FIFO 队列
+ * （list 保存顺序，zset 保存每个等待者的过期时间，等待者所在节点宕机后自动出队），
+ * 锁空闲时只有队头可以加锁，解锁消息也只唤醒队头；释放消息丢失时兜底按 {@link AdaptiveBackoff} 自旋、退避重试，不超过持有者剩余租约。
+ * 多 key 加锁由一个 Lua 脚本原子地完成（全部空闲才全部加锁），一次往返，不参与排队。
+ * 加锁成功时在同一个脚本里递增 lock:fence:{key} 计数器作为 fencing token，计数器不设过期时间以保证单调递增。
+ * 读写锁（{@link RedisReadWriteLock}）的读锁、写锁也是本类的实例，使用 lock:rw:{key} 哈希保存持有者，不参与排队。
+ */
+@Slf4j
+public class RedisDistributedLock implements DistributedLock {
+
+    /**
+     * 加锁脚本的返回值：成功为 {1, fencing token...}，失败为 {0, 剩余租约}
+     */
+    private static final long ACQUIRED = 1L;
+
+    /**
+     * 非公平加锁：成功返回 {1, token}，失败返回 {0, 当前持有者的剩余租约（毫秒）}
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LOCK_SCRIPT = RedisScript.of(
+            "if redis.call(\"set\",KEYS[1],ARGV[1],\"NX\",\"PX\",ARGV[2]) then\n" +
+                    " return {1, redis.call(\"incr\",KEYS[2])}\n" +
+                    "end\n" +
+                    "return {0, redis.call(\"pttl\",KEYS[1])}", List.class);
+
+    /**
+     * 公平加锁：先清理队头已过期的等待者，锁空闲且队列为空或自己是队头时加锁成功返回 {1, token}；
+     * 否则入队（ARGV[4] 为 0 时不入队）并刷新自己的过期时间，返回 {0, 持有者剩余租约}，锁空闲但未轮到自己时剩余租约为 -2
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> FAIR_LOCK_SCRIPT = RedisScript.of(
+            "local now = tonumber(ARGV[3])\n" +
+                    "while true do\n" +
+                    " local first = redis.call(\"lindex\",KEYS[2],0)\n" +
+                    " if not first then\n" +
+                    "  break\n" +
+                    " end\n" +
+                    " local timeout = redis.call(\"zscore\",KEYS[3],first)\n" +
+                    " if timeout and tonumber(timeout) > now then\n" +
+                    "  break\n" +
+                    " end\n" +
+                    " redis.call(\"lpop\",KEYS[2])\n" +
+                    " redis.call(\"zrem\",KEYS[3],first)\n" +
+                    "end\n" +
+                    "if redis.call(\"exists\",KEYS[1]) == 0 then\n" +
+                    " local first = redis.call(\"lindex\",KEYS[2],0)\n" +
+                    " if not first or first == ARGV[1] then\n" +
+                    "  if first then\n" +
+                    "   redis.call(\"lpop\",KEYS[2])\n" +
+                    "   redis.call(\"zrem\",KEYS[3],first)\n" +
+                    "  end\n" +
+                    "  redis.call(\"set\",KEYS[1],ARGV[1],\"PX\",ARGV[2])\n" +
+                    "  return {1, redis.call(\"incr\",KEYS[4])}\n" +
+                    " end\n" +
+                    "end\n" +
+                    "local entryTimeout = tonumber(ARGV[4])\n" +
+                    "if entryTimeout > 0 then\n" +
+                    " if not redis.call(\"zscore\",KEYS[3],ARGV[1]) then\n" +
+                    "  redis.call(\"rpush\",KEYS[2],ARGV[1])\n" +
+                    " end\n" +
+                    " redis.call(\"zadd\",KEYS[3],now + entryTimeout,ARGV[1])\n" +
+                    " redis.call(\"pexpire\",KEYS[2],entryTimeout * 2)\n" +
+                    " redis.call(\"pexpire\",KEYS[3],entryTimeout * 2)\n" +
+                    "end\n" +
+                    "return {0, redis.call(\"pttl\",KEYS[1])}", List.class);
+
+    /**
+     * 放弃等待：出队，锁空闲时唤醒新的队头
+     */
+    private static final RedisScript<Long> DEQUEUE_SCRIPT = RedisScript.of(
+            "redis.call(\"lrem\",KEYS[2],0,ARGV[1])\n" +
+                    "redis.call(\"zrem\",KEYS[3],ARGV[1])\n" +
+                    "if redis.call(\"exists\",KEYS[1]) == 0 then\n" +
+                    " local next = redis.call(\"lindex\",KEYS[2],0)\n" +
+                    " if next then\n" +
+                    "  redis.call(\"publish\",ARGV[2],next)\n" +
+                    " end\n" +
+                    "end\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 解锁并发布释放消息，消息内容为队头等待者
+     */
+    private static final RedisScript<Boolean> UNLOCK_SCRIPT = RedisScript.of(
+            "if redis.call(\"get\",KEYS[1]) == ARGV[1] then\n" +
+                    " redis.call(\"del\",KEYS[1])\n" +
+                    " local next = redis.call(\"lindex\",KEYS[2],0)\n" +
+                    " redis.call(\"publish\",ARGV[2],next or \"\")\n" +
+                    " return 1\n" +
+                    "else\n" +
+                    " return 0\n" +
+                    "end", Boolean.class);
+
+    /**
+     * 多 key 加锁：KEYS 前一半为锁，后一半为对应的 fencing 计数器。
+     * 所有锁都空闲时全部加锁返回 {1, 各个 key 的 token}，否则返回 {0, 最长的剩余租约}（有锁没有过期时间时为 -1）
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> MULTI_LOCK_SCRIPT = RedisScript.of(
+            "local n = #KEYS / 2\n" +
+                    "local maxTtl = nil\n" +
+                    "for i = 1, n do\n" +
+                    " local ttl = redis.call(\"pttl\",KEYS[i])\n" +
+                    " if ttl == -1 then\n" +
+                    "  return {0, -1}\n" +
+                    " end\n" +
+                    " if ttl >= 0 and (maxTtl == nil or ttl > maxTtl) then\n" +
+                    "  maxTtl = ttl\n" +
+                    " end\n" +
+                    "end\n" +
+                    "if maxTtl then\n" +
+                    " return {0, maxTtl}\n" +
+                    "end\n" +
+                    "local result = {1}\n" +
+                    "for i = 1, n do\n" +
+                    " redis.call(\"set\",KEYS[i],ARGV[1],\"PX\",ARGV[2])\n" +
+                    " result[i + 1] = redis.call(\"incr\",KEYS[n + i])\n" +
+                    "end\n" +
+                    "return result", List.class);
+
+    /**
+     * 多 key 解锁：KEYS 前一半为锁，后一半为对应的等待队列，ARGV[2..] 为对应的释放频道
+     */
+    private static final RedisScript<Long> MULTI_UNLOCK_SCRIPT = RedisScript.of(
+            "local n = #KEYS / 2\n" +
+                    "local released = 0\n" +
+                    "for i = 1, n do\n" +
+                    " if redis.call(\"get\",KEYS[i]) == ARGV[1] then\n" +
+                    "  redis.call(\"del\",KEYS[i])\n" +
+                    "  local next = redis.call(\"lindex\",KEYS[n + i],0)\n" +
+                    "  redis.call(\"publish\",ARGV[i + 1],next or \"\")\n" +
+                    "  released = released + 1\n" +
+                    " end\n" +
+                    "end\n" +
+                    "return released", Long.class);
+
+    /**
+     * 读写锁的公共部分：清理已过期的持有者（field 为持有者，value 为过期时间，mode 为当前模式），返回剩余持有者数量
+     */
+    private static final String RW_PURGE =
+            "local now = tonumber(ARGV[3])\n" +
+                    "local lease = tonumber(ARGV[2])\n" +
+                    "local fields = redis.call(\"hgetall\",KEYS[1])\n" +
+                    "local holders = 0\n" +
+                    "for i = 1, #fields, 2 do\n" +
+                    " if fields[i] ~= \"mode\" then\n" +
+                    "  if tonumber(fields[i + 1]) <= now then\n" +
+                    "   redis.call(\"hdel\",KEYS[1],fields[i])\n" +
+                    "  else\n" +
+                    "   holders = holders + 1\n" +
+                    "  end\n" +
+                    " end\n" +
+                    "end\n" +
+                    "if holders == 0 then\n" +
+                    " redis.call(\"del\",KEYS[1])\n" +
+                    "end\n";
+
+    /**
+     * 读锁：KEYS 为 读写锁哈希、写锁等待标记、fencing 计数器。
+     * 没有写锁持有者、也没有写锁在等待时加锁成功返回 {1, token}，否则返回 {0, 剩余租约}；
+     * 写锁等待时读锁让行，避免源源不断的读锁让写锁饿死
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_LOCK_SCRIPT = RedisScript.of(RW_PURGE +
+            "if redis.call(\"exists\",KEYS[2]) == 0 and (holders == 0 or redis.call(\"hget\",KEYS[1],\"mode\") == \"read\") then\n" +
+            " redis.call(\"hset\",KEYS[1],\"mode\",\"read\")\n" +
+            " redis.call(\"hset\",KEYS[1],ARGV[1],now + lease)\n" +
+            " if redis.call(\"pttl\",KEYS[1]) < lease then\n" +
+            "  redis.call(\"pexpire\",KEYS[1],lease)\n" +
+            " end\n" +
+            " return {1, redis.call(\"incr\",KEYS[3])}\n" +
+            "end\n" +
+            "if holders == 0 then\n" +
+            " return {0, redis.call(\"pttl\",KEYS[2])}\n" +
+            "end\n" +
+            "return {0, redis.call(\"pttl\",KEYS[1])}", List.class);
+
+    /**
+     * 写锁：没有任何持有者时加锁成功返回 {1, token}；否则留下写锁等待标记（ARGV[4] 毫秒后过期，等待期间持续刷新），
+     * 返回 {0, 剩余租约}
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> WRITE_LOCK_SCRIPT = RedisScript.of(RW_PURGE +
+            "if holders == 0 then\n" +
+            " redis.call(\"hset\",KEYS[1],\"mode\",\"write\")\n" +
+            " redis.call(\"hset\",KEYS[1],ARGV[1],now + lease)\n" +
+            " redis.call(\"pexpire\",KEYS[1],lease)\n" +
+            " redis.call(\"del\",KEYS[2])\n" +
+            " return {1, redis.call(\"incr\",KEYS[3])}\n" +
+            "end\n" +
+            "if tonumber(ARGV[4]) > 0 then\n" +
+            " redis.call(\"set\",KEYS[2],ARGV[1],\"PX\",ARGV[4])\n" +
+            "end\n" +
+            "return {0, redis.call(\"pttl\",KEYS[1])}", List.class);
+
+    /**
+     * 读写锁解锁：最后一个持有者释放时删除哈希并发布释放消息
+     */
+    private static final RedisScript<Boolean> RW_UNLOCK_SCRIPT = RedisScript.of(
+            "if redis.call(\"hdel\",KEYS[1],ARGV[1]) == 0 then\n" +
+                    " return 0\n" +
+                    "end\n" +
+                    "if redis.call(\"hlen\",KEYS[1]) <= 1 then\n" +
+                    " redis.call(\"del\",KEYS[1])\n" +
+                    " redis.call(\"publish\",ARGV[2],\"\")\n" +
+                    "end\n" +
+                    "return 1", Boolean.class);
+
+    /**
+     * 写锁放弃等待：只删除自己留下的写锁等待标记，并唤醒因此让行的读锁
+     */
+    private static final RedisScript<Long> WRITER_GIVE_UP_SCRIPT = RedisScript.of(
+            "if redis.call(\"get\",KEYS[1]) == ARGV[1] then\n" +
+                    " redis.call(\"del\",KEYS[1])\n" +
+                    " redis.call(\"publish\",ARGV[2],\"\")\n" +
+                    "end\n" +
+                    "return 1", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final RedisLeaseWatchdog watchdog;
+
+    private final RedisLockNotifier notifier;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final boolean fair;
+
+    private final long queueEntryTimeoutMillis;
+
+    private final Mode mode;
+
+    private final AdaptiveBackoff backoff;
+
+    public RedisDistributedLock(RedisTemplate<String, String> redisTemplate, RedisLeaseWatchdog watchdog,
+                                RedisLockNotifier notifier, ScheduledExecutorService scheduler) {
+        this(redisTemplate, watchdog, notifier, scheduler, true, 5000);
+    }
+
+    /**
+     * @param fair                    等待时是否按 FIFO 排队
+     * @param queueEntryTimeoutMillis 排队者多久未刷新即视为已宕机被移出队列，等待者每半个周期刷新一次
+     */
+    public RedisDistributedLock(RedisTemplate<String, String> redisTemplate, RedisLeaseWatchdog watchdog,
+                                RedisLockNotifier notifier, ScheduledExecutorService scheduler,
+                                boolean fair, long queueEntryTimeoutMillis) {
+        this(redisTemplate, watchdog, notifier, scheduler, fair, queueEntryTimeoutMillis, new AdaptiveBackoff());
+    }
+
+    /**
+     * @param backoff 释放消息丢失时的兜底重试策略，按本实例观察到的持有时间调整
+     */
+    public RedisDistributedLock(RedisTemplate<String, String> redisTemplate, RedisLeaseWatchdog watchdog,
+                                RedisLockNotifier notifier, ScheduledExecutorService scheduler,
+                                boolean fair, long queueEntryTimeoutMillis, AdaptiveBackoff backoff) {
+        this(redisTemplate, watchdog, notifier, scheduler, fair, queueEntryTimeoutMillis, Mode.EXCLUSIVE, backoff);
+    }
+
+    RedisDistributedLock(RedisTemplate<String, String> redisTemplate, RedisLeaseWatchdog watchdog,
+                         RedisLockNotifier notifier, ScheduledExecutorService scheduler,
+                         boolean fair, long queueEntryTimeoutMillis, Mode mode, AdaptiveBackoff backoff) {
+        this.mode = mode;
+        this.backoff = backoff;
+        this.redisTemplate = redisTemplate;
+        this.watchdog = watchdog;
+        this.notifier = notifier;
+        this.scheduler = scheduler;
+        this.fair = fair;
+        this.queueEntryTimeoutMillis = queueEntryTimeoutMillis;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.REDIS;
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        Waiter waiter = newWaiter(key, Collections.singletonList(lockKey(key)), waitTime, leaseTime, unit);
+        return AsyncLockSupport.await(waiter.start(), waiter::cancel);
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return newWaiter(key, Collections.singletonList(lockKey(key)), waitTime, leaseTime, unit).start();
+    }
+
+    /**
+     * 互斥锁由一个脚本原子地加锁全部 key，读写锁按通用方式逐个加锁
+     */
+    @Override
+    public LockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        if (mode != Mode.EXCLUSIVE) {
+            return MultiLockSupport.tryLockAll(this, keys, waitTime, leaseTime, unit);
+        }
+        List<String> sortedKeys = MultiLockSupport.sortedKeys(keys);
+        Waiter waiter = newWaiter(String.join(",", sortedKeys), sortedKeys, waitTime, leaseTime, unit);
+        return AsyncLockSupport.await(waiter.start(), waiter::cancel);
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        backoff.recordHold(handle.getKey(), System.nanoTime() - handle.getAcquiredAt());
+        if (mode != Mode.EXCLUSIVE) {
+            unlockShared(handle);
+            return;
+        }
+        if (handle.getOwner() instanceof MultiKeyOwner) {
+            unlockAll(handle.getKey(), handle.owner());
+            return;
+        }
+        watchdog.unwatch(handle.getKey(), handle.owner());
+        Boolean executeResult = redisTemplate.execute(UNLOCK_SCRIPT, Arrays.asList(handle.getKey(), queueKey(handle.getKey())),
+                handle.<String>owner(), RedisLockNotifier.channel(handle.getKey()));
+        if (!Boolean.TRUE.equals(executeResult)) {
+            log.warn("释放锁时锁已过期或被其他客户端持有 key={}", handle.getKey());
+        }
+    }
+
+    private void unlockShared(LockHandle handle) {
+        String lockKey = lockKey(handle.getKey());
+        watchdog.unwatch(lockKey, handle.owner());
+        Boolean executeResult = redisTemplate.execute(RW_UNLOCK_SCRIPT, Collections.singletonList(lockKey),
+                handle.<String>owner(), RedisLockNotifier.channel(lockKey));
+        if (!Boolean.TRUE.equals(executeResult)) {
+            log.warn("释放读写锁时锁已过期 key={}", handle.getKey());
+        }
+    }
+
+    private void unlockAll(String joinedKey, MultiKeyOwner owner) {
+        List<String> keys = new ArrayList<>(owner.keys.size() * 2);
+        List<String> args = new ArrayList<>(owner.keys.size() + 1);
+        args.add(owner.value);
+        for (String key : owner.keys) {
+            watchdog.unwatch(key, owner.value);
+            keys.add(key);
+            args.add(RedisLockNotifier.channel(key));
+        }
+        for (String key : owner.keys) {
+            keys.add(queueKey(key));
+        }
+        Long released = redisTemplate.execute(MULTI_UNLOCK_SCRIPT, keys, args.toArray());
+        if (released == null || released != owner.keys.size()) {
+            log.warn("释放锁时部分锁已过期或被其他客户端持有 keys={}", joinedKey);
+        }
+    }
+
+    static String queueKey(String key) {
+        return "lock:queue:" + key;
+    }
+
+    static String queueTimeoutKey(String key) {
+        return "lock:queue:timeout:" + key;
+    }
+
+    static String fenceKey(String key) {
+        return "lock:fence:" + key;
+    }
+
+    static String readWriteKey(String key) {
+        return "lock:rw:" + key;
+    }
+
+    static String writerWaitingKey(String key) {
+        return "lock:rw-writer:" + key;
+    }
+
+    /**
+     * @return 业务 key 在 redis 中对应的锁 key
+     */
+    private String lockKey(String key) {
+        return mode == Mode.EXCLUSIVE ? key : readWriteKey(key);
+    }
+
+    private Waiter newWaiter(String key, List<String> lockKeys, long waitTime, long leaseTime, TimeUnit unit) {
+        boolean watched = leaseTime <= 0;
+        long leaseMillis = watched ? watchdog.getLeaseMillis() : unit.toMillis(leaseTime);
+        long waitMillis = unit.toMillis(waitTime);
+        long now = System.currentTimeMillis();
+        long deadline = waitMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + waitMillis;
+        return new Waiter(key, lockKeys, leaseMillis, watched, waitMillis > 0, deadline);
+    }
+
+    /**
+     * 一次加锁（单个 key 或多个 key）：收到释放消息、持有者租约到期、需要刷新排队位置或等待超时时在调度线程上重试，
+     * 同一时刻最多一个重试在执行
+     */
+    private class Waiter implements Runnable, RedisLockNotifier.Listener {
+
+        /**
+         * 业务 key，多 key 时为逗号拼接
+         */
+        private final String key;
+
+        /**
+         * redis 中要加锁的 key，多 key 时已排序
+         */
+        private final List<String> lockKeys;
+
+        private final boolean multi;
+
+        /**
+         * 是否进入 FIFO 队列：只有单 key 的公平互斥锁排队
+         */
+        private final boolean fairQueue;
+
+        /**
+         * 排队相关脚本使用的 key：锁、等待队列、排队过期时间、fencing 计数器
+         */
+        private final List<String> keys;
+
+        /**
+         * 加锁脚本使用的 key
+         */
+        private final List<String> acquireKeys;
+
+        //生成一个UUID作为value值，同时作为排队标识
+        private final String value = UUID.randomUUID().toString();
+
+        private final long leaseMillis;
+
+        private final boolean watched;
+
+        private final boolean waiting;
+
+        private final long deadline;
+
+        private final CompletableFuture<LockHandle> future = new CompletableFuture<>();
+
+        private final AtomicInteger wip = new AtomicInteger();
+
+        /**
+         * 兜底重试的退避序列：排队者轮到自己之前加锁必然失败，不自旋
+         */
+        private final AdaptiveBackoff.Sequence retries;
+
+        /**
+         * 是否可能已进入等待队列，只在 drain 中写入
+         */
+        private volatile boolean queued;
+
+        /**
+         * 兜底重试任务，只在 drain 中写入
+         */
+        private volatile ScheduledFuture<?> retry;
+
+        Waiter(String key, List<String> lockKeys, long leaseMillis, boolean watched, boolean waiting, long deadline) {
+            this.key = key;
+            this.lockKeys = lockKeys;
+            this.multi = lockKeys.size() > 1;
+            this.fairQueue = fair && !multi && mode == Mode.EXCLUSIVE;
+            String first = lockKeys.get(0);
+            this.keys = Arrays.asList(first, queueKey(first), queueTimeoutKey(first), fenceKey(first));
+            if (multi) {
+                acquireKeys = new ArrayList<>(lockKeys);
+                lockKeys.forEach(k -> acquireKeys.add(fenceKey(k)));
+            } else if (mode != Mode.EXCLUSIVE) {
+                acquireKeys = Arrays.asList(first, writerWaitingKey(key), fenceKey(key));
+            } else {
+                acquireKeys = fair ? keys : Arrays.asList(first, fenceKey(first));
+            }
+            this.leaseMillis = leaseMillis;
+            this.watched = watched;
+            this.waiting = waiting;
+            this.deadline = deadline;
+            this.retries = backoff.sequence(key, !fairQueue);
+        }
+
+        CompletableFuture<LockHandle> start() {
+            if (!waiting) {
+                //不等待：只尝试一次，不订阅也不排队
+                attempt();
+                return future;
+            }
+            //先注册再尝试，避免错过两者之间的释放消息
+            lockKeys.forEach(k -> notifier.register(k, this));
+            future.whenComplete((handle, e) -> {
+                lockKeys.forEach(k -> notifier.unregister(k, this));
+                if (retry != null) {
+                    retry.cancel(false);
+                }
+                if (handle == null && queued) {
+                    scheduler.execute(this::dequeue);
+                }
+            });
+            //第一次尝试直接在调用线程上执行
+            if (wip.getAndIncrement() == 0) {
+                drain();
+            }
+            return future;
+        }
+
+        void cancel() {
+            future.complete(null);
+        }
+
+        @Override
+        public void released(String next) {
+            //公平模式下只有队头（或没有排队者时的所有等待者）需要被唤醒
+            if (!fairQueue || next.isEmpty() || next.equals(value)) {
+                run();
+            }
+        }
+
+        /**
+         * 唤醒：合并并发的唤醒，由调度线程串行执行重试
+         */
+        @Override
+        public void run() {
+            if (wip.getAndIncrement() == 0) {
+                scheduler.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                attempt();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void attempt() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                List<?> result = acquire();
+                if ((Long) result.get(0) == ACQUIRED) {
+                    if (watched) {
+                        lockKeys.forEach(k -> watchdog.watch(k, value));
+                    }
+                    LockHandle handle = newHandle(result);
+                    if (!future.complete(handle)) {
+                        handle.unlock();
+                    }
+                    return;
+                }
+                long ttl = (Long) result.get(1);
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    future.complete(null);
+                    return;
+                }
+                scheduleRetry(Math.min(retryDelay(ttl), remaining));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private List<?> acquire() {
+            if (multi) {
+                return redisTemplate.execute(MULTI_LOCK_SCRIPT, acquireKeys, value, String.valueOf(leaseMillis));
+            }
+            if (mode != Mode.EXCLUSIVE) {
+                queued |= waiting && mode == Mode.WRITE;
+                return redisTemplate.execute(mode == Mode.READ ? READ_LOCK_SCRIPT : WRITE_LOCK_SCRIPT, acquireKeys, value,
+                        String.valueOf(leaseMillis), String.valueOf(System.currentTimeMillis()),
+                        String.valueOf(waiting ? queueEntryTimeoutMillis : 0));
+            }
+            if (!fairQueue) {
+                return redisTemplate.execute(LOCK_SCRIPT, acquireKeys, value, String.valueOf(leaseMillis));
+            }
+            queued |= waiting;
+            return redisTemplate.execute(FAIR_LOCK_SCRIPT, acquireKeys, value, String.valueOf(leaseMillis),
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(waiting ? queueEntryTimeoutMillis : 0));
+        }
+
+        private LockHandle newHandle(List<?> result) {
+            if (!multi) {
+                return new LockHandle(RedisDistributedLock.this, key, value, (Long) result.get(1));
+            }
+            Map<String, Long> tokens = new HashMap<>(lockKeys.size() * 2);
+            for (int i = 0; i < lockKeys.size(); i++) {
+                tokens.put(lockKeys.get(i), (Long) result.get(i + 1));
+            }
+            return new MultiKeyHandle(RedisDistributedLock.this, key, new MultiKeyOwner(lockKeys, value), tokens);
+        }
+
+        /**
+         * 兜底：释放消息丢失、持有者崩溃或锁过期时不会被唤醒，按退避序列重试，最晚在持有者租约到期时重试；
+         * 排队位置和写锁等待标记还需要在过期前刷新
+         */
+        private long retryDelay(long ttl) {
+            boolean refreshing = fairQueue || mode == Mode.WRITE;
+            if (ttl == -2 && !refreshing) {
+                return 0;
+            }
+            long delay = retries.nextDelayMillis();
+            if (ttl > 0) {
+                delay = Math.min(delay, ttl);
+            }
+            return refreshing ? Math.min(delay, queueEntryTimeoutMillis / 2) : delay;
+        }
+
+        private void scheduleRetry(long delay) {
+            if (retry != null) {
+                retry.cancel(false);
+            }
+            retry = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void dequeue() {
+            try {
+                if (mode == Mode.WRITE) {
+                    redisTemplate.execute(WRITER_GIVE_UP_SCRIPT, Collections.singletonList(writerWaitingKey(key)), value,
+                            RedisLockNotifier.channel(lockKey(key)));
+                    return;
+                }
+                redisTemplate.execute(DEQUEUE_SCRIPT, keys, value, RedisLockNotifier.channel(key));
+            } catch (Exception e) {
+                //出队失败时依赖排队位置过期清理
+                log.warn("放弃等待时出队失败 key={}：{}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 多 key 锁的句柄，每个 key 有自己的 fencing token
+     */
+    private static class MultiKeyHandle extends LockHandle {
+
+        private final Map<String, Long> fencingTokens;
+
+        MultiKeyHandle(DistributedLock lock, String key, MultiKeyOwner owner, Map<String, Long> fencingTokens) {
+            super(lock, key, owner, NO_FENCING_TOKEN);
+            this.fencingTokens = fencingTokens;
+        }
+
+        @Override
+        public long getFencingToken(String key) {
+            return fencingTokens.getOrDefault(key, NO_FENCING_TOKEN);
+        }
+    }
+
+    /**
+     * 多 key 锁的持有者信息
+     */
+    private static class MultiKeyOwner {
+
+        private final List<String> keys;
+
+        private final String value;
+
+        MultiKeyOwner(List<String> keys, String value) {
+            this.keys = keys;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 锁模式：互斥锁，或读写锁的读锁、写锁
+     */
+    enum Mode {
+        EXCLUSIVE, READ, WRITE
+    }
+}
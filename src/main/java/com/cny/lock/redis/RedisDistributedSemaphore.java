@@ -0,0 +1,141 @@
+package com.cny.lock.redis;
+
+import com.cny.lock.DistributedSemaphore;
+import com.cny.lock.LockBackend;
+import com.cny.lock.PermitHandle;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 基于 RedisTemplate + Lua 的分布式信号量：lock:sem:{key} 有序集合，成员为 持有者|许可数，分数为该持有者的过期时间
+ * <p>
+ * 每次获取先清理已过期的持有者再统计已用许可，一次脚本完成判断和占用；未指定租约时间时由看门狗续期。
+ * 归还许可时发布释放消息唤醒等待者，持有者宕机时等待者按最早的过期时间兜底重试
+ */
+@Slf4j
+public class RedisDistributedSemaphore implements DistributedSemaphore {
+
+    private static final String KEY_PREFIX = "lock:sem:";
+
+    /**
+     * 成功返回 {1}，许可不足返回 {0, 最早过期的持有者的剩余租约}
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ACQUIRE_SCRIPT = RedisScript.of(
+            "local now = tonumber(ARGV[5])\n" +
+                    "local lease = tonumber(ARGV[4])\n" +
+                    "redis.call(\"zremrangebyscore\",KEYS[1],\"-inf\",now)\n" +
+                    "local used = 0\n" +
+                    "for _, member in ipairs(redis.call(\"zrange\",KEYS[1],0,-1)) do\n" +
+                    " used = used + tonumber(string.match(member,\"|(%d+)$\"))\n" +
+                    "end\n" +
+                    "if used + tonumber(ARGV[2]) <= tonumber(ARGV[3]) then\n" +
+                    " redis.call(\"zadd\",KEYS[1],now + lease,ARGV[1])\n" +
+                    " if redis.call(\"pttl\",KEYS[1]) < lease then\n" +
+                    "  redis.call(\"pexpire\",KEYS[1],lease)\n" +
+                    " end\n" +
+                    " return {1}\n" +
+                    "end\n" +
+                    "local earliest = redis.call(\"zrange\",KEYS[1],0,0,\"WITHSCORES\")\n" +
+                    "return {0, tonumber(earliest[2]) - now}", List.class);
+
+    /**
+     * 归还许可并发布释放消息
+     */
+    private static final RedisScript<Boolean> RELEASE_SCRIPT = RedisScript.of(
+            "if redis.call(\"zrem\",KEYS[1],ARGV[1]) == 0 then\n" +
+                    " return 0\n" +
+                    "end\n" +
+                    "redis.call(\"publish\",ARGV[2],\"\")\n" +
+                    "return 1", Boolean.class);
+
+    private static final long ACQUIRED = 1L;
+
+    /**
+     * 等待者最长的兜底重试间隔（毫秒），释放消息丢失时也能及时重试
+     */
+    private static final long MAX_RETRY_INTERVAL_MILLIS = 1000;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final RedisLeaseWatchdog watchdog;
+
+    private final RedisLockNotifier notifier;
+
+    public RedisDistributedSemaphore(RedisTemplate<String, String> redisTemplate, RedisLeaseWatchdog watchdog,
+                                     RedisLockNotifier notifier) {
+        this.redisTemplate = redisTemplate;
+        this.watchdog = watchdog;
+        this.notifier = notifier;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.REDIS;
+    }
+
+    @Override
+    public PermitHandle tryAcquire(String key, int permits, int maxPermits, long waitTime, long leaseTime, TimeUnit unit)
+            throws Exception {
+        DistributedSemaphore.checkPermits(permits, maxPermits);
+        String semaphoreKey = KEY_PREFIX + key;
+        String member = UUID.randomUUID().toString() + "|" + permits;
+        boolean watched = leaseTime <= 0;
+        long leaseMillis = watched ? watchdog.getLeaseMillis() : unit.toMillis(leaseTime);
+        long waitMillis = unit.toMillis(waitTime);
+        long now = System.currentTimeMillis();
+        long deadline = waitMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + waitMillis;
+
+        //先注册再尝试，避免错过两者之间的释放消息
+        Semaphore released = new Semaphore(0);
+        RedisLockNotifier.Listener listener = next -> released.release();
+        if (waitMillis > 0) {
+            notifier.register(semaphoreKey, listener);
+        }
+        try {
+            while (true) {
+                List<?> result = redisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(semaphoreKey), member,
+                        String.valueOf(permits), String.valueOf(maxPermits), String.valueOf(leaseMillis),
+                        String.valueOf(System.currentTimeMillis()));
+                if ((Long) result.get(0) == ACQUIRED) {
+                    if (watched) {
+                        watchdog.watch(semaphoreKey, member);
+                    }
+                    return new PermitHandle(this, key, permits, member);
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                long ttl = (Long) result.get(1);
+                released.tryAcquire(Math.min(Math.min(Math.max(ttl, 1), MAX_RETRY_INTERVAL_MILLIS), remaining),
+                        TimeUnit.MILLISECONDS);
+                released.drainPermits();
+            }
+        } finally {
+            if (waitMillis > 0) {
+                notifier.unregister(semaphoreKey, listener);
+            }
+        }
+    }
+
+    @Override
+    public void release(PermitHandle handle) {
+        String semaphoreKey = KEY_PREFIX + handle.getKey();
+        String member = handle.owner();
+        watchdog.unwatch(semaphoreKey, member);
+        Boolean executeResult = redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(semaphoreKey), member,
+                RedisLockNotifier.channel(semaphoreKey));
+        if (!Boolean.TRUE.equals(executeResult)) {
+            log.warn("归还许可时许可已过期 key={}", handle.getKey());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.cny.lock.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * RedisTemplate 锁的看门狗：整个 JVM 共用一个调度线程为所有未指定租约时间的锁续期
+ * <p>
+ * 锁使用较短的租约（默认 30 秒），每隔 1/3 租约时间把当前持有的全部锁分批通过 pipeline 续期，
+ * 每批只有一次网络往返；持有者宕机后锁最多在一个租约时间后自动过期。
+ * 互斥锁是字符串（value 为持有者），读写锁是哈希（field 为持有者，value 为该持有者的过期时间），
+ * 信号量是有序集合（成员为持有者，分数为该持有者的过期时间），续期脚本同时支持三种。
+ */
+@Slf4j
+public class RedisLeaseWatchdog implements AutoCloseable {
+
+    private static final byte[] RENEW_SCRIPT = ("local lease = tonumber(ARGV[2])\n" +
+            "local type = redis.call(\"type\",KEYS[1])[\"ok\"]\n" +
+            "if type == \"string\" and redis.call(\"get\",KEYS[1]) == ARGV[1] then\n" +
+            " return redis.call(\"pexpire\",KEYS[1],lease)\n" +
+            "end\n" +
+            "if type == \"hash\" and redis.call(\"hexists\",KEYS[1],ARGV[1]) == 1 then\n" +
+            " redis.call(\"hset\",KEYS[1],ARGV[1],tonumber(ARGV[3]) + lease)\n" +
+            " if redis.call(\"pttl\",KEYS[1]) < lease then\n" +
+            "  redis.call(\"pexpire\",KEYS[1],lease)\n" +
+            " end\n" +
+            " return 1\n" +
+            "end\n" +
+            "if type == \"zset\" and redis.call(\"zscore\",KEYS[1],ARGV[1]) then\n" +
+            " redis.call(\"zadd\",KEYS[1],tonumber(ARGV[3]) + lease,ARGV[1])\n" +
+            " if redis.call(\"pttl\",KEYS[1]) < lease then\n" +
+            "  redis.call(\"pexpire\",KEYS[1],lease)\n" +
+            " end\n" +
+            " return 1\n" +
+            "end\n" +
+            "return 0").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 每个 pipeline 最多续期的锁数量
+     */
+    private static final int BATCH_SIZE = 512;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final long leaseMillis;
+
+    private final ConcurrentMap<Lease, Boolean> leases = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "redis-lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RedisLeaseWatchdog(RedisTemplate<String, String> redisTemplate, long leaseMillis) {
+        this.redisTemplate = redisTemplate;
+        this.leaseMillis = leaseMillis;
+        long interval = Math.max(1, leaseMillis / 3);
+        scheduler.scheduleWithFixedDelay(this::renewAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return 看门狗模式下锁的租约时间（毫秒）
+     */
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public void watch(String key, String value) {
+        leases.put(new Lease(key, value), Boolean.TRUE);
+    }
+
+    public void unwatch(String key, String value) {
+        leases.remove(new Lease(key, value));
+    }
+
+    public int size() {
+        return leases.size();
+    }
+
+    void renewAll() {
+        try {
+            List<Lease> batch = new ArrayList<>(BATCH_SIZE);
+            for (Lease lease : leases.keySet()) {
+                batch.add(lease);
+                if (batch.size() == BATCH_SIZE) {
+                    renew(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                renew(batch);
+            }
+        } catch (Exception e) {
+            log.error("锁续期失败：{}", e.getMessage());
+        }
+    }
+
+    private void renew(List<Lease> batch) {
+        byte[] lease = String.valueOf(leaseMillis).getBytes(StandardCharsets.UTF_8);
+        byte[] now = String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Lease l : batch) {
+                eval(connection, l, lease, now);
+            }
+            return null;
+        });
+        for (int i = 0; i < batch.size(); i++) {
+            Object result = results.get(i);
+            if (!Boolean.TRUE.equals(result) && !Long.valueOf(1).equals(result)) {
+                //锁已过期或被其他客户端持有，不再续期
+                leases.remove(batch.get(i));
+                log.warn("锁续期失败，锁已丢失 key={}", batch.get(i).key);
+            }
+        }
+    }
+
+    private static void eval(RedisConnection connection, Lease l, byte[] lease, byte[] now) {
+        connection.scriptingCommands().eval(RENEW_SCRIPT, ReturnType.INTEGER, 1,
+                l.key.getBytes(StandardCharsets.UTF_8), l.value.getBytes(StandardCharsets.UTF_8), lease, now);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class Lease {
+
+        private final String key;
+
+        private final String value;
+
+        Lease(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Lease)) {
+                return false;
+            }
+            Lease lease = (Lease) o;
+            return key.equals(lease.key) && value.equals(lease.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + value.hashCode();
+        }
+    }
+}
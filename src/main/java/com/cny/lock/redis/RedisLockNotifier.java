@@ -0,0 +1,64 @@
+package com.cny.lock.redis;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.Topic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author : chennengyuan
+ * RedisTemplate 锁释放通知
+ * <p>
+ * 解锁脚本向 lock:release:{key} 频道发布消息（内容为排队中的下一个等待者，没有排队者时为空），
+ * 整个 JVM 只用一个订阅连接按模式订阅所有释放频道，收到消息后通知本地等待该 key 的等待者
+ */
+public class RedisLockNotifier implements MessageListener {
+
+    public static final String CHANNEL_PREFIX = "lock:release:";
+
+    public static final Topic TOPIC = new PatternTopic(CHANNEL_PREFIX + "*");
+
+    private final ConcurrentMap<String, Set<Listener>> listeners = new ConcurrentHashMap<>();
+
+    public static String channel(String key) {
+        return CHANNEL_PREFIX + key;
+    }
+
+    public void register(String key, Listener listener) {
+        listeners.compute(key, (k, set) -> {
+            Set<Listener> s = set == null ? ConcurrentHashMap.newKeySet() : set;
+            s.add(listener);
+            return s;
+        });
+    }
+
+    public void unregister(String key, Listener listener) {
+        listeners.computeIfPresent(key, (k, set) -> {
+            set.remove(listener);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        Set<Listener> set = listeners.get(channel.substring(CHANNEL_PREFIX.length()));
+        if (set != null) {
+            String next = new String(message.getBody(), StandardCharsets.UTF_8);
+            set.forEach(listener -> listener.released(next));
+        }
+    }
+
+    public interface Listener {
+
+        /**
+         * @param next 排队中的下一个等待者，为空表示没有排队者
+         */
+        void released(String next);
+    }
+}
@@ -0,0 +1,48 @@
+package com.cny.lock.redis;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.DistributedReadWriteLock;
+import com.cny.lock.LockBackend;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * @author : chennengyuan
+ * 基于 RedisTemplate + Lua 的读写锁：lock:rw:{key} 哈希记录当前模式和每个持有者的过期时间
+ * <p>
+ * 读锁之间并发持有，写锁独占；写锁等待时留下 lock:rw-writer:{key} 标记，新的读锁让行，避免写锁饿死。
+ * 持有者宕机后按各自的过期时间被后续加锁的请求清理，未指定租约时间时由看门狗续期；最后一个持有者释放时发布释放消息唤醒等待者
+ */
+public class RedisReadWriteLock implements DistributedReadWriteLock {
+
+    private final RedisDistributedLock readLock;
+
+    private final RedisDistributedLock writeLock;
+
+    /**
+     * @param writerWaitingMillis 写锁等待标记的有效期，等待中的写锁每半个周期刷新一次
+     */
+    public RedisReadWriteLock(RedisTemplate<String, String> redisTemplate, RedisLeaseWatchdog watchdog,
+                              RedisLockNotifier notifier, ScheduledExecutorService scheduler, long writerWaitingMillis) {
+        this.readLock = new RedisDistributedLock(redisTemplate, watchdog, notifier, scheduler, false, writerWaitingMillis,
+                RedisDistributedLock.Mode.READ, new AdaptiveBackoff());
+        this.writeLock = new RedisDistributedLock(redisTemplate, watchdog, notifier, scheduler, false, writerWaitingMillis,
+                RedisDistributedLock.Mode.WRITE, new AdaptiveBackoff());
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.REDIS;
+    }
+
+    @Override
+    public DistributedLock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public DistributedLock writeLock() {
+        return writeLock;
+    }
+}
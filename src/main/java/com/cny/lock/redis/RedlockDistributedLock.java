@@ -0,0 +1,249 @@
+package com.cny.lock.redis;
+
+import com.cny.lock.AsyncLockSupport;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockHandle;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * Redlock：在 N 个互相独立的 Redis 节点上加锁，多数派（N/2+1）成功且剩余有效期大于 0 才算加锁成功
+ * <p>
+ * 加锁、续期、解锁请求同时发往所有节点，每个节点的请求最多等待 nodeTimeoutMillis，一次尝试的耗时是最慢节点的一次往返而不是 N 次往返之和。
+ * 有效期 = 租约 - 本次尝试耗时 - 时钟漂移（租约的 1% + 2 毫秒）；未达到多数派时并行释放已加锁的节点，随机退避后重试。
+ * 未指定租约时间时每 1/3 租约在所有节点上续期，续期不足多数派视为锁已丢失。
+ * 各节点的计数器无法组成单调递增的序列，Redlock 不提供 fencing token
+ */
+@Slf4j
+public class RedlockDistributedLock implements DistributedLock, AutoCloseable {
+
+    private static final RedisScript<Long> LOCK_SCRIPT = RedisScript.of(
+            "if redis.call(\"set\",KEYS[1],ARGV[1],\"NX\",\"PX\",ARGV[2]) then\n" +
+                    " return 1\n" +
+                    "end\n" +
+                    "return 0", Long.class);
+
+    private static final RedisScript<Long> EXTEND_SCRIPT = RedisScript.of(
+            "if redis.call(\"get\",KEYS[1]) == ARGV[1] then\n" +
+                    " return redis.call(\"pexpire\",KEYS[1],ARGV[2])\n" +
+                    "end\n" +
+                    "return 0", Long.class);
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of(
+            "if redis.call(\"get\",KEYS[1]) == ARGV[1] then\n" +
+                    " return redis.call(\"del\",KEYS[1])\n" +
+                    "end\n" +
+                    "return 0", Long.class);
+
+    private static final double CLOCK_DRIFT_FACTOR = 0.01;
+
+    private static final String KEY_PREFIX = "lock:redlock:";
+
+    private final List<RedisTemplate<String, String>> nodes;
+
+    private final int quorum;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long defaultLeaseMillis;
+
+    private final long nodeTimeoutMillis;
+
+    private final long retryDelayMillis;
+
+    /**
+     * 执行各节点同步请求的线程池，同一次尝试的 N 个请求并行发出
+     */
+    private final ExecutorService executor;
+
+    /**
+     * @param defaultLeaseMillis 未指定租约时间时的租约，持有期间自动续期
+     * @param nodeTimeoutMillis  单个节点请求的超时时间，应远小于租约，宕机的节点不会拖慢整体加锁
+     * @param retryDelayMillis   未达到多数派时的平均重试间隔，实际在 [0.5, 1.5) 倍之间随机
+     * @param ioThreads          并行请求各节点的线程数
+     */
+    public RedlockDistributedLock(List<RedisTemplate<String, String>> nodes, ScheduledExecutorService scheduler,
+                                  long defaultLeaseMillis, long nodeTimeoutMillis, long retryDelayMillis, int ioThreads) {
+        if (nodes.size() < 3) {
+            throw new IllegalArgumentException("Redlock 至少需要 3 个独立的 Redis 节点：" + nodes.size());
+        }
+        this.nodes = new ArrayList<>(nodes);
+        this.quorum = nodes.size() / 2 + 1;
+        this.scheduler = scheduler;
+        this.defaultLeaseMillis = defaultLeaseMillis;
+        this.nodeTimeoutMillis = nodeTimeoutMillis;
+        this.retryDelayMillis = retryDelayMillis;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("redlock-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(ioThreads, threadFactory);
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.REDLOCK;
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        CompletableFuture<LockHandle> future = tryLockAsync(key, waitTime, leaseTime, unit);
+        return AsyncLockSupport.await(future, () -> future.thenAccept(handle -> {
+            //等待被中断后才获取到的锁直接释放
+            if (handle != null) {
+                handle.unlock();
+            }
+        }));
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        boolean renewed = leaseTime <= 0;
+        long leaseMillis = renewed ? defaultLeaseMillis : unit.toMillis(leaseTime);
+        long deadline = System.nanoTime() + Math.min(unit.toNanos(waitTime), Long.MAX_VALUE / 2);
+        Owner owner = new Owner(KEY_PREFIX + key, UUID.randomUUID().toString(), leaseMillis);
+        CompletableFuture<LockHandle> future = new CompletableFuture<>();
+        attempt(key, owner, renewed, deadline, future);
+        return future;
+    }
+
+    private void attempt(String key, Owner owner, boolean renewed, long deadline, CompletableFuture<LockHandle> future) {
+        long start = System.nanoTime();
+        onAllNodes(LOCK_SCRIPT, owner).whenComplete((granted, e) -> {
+            try {
+                long validity = validity(owner.leaseMillis, start);
+                if (e == null && granted >= quorum && validity > 0) {
+                    owner.validUntil = start + TimeUnit.MILLISECONDS.toNanos(owner.leaseMillis - drift(owner.leaseMillis));
+                    if (renewed) {
+                        long interval = Math.max(1, owner.leaseMillis / 3);
+                        owner.renewal = scheduler.scheduleWithFixedDelay(() -> renew(owner), interval, interval, TimeUnit.MILLISECONDS);
+                    }
+                    LockHandle handle = new LockHandle(this, key, owner, LockHandle.NO_FENCING_TOKEN);
+                    if (!future.complete(handle)) {
+                        handle.unlock();
+                    }
+                    return;
+                }
+                //未达到多数派或有效期已耗尽：并行释放，不等待释放结果
+                onAllNodes(UNLOCK_SCRIPT, owner);
+                if (e != null) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || future.isDone()) {
+                    future.complete(null);
+                    return;
+                }
+                long delay = TimeUnit.MILLISECONDS.toNanos(retryDelayMillis / 2 + ThreadLocalRandom.current().nextLong(retryDelayMillis + 1));
+                scheduler.schedule(() -> attempt(key, owner, renewed, deadline, future), Math.min(delay, remaining), TimeUnit.NANOSECONDS);
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+    }
+
+    private void renew(Owner owner) {
+        long start = System.nanoTime();
+        onAllNodes(EXTEND_SCRIPT, owner).thenAccept(extended -> {
+            if (extended >= quorum && validity(owner.leaseMillis, start) > 0) {
+                owner.validUntil = start + TimeUnit.MILLISECONDS.toNanos(owner.leaseMillis - drift(owner.leaseMillis));
+                return;
+            }
+            log.warn("Redlock 续期未达到多数派，锁已丢失 key={}，续期成功节点数 {}/{}", owner.key, extended, nodes.size());
+            owner.renewal.cancel(false);
+        });
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        Owner owner = handle.owner();
+        if (owner.renewal != null) {
+            owner.renewal.cancel(false);
+        }
+        int released = onAllNodes(UNLOCK_SCRIPT, owner).join();
+        if (released < quorum) {
+            log.warn("释放 Redlock 时锁已过期 key={}，释放成功节点数 {}/{}", handle.getKey(), released, nodes.size());
+        }
+    }
+
+    /**
+     * @return 锁剩余的有效期（毫秒），小于等于 0 表示锁可能已被其他客户端获取，写入共享资源前应检查
+     */
+    public static long remainingValidityMillis(LockHandle handle) {
+        Owner owner = handle.owner();
+        return TimeUnit.NANOSECONDS.toMillis(owner.validUntil - System.nanoTime());
+    }
+
+    /**
+     * 并行地在所有节点执行脚本，返回成功（脚本返回 1）的节点数；单个节点超时或异常视为失败
+     */
+    private CompletableFuture<Integer> onAllNodes(RedisScript<Long> script, Owner owner) {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(nodes.size());
+        for (RedisTemplate<String, String> node : nodes) {
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    result.complete(Long.valueOf(1).equals(node.execute(script, Collections.singletonList(owner.key),
+                            owner.value, String.valueOf(owner.leaseMillis))));
+                } catch (Exception e) {
+                    log.debug("Redlock 节点请求失败 key={}：{}", owner.key, e.getMessage());
+                    result.complete(false);
+                }
+            });
+            AsyncLockSupport.scheduleTimeout(result, nodeTimeoutMillis, TimeUnit.MILLISECONDS, scheduler, () -> result.complete(false));
+            results.add(result);
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .thenApply(v -> (int) results.stream().filter(CompletableFuture::join).count());
+    }
+
+    private static long validity(long leaseMillis, long start) {
+        return leaseMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) - drift(leaseMillis);
+    }
+
+    private static long drift(long leaseMillis) {
+        return (long) (leaseMillis * CLOCK_DRIFT_FACTOR) + 2;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 持有者信息：各节点上的 key 和 value、租约、有效期截止时间（System.nanoTime）和续期任务
+     */
+    private static class Owner {
+
+        private final String key;
+
+        private final String value;
+
+        private final long leaseMillis;
+
+        private volatile long validUntil;
+
+        private volatile ScheduledFuture<?> renewal;
+
+        Owner(String key, String value, long leaseMillis) {
+            this.key = key;
+            this.value = value;
+            this.leaseMillis = leaseMillis;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.cny.lock.redisson;
+
+import com.cny.lock.AsyncLockSupport;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockException;
+import com.cny.lock.LockHandle;
+import org.redisson.api.RLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @author : chennengyuan
+ * 基于 Redisson RLock 实现分布式锁，未指定租约时间时由 Redisson 看门狗自动续期
+ * <p>
+ * 每次加锁使用随机的持有者 id 代替线程 id，句柄可以在任意线程释放；
+ * 加锁成功后递增 lock:fence:{key} 计数器作为 fencing token（与 RedisTemplate 实现共用同一个计数器）。
+ * RLock 的加锁脚本无法附带递增，所以由第二个脚本在确认持有者仍持有锁时才递增：
+ * 持有期间不会有其他持有者递增计数器，token 的顺序与加锁顺序一致；锁在签发前已失效则加锁失败
+ */
+public class RedissonDistributedLock implements DistributedLock {
+
+    private static final String FENCE_PREFIX = "lock:fence:";
+
+    /**
+     * KEYS[1] 为 RLock 的哈希，KEYS[2] 为 fencing 计数器，ARGV[1] 为持有者 id；
+     * 哈希中存在该持有者（字段为 {客户端 id}:{持有者 id}，写锁再加 :write 后缀）时递增计数器，否则返回 nil
+     */
+    private static final String FENCE_SCRIPT =
+            "local owner = ':' .. ARGV[1]\n" +
+                    "for _, field in ipairs(redis.call('hkeys', KEYS[1])) do\n" +
+                    " if string.sub(field, -#owner) == owner or string.sub(field, -#owner - 6) == owner .. ':write' then\n" +
+                    "  return redis.call('incr', KEYS[2])\n" +
+                    " end\n" +
+                    "end\n" +
+                    "return nil";
+
+    private final RedissonClient redissonClient;
+
+    private final Function<String, RLock> locks;
+
+    public RedissonDistributedLock(RedissonClient redissonClient) {
+        this(redissonClient, redissonClient::getLock);
+    }
+
+    /**
+     * @param locks 按 key 获取 RLock，读写锁的读锁、写锁也通过这里复用加锁逻辑
+     */
+    RedissonDistributedLock(RedissonClient redissonClient, Function<String, RLock> locks) {
+        this.redissonClient = redissonClient;
+        this.locks = locks;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.REDISSON;
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        CompletableFuture<LockHandle> future = tryLockAsync(key, waitTime, leaseTime, unit);
+        return AsyncLockSupport.await(future, () -> future.thenAccept(handle -> {
+            //等待被中断后才获取到的锁直接释放
+            if (handle != null) {
+                handle.unlock();
+            }
+        }));
+    }
+
+    /**
+     * 基于 Redisson 异步接口，等待期间由 Redisson 的发布订阅唤醒
+     */
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        RLock lock = locks.apply(key);
+        long ownerId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        CompletableFuture<LockHandle> future = new CompletableFuture<>();
+        lock.tryLockAsync(waitTime, leaseTime > 0 ? leaseTime : -1, unit, ownerId).whenComplete((locked, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else if (!locked) {
+                future.complete(null);
+            } else {
+                fence(key, new Owner(lock, ownerId), future);
+            }
+        });
+        return future;
+    }
+
+    private void fence(String key, Owner owner, CompletableFuture<LockHandle> future) {
+        redissonClient.getScript(LongCodec.INSTANCE).<Long>evalAsync(RScript.Mode.READ_WRITE, FENCE_SCRIPT, RScript.ReturnType.INTEGER,
+                Arrays.asList(owner.lock.getName(), FENCE_PREFIX + key), owner.id).whenComplete((token, e) -> {
+            if (e == null && token == null) {
+                //租约在签发 token 前已过期，锁可能已被其他持有者获取
+                future.completeExceptionally(new LockException("加锁后签发 fencing token 前锁已失效 key=" + key));
+                return;
+            }
+            LockHandle handle = new LockHandle(this, key, owner, e == null ? token : LockHandle.NO_FENCING_TOKEN);
+            if (e != null) {
+                handle.unlock();
+                future.completeExceptionally(e);
+            } else if (!future.complete(handle)) {
+                handle.unlock();
+            }
+        });
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        Owner owner = handle.owner();
+        owner.lock.unlockAsync(owner.id).syncUninterruptibly();
+    }
+
+    private static class Owner {
+
+        private final RLock lock;
+
+        private final long id;
+
+        Owner(RLock lock, long id) {
+            this.lock = lock;
+            this.id = id;
+        }
+    }
+}
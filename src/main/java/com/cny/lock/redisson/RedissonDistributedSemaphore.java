@@ -0,0 +1,133 @@
+package com.cny.lock.redisson;
+
+import com.cny.lock.DistributedSemaphore;
+import com.cny.lock.LockBackend;
+import com.cny.lock.PermitHandle;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RPermitExpirableSemaphore;
+import org.redisson.api.RedissonClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 基于 Redisson RPermitExpirableSemaphore 的分布式信号量，信号量名为 lock:sem:redisson:{key}
+ * <p>
+ * RPermitExpirableSemaphore 每次只能获取一个许可，获取多个许可时在等待时间内逐个获取，失败时归还已获取的许可。
+ * 它没有看门狗，未指定租约时间时按 Redisson 的 lockWatchdogTimeout 作为租约，每 1/3 租约时间续期一次。
+ * 许可总数只在信号量第一次使用时设置，之后修改 maxPermits 不会生效
+ */
+@Slf4j
+public class RedissonDistributedSemaphore implements DistributedSemaphore {
+
+    private static final String NAME_PREFIX = "lock:sem:redisson:";
+
+    private final RedissonClient redissonClient;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 已设置过许可总数的信号量，避免每次获取都多一次网络往返
+     */
+    private final Set<String> initialized = ConcurrentHashMap.newKeySet();
+
+    public RedissonDistributedSemaphore(RedissonClient redissonClient, ScheduledExecutorService scheduler) {
+        this.redissonClient = redissonClient;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.REDISSON;
+    }
+
+    @Override
+    public PermitHandle tryAcquire(String key, int permits, int maxPermits, long waitTime, long leaseTime, TimeUnit unit)
+            throws Exception {
+        DistributedSemaphore.checkPermits(permits, maxPermits);
+        String name = NAME_PREFIX + key;
+        RPermitExpirableSemaphore semaphore = redissonClient.getPermitExpirableSemaphore(name);
+        if (!initialized.contains(name)) {
+            semaphore.trySetPermits(maxPermits);
+            initialized.add(name);
+        }
+        boolean watched = leaseTime <= 0;
+        long leaseMillis = watched ? redissonClient.getConfig().getLockWatchdogTimeout() : unit.toMillis(leaseTime);
+        long waitMillis = unit.toMillis(waitTime);
+        long now = System.currentTimeMillis();
+        long deadline = waitMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + waitMillis;
+
+        List<String> permitIds = new ArrayList<>(permits);
+        try {
+            for (int i = 0; i < permits; i++) {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                String permitId = semaphore.tryAcquire(remaining, leaseMillis, TimeUnit.MILLISECONDS);
+                if (permitId == null) {
+                    releaseAll(semaphore, permitIds);
+                    return null;
+                }
+                permitIds.add(permitId);
+            }
+        } catch (Exception e) {
+            releaseAll(semaphore, permitIds);
+            throw e;
+        }
+        Permits owner = new Permits(semaphore, permitIds);
+        if (watched) {
+            long interval = Math.max(1, leaseMillis / 3);
+            owner.renewal = scheduler.scheduleWithFixedDelay(() -> renew(owner, leaseMillis), interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+        return new PermitHandle(this, key, permits, owner);
+    }
+
+    @Override
+    public void release(PermitHandle handle) {
+        Permits owner = handle.owner();
+        if (owner.renewal != null) {
+            owner.renewal.cancel(false);
+        }
+        releaseAll(owner.semaphore, owner.permitIds);
+    }
+
+    private static void renew(Permits owner, long leaseMillis) {
+        for (String permitId : owner.permitIds) {
+            owner.semaphore.updateLeaseTimeAsync(permitId, leaseMillis, TimeUnit.MILLISECONDS).onComplete((renewed, e) -> {
+                if (e != null || !renewed) {
+                    log.warn("许可续期失败，许可已丢失 semaphore={}", owner.semaphore.getName());
+                }
+            });
+        }
+    }
+
+    private static void releaseAll(RPermitExpirableSemaphore semaphore, List<String> permitIds) {
+        for (String permitId : permitIds) {
+            if (!semaphore.tryRelease(permitId)) {
+                log.warn("归还许可时许可已过期 semaphore={}", semaphore.getName());
+            }
+        }
+    }
+
+    /**
+     * 一次获取的所有许可及其续期任务
+     */
+    private static class Permits {
+
+        private final RPermitExpirableSemaphore semaphore;
+
+        private final List<String> permitIds;
+
+        private volatile ScheduledFuture<?> renewal;
+
+        Permits(RPermitExpirableSemaphore semaphore, List<String> permitIds) {
+            this.semaphore = semaphore;
+            this.permitIds = permitIds;
+        }
+    }
+}
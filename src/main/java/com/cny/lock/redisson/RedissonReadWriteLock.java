@@ -0,0 +1,39 @@
+package com.cny.lock.redisson;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.DistributedReadWriteLock;
+import com.cny.lock.LockBackend;
+import org.redisson.api.RedissonClient;
+
+/**
+ * @author : chennengyuan
+ * 基于 Redisson RReadWriteLock 的读写锁，锁名为 lock:rw:redisson:{key}，与同名 key 的互斥锁互不影响
+ */
+public class RedissonReadWriteLock implements DistributedReadWriteLock {
+
+    private static final String NAME_PREFIX = "lock:rw:redisson:";
+
+    private final RedissonDistributedLock readLock;
+
+    private final RedissonDistributedLock writeLock;
+
+    public RedissonReadWriteLock(RedissonClient redissonClient) {
+        this.readLock = new RedissonDistributedLock(redissonClient, key -> redissonClient.getReadWriteLock(NAME_PREFIX + key).readLock());
+        this.writeLock = new RedissonDistributedLock(redissonClient, key -> redissonClient.getReadWriteLock(NAME_PREFIX + key).writeLock());
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.REDISSON;
+    }
+
+    @Override
+    public DistributedLock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public DistributedLock writeLock() {
+        return writeLock;
+    }
+}
@@ -0,0 +1,210 @@
+package com.cny.lock.zookeeper;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.recipes.locks.LockInternals;
+import org.apache.curator.framework.recipes.locks.LockInternalsSorter;
+import org.apache.curator.framework.recipes.locks.StandardLockInternalsDriver;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author : chennengyuan
+ * 基于 Curator 后台回调的异步互斥锁
+ * <p>
+ * 节点命名和排序规则与 InterProcessMutex 一致（受保护的 lock- 临时顺序节点），两者在同一路径上可以互斥；
+ * 读写锁模式下与 InterProcessReadWriteLock 一致（__READ__、__WRIT__ 节点），读锁只需要前面没有写锁节点。
+ * 加锁不绑定线程，可以在任意线程释放；自己节点的 czxid 作为 fencing token
+ */
+class CuratorAsyncLock {
+
+    static final String LOCK_NAME = "lock-";
+
+    static final String READ_LOCK_NAME = "__READ__";
+
+    static final String WRITE_LOCK_NAME = "__WRIT__";
+
+    private static final StandardLockInternalsDriver DRIVER = new StandardLockInternalsDriver();
+
+    /**
+     * 读写锁的节点按序号排序，不区分读写
+     */
+    private static final LockInternalsSorter READ_WRITE_SORTER = (child, lockName) -> StandardLockInternalsDriver.standardFixForSorting(
+            StandardLockInternalsDriver.standardFixForSorting(child, READ_LOCK_NAME), WRITE_LOCK_NAME);
+
+    private final CuratorFramework client;
+
+    private final String basePath;
+
+    private final String lockName;
+
+    /**
+     * 读锁：前面没有写锁节点即可获取
+     */
+    private final boolean shared;
+
+    private final LockInternalsSorter sorter;
+
+    private final AtomicReference<String> lockPath = new AtomicReference<>();
+
+    private final CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+
+    private volatile String nodeName;
+
+    private volatile long fencingToken = -1L;
+
+    /**
+     * 只尝试一次：不是第一个节点时直接放弃，不监听等待
+     */
+    private final boolean tryOnce;
+
+    CuratorAsyncLock(CuratorFramework client, String basePath, boolean tryOnce) {
+        this(client, basePath, LOCK_NAME, tryOnce);
+    }
+
+    /**
+     * @param lockName {@link #LOCK_NAME} 为互斥锁，{@link #READ_LOCK_NAME}、{@link #WRITE_LOCK_NAME} 为读写锁的读锁、写锁
+     */
+    CuratorAsyncLock(CuratorFramework client, String basePath, String lockName, boolean tryOnce) {
+        this.client = client;
+        this.basePath = basePath;
+        this.lockName = lockName;
+        this.shared = READ_LOCK_NAME.equals(lockName);
+        this.sorter = LOCK_NAME.equals(lockName) ? DRIVER : READ_WRITE_SORTER;
+        this.tryOnce = tryOnce;
+    }
+
+    CompletableFuture<Boolean> start() {
+        try {
+            Stat stat = new Stat();
+            client.create().storingStatIn(stat).creatingParentContainersIfNeeded().withProtection().withMode(CreateMode.EPHEMERAL_SEQUENTIAL)
+                    .inBackground((c, event) -> {
+                        if (!ok(event)) {
+                            return;
+                        }
+                        fencingToken = event.getStat() != null ? event.getStat().getCzxid() : stat.getCzxid();
+                        lockPath.set(event.getName());
+                        nodeName = ZKPaths.getNodeFromPath(event.getName());
+                        checkChildren();
+                    }).forPath(ZKPaths.makePath(basePath, lockName));
+        } catch (Exception e) {
+            acquired.completeExceptionally(e);
+        }
+        return acquired;
+    }
+
+    long getFencingToken() {
+        return fencingToken;
+    }
+
+    /**
+     * @return 放弃成功返回 true，已经获取到锁时返回 false
+     */
+    boolean abandon() {
+        if (acquired.complete(false)) {
+            deleteNode();
+            return true;
+        }
+        return acquired.isCompletedExceptionally() || !acquired.getNow(false);
+    }
+
+    void release() {
+        acquired.complete(false);
+        deleteNode();
+    }
+
+    private void checkChildren() {
+        if (acquired.isDone()) {
+            deleteNode();
+            return;
+        }
+        try {
+            client.getChildren().inBackground((c, event) -> {
+                if (!ok(event)) {
+                    return;
+                }
+                List<String> children = LockInternals.getSortedChildren(lockName, sorter, event.getChildren());
+                int index = children.indexOf(nodeName);
+                if (index < 0) {
+                    fail(KeeperException.create(Code.NONODE, lockPath.get()));
+                    return;
+                }
+                String blocker = blocker(children, index);
+                if (blocker == null) {
+                    if (!acquired.complete(true)) {
+                        deleteNode();
+                    }
+                } else if (tryOnce) {
+                    abandon();
+                } else {
+                    watchPreNode(ZKPaths.makePath(basePath, blocker));
+                }
+            }).forPath(basePath);
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * @return 需要等待删除的节点，没有时说明已获取到锁：互斥锁、写锁等前一个节点，读锁等前面最近的写锁节点
+     */
+    private String blocker(List<String> children, int index) {
+        if (!shared) {
+            return index == 0 ? null : children.get(index - 1);
+        }
+        for (int i = index - 1; i >= 0; i--) {
+            if (children.get(i).contains(WRITE_LOCK_NAME)) {
+                return children.get(i);
+            }
+        }
+        return null;
+    }
+
+    private void watchPreNode(String preNode) throws Exception {
+        Watcher watcher = event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
+                checkChildren();
+            }
+        };
+        client.checkExists().usingWatcher(watcher).inBackground((c, event) -> {
+            if (event.getResultCode() == Code.NONODE.intValue()) {
+                checkChildren();
+            } else {
+                ok(event);
+            }
+        }).forPath(preNode);
+    }
+
+    private boolean ok(CuratorEvent event) {
+        if (event.getResultCode() == Code.OK.intValue()) {
+            return true;
+        }
+        fail(KeeperException.create(Code.get(event.getResultCode()), event.getPath()));
+        return false;
+    }
+
+    private void fail(Exception e) {
+        if (acquired.completeExceptionally(e)) {
+            deleteNode();
+        }
+    }
+
+    private void deleteNode() {
+        String path = lockPath.getAndSet(null);
+        if (path != null) {
+            try {
+                client.delete().guaranteed().inBackground().forPath(path);
+            } catch (Exception e) {
+                //guaranteed 删除失败时由 Curator 在后台重试
+            }
+        }
+    }
+}
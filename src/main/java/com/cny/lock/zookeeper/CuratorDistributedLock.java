@@ -0,0 +1,107 @@
+package com.cny.lock.zookeeper;
+
+import com.cny.lock.AsyncLockSupport;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockException;
+import com.cny.lock.LockHandle;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 基于 Curator InterProcessMutex 实现分布式锁，锁的存活由 Zookeeper 会话保证，锁节点的 czxid 作为 fencing token
+ * <p>
+ * 异步加锁使用与 InterProcessMutex 兼容的 {@link CuratorAsyncLock}
+ */
+public class CuratorDistributedLock implements DistributedLock {
+
+    private final CuratorFramework client;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ZkLockPathReaper reaper;
+
+    public CuratorDistributedLock(CuratorFramework client, ScheduledExecutorService scheduler) {
+        this(client, scheduler, null);
+    }
+
+    /**
+     * @param reaper 清理空闲的锁父节点，为 null 时不清理
+     */
+    public CuratorDistributedLock(CuratorFramework client, ScheduledExecutorService scheduler, ZkLockPathReaper reaper) {
+        this.client = client;
+        this.scheduler = scheduler;
+        this.reaper = reaper;
+    }
+
+    /**
+     * 删除空的锁父节点
+     */
+    public static ZkLockPathReaper.PathDeleter pathDeleter(CuratorFramework client) {
+        return path -> client.delete().forPath(path);
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.CURATOR;
+    }
+
+    /**
+     * InterProcessMutex 只能由加锁线程释放
+     */
+    @Override
+    public boolean isThreadBound() {
+        return true;
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        FencingLockDriver driver = new FencingLockDriver();
+        InterProcessMutex lock = new InterProcessMutex(client, touch(key), driver);
+        if (lock.acquire(waitTime, unit)) {
+            return new LockHandle(this, key, lock, driver.getCzxid());
+        }
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        CuratorAsyncLock lock = new CuratorAsyncLock(client, touch(key), waitTime <= 0);
+        CompletableFuture<Boolean> acquired = lock.start();
+        if (waitTime > 0) {
+            AsyncLockSupport.scheduleTimeout(acquired, waitTime, unit, scheduler, lock::abandon);
+        }
+        return acquired.thenApply(granted -> granted ? new LockHandle(this, key, lock, lock.getFencingToken()) : null);
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        Object owner = handle.getOwner();
+        if (owner instanceof CuratorAsyncLock) {
+            ((CuratorAsyncLock) owner).release();
+            return;
+        }
+        try {
+            ((InterProcessMutex) owner).release();
+        } catch (Exception e) {
+            throw new LockException("释放Curator锁失败 key=" + handle.getKey(), e);
+        }
+    }
+
+    private String touch(String key) {
+        String path = path(key);
+        if (reaper != null) {
+            reaper.touch(path);
+        }
+        return path;
+    }
+
+    static String path(String key) {
+        return key.startsWith("/") ? key : "/" + key;
+    }
+}
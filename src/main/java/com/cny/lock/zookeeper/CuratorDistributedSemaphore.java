@@ -0,0 +1,61 @@
+package com.cny.lock.zookeeper;
+
+import com.cny.lock.DistributedSemaphore;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockException;
+import com.cny.lock.PermitHandle;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreV2;
+import org.apache.curator.framework.recipes.locks.Lease;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 基于 Curator InterProcessSemaphoreV2 的分布式信号量，路径为 /semaphore/{key}，许可是临时节点，由 Zookeeper 会话保证存活
+ * <p>
+ * 一次获取多个许可由 Curator 在信号量内部锁的保护下完成，不会出现两个请求各拿一半许可互相等待的情况；
+ * 信号量的父节点是容器节点，没有许可后由 Zookeeper 自动清理
+ */
+public class CuratorDistributedSemaphore implements DistributedSemaphore {
+
+    private static final String PATH_PREFIX = "/semaphore";
+
+    private final CuratorFramework client;
+
+    public CuratorDistributedSemaphore(CuratorFramework client) {
+        this.client = client;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.CURATOR;
+    }
+
+    @Override
+    public PermitHandle tryAcquire(String key, int permits, int maxPermits, long waitTime, long leaseTime, TimeUnit unit)
+            throws Exception {
+        DistributedSemaphore.checkPermits(permits, maxPermits);
+        InterProcessSemaphoreV2 semaphore = new InterProcessSemaphoreV2(client, PATH_PREFIX + CuratorDistributedLock.path(key), maxPermits);
+        Collection<Lease> leases = semaphore.acquire(permits, waitTime, unit);
+        return leases == null ? null : new PermitHandle(this, key, permits, leases);
+    }
+
+    @Override
+    public void release(PermitHandle handle) {
+        Collection<Lease> leases = handle.owner();
+        IOException failure = null;
+        for (Lease lease : leases) {
+            try {
+                lease.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw new LockException("归还Curator许可失败 key=" + handle.getKey(), failure);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.cny.lock.zookeeper;
+
+import com.cny.lock.AsyncLockSupport;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.DistributedReadWriteLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockException;
+import com.cny.lock.LockHandle;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.recipes.locks.InterProcessReadWriteLock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 基于 Curator InterProcessReadWriteLock 的读写锁，锁路径为 /{key}/rw，与同名 key 的互斥锁互不影响
+ * <p>
+ * 同步加锁使用 InterProcessReadWriteLock（只能由加锁线程释放，拿不到锁节点，不提供 fencing token）；
+ * 异步加锁使用节点规则兼容的 {@link CuratorAsyncLock}，锁节点的 czxid 作为 fencing token
+ */
+public class CuratorReadWriteLock implements DistributedReadWriteLock {
+
+    private static final String RW_NODE = "/rw";
+
+    private final CuratorFramework client;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ZkLockPathReaper reaper;
+
+    private final View readLock = new View(true);
+
+    private final View writeLock = new View(false);
+
+    /**
+     * @param reaper 清理空闲的锁父节点，为 null 时不清理
+     */
+    public CuratorReadWriteLock(CuratorFramework client, ScheduledExecutorService scheduler, ZkLockPathReaper reaper) {
+        this.client = client;
+        this.scheduler = scheduler;
+        this.reaper = reaper;
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.CURATOR;
+    }
+
+    @Override
+    public DistributedLock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public DistributedLock writeLock() {
+        return writeLock;
+    }
+
+    private String touch(String key) {
+        String path = CuratorDistributedLock.path(key) + RW_NODE;
+        if (reaper != null) {
+            reaper.touch(path);
+        }
+        return path;
+    }
+
+    private class View implements DistributedLock {
+
+        private final boolean read;
+
+        View(boolean read) {
+            this.read = read;
+        }
+
+        @Override
+        public LockBackend backend() {
+            return LockBackend.CURATOR;
+        }
+
+        @Override
+        public boolean isThreadBound() {
+            return true;
+        }
+
+        @Override
+        public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+            InterProcessReadWriteLock readWriteLock = new InterProcessReadWriteLock(client, touch(key));
+            InterProcessMutex lock = read ? readWriteLock.readLock() : readWriteLock.writeLock();
+            if (lock.acquire(waitTime, unit)) {
+                return new LockHandle(this, key, lock, LockHandle.NO_FENCING_TOKEN);
+            }
+            return null;
+        }
+
+        @Override
+        public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+            String lockName = read ? CuratorAsyncLock.READ_LOCK_NAME : CuratorAsyncLock.WRITE_LOCK_NAME;
+            CuratorAsyncLock lock = new CuratorAsyncLock(client, touch(key), lockName, waitTime <= 0);
+            CompletableFuture<Boolean> acquired = lock.start();
+            if (waitTime > 0) {
+                AsyncLockSupport.scheduleTimeout(acquired, waitTime, unit, scheduler, lock::abandon);
+            }
+            return acquired.thenApply(granted -> granted ? new LockHandle(this, key, lock, lock.getFencingToken()) : null);
+        }
+
+        @Override
+        public void unlock(LockHandle handle) {
+            Object owner = handle.getOwner();
+            if (owner instanceof CuratorAsyncLock) {
+                ((CuratorAsyncLock) owner).release();
+                return;
+            }
+            try {
+                ((InterProcessMutex) owner).release();
+            } catch (Exception e) {
+                throw new LockException("释放Curator读写锁失败 key=" + handle.getKey(), e);
+            }
+        }
+    }
+}
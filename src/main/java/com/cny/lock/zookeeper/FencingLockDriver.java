@@ -0,0 +1,36 @@
+package com.cny.lock.zookeeper;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.StandardLockInternalsDriver;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * @author : chennengyuan
+ * 创建锁节点时顺带记录节点的 czxid 作为 fencing token，不需要额外的请求
+ * <p>
+ * 每个 InterProcessMutex 使用单独的实例，记录的是最后一次创建的（也就是最终持有锁的）节点
+ */
+class FencingLockDriver extends StandardLockInternalsDriver {
+
+    private volatile long czxid = -1L;
+
+    @Override
+    public String createsTheLock(CuratorFramework client, String path, byte[] lockNodeBytes) throws Exception {
+        Stat stat = new Stat();
+        String ourPath;
+        if (lockNodeBytes != null) {
+            ourPath = client.create().storingStatIn(stat).creatingParentContainersIfNeeded().withProtection()
+                    .withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath(path, lockNodeBytes);
+        } else {
+            ourPath = client.create().storingStatIn(stat).creatingParentContainersIfNeeded().withProtection()
+                    .withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath(path);
+        }
+        czxid = stat.getCzxid();
+        return ourPath;
+    }
+
+    long getCzxid() {
+        return czxid;
+    }
+}
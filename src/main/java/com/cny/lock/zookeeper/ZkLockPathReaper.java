@@ -0,0 +1,109 @@
+package com.cny.lock.zookeeper;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 清理空闲的锁父节点：每个 key 一个父节点，不清理的话 Zookeeper 的节点数会随 key 无限增长
+ * <p>
+ * 父节点优先使用容器节点由服务端自动删除，这里兜底处理不支持容器节点的服务端和历史遗留的持久节点。
+ * 只清理本进程用过的路径：超过空闲时间没有加锁的路径按版本删除，仍有子节点（有人持有或等待）时删除失败并保留；
+ * 每轮最多删除固定数量的节点，避免集中删除给集群带来写入压力。
+ */
+@Slf4j
+public class ZkLockPathReaper implements AutoCloseable {
+
+    private final PathDeleter deleter;
+
+    private final long idleMillis;
+
+    private final int maxDeletesPerRun;
+
+    /**
+     * 路径 -> 最近一次加锁的时间
+     */
+    private final ConcurrentMap<String, Long> paths = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "zk-lock-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ZkLockPathReaper(PathDeleter deleter, long idleMillis, long intervalMillis, int maxDeletesPerRun) {
+        this.deleter = deleter;
+        this.idleMillis = idleMillis;
+        this.maxDeletesPerRun = maxDeletesPerRun;
+        scheduler.scheduleWithFixedDelay(this::reap, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 加锁前记录用到的父节点路径
+     */
+    public void touch(String path) {
+        paths.put(path, System.currentTimeMillis());
+    }
+
+    /**
+     * @return 当前存活（本进程用过且尚未清理）的锁路径数量
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    void reap() {
+        long idleBefore = System.currentTimeMillis() - idleMillis;
+        int deleted = 0;
+        Iterator<Map.Entry<String, Long>> iterator = paths.entrySet().iterator();
+        while (iterator.hasNext() && deleted < maxDeletesPerRun) {
+            Map.Entry<String, Long> entry = iterator.next();
+            Long lastUsed = entry.getValue();
+            if (lastUsed > idleBefore) {
+                continue;
+            }
+            try {
+                deleter.delete(entry.getKey());
+                deleted++;
+                paths.remove(entry.getKey(), lastUsed);
+            } catch (KeeperException.NoNodeException e) {
+                //已被服务端（容器节点）或其他进程删除
+                paths.remove(entry.getKey(), lastUsed);
+            } catch (KeeperException.NotEmptyException e) {
+                //仍有持有者或等待者，等下一次空闲后再清理
+                paths.replace(entry.getKey(), lastUsed, System.currentTimeMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("清理锁路径失败 path={}：{}", entry.getKey(), e.getMessage());
+                return;
+            }
+        }
+        if (deleted > 0) {
+            log.debug("清理空闲锁路径 {} 个，剩余 {} 个", deleted, paths.size());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 删除空的锁父节点，有子节点时抛出 NotEmptyException，节点不存在时抛出 NoNodeException
+     */
+    @FunctionalInterface
+    public interface PathDeleter {
+
+        void delete(String path) throws Exception;
+    }
+}
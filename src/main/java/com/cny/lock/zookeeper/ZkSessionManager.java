@@ -0,0 +1,126 @@
+package com.cny.lock.zookeeper;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 共享的长连接 Zookeeper 会话池
+ * <p>
+ * 所有原生 Zookeeper 锁复用这里的会话，不再每次加锁都新建连接和会话；
+ * 每个等待者通过 exists(path, watcher) 注册自己的 Watcher，由客户端的事件线程把节点事件分发给对应的等待者。
+ * 同一个 key 总是落在同一个会话上，会话过期后自动重建。
+ */
+@Slf4j
+public class ZkSessionManager implements AutoCloseable {
+
+    private final String connectString;
+
+    private final int sessionTimeout;
+
+    private final Session[] sessions;
+
+    public ZkSessionManager(String connectString, int sessionTimeout, int poolSize) throws IOException {
+        this.connectString = connectString;
+        this.sessionTimeout = sessionTimeout;
+        this.sessions = new Session[Math.max(1, poolSize)];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = new Session(i);
+        }
+    }
+
+    /**
+     * 获取 key 对应的会话，未连接时最多等待一个会话超时时间
+     */
+    public ZooKeeper session(String key) throws KeeperException, InterruptedException {
+        return sessions[(key.hashCode() & Integer.MAX_VALUE) % sessions.length].get();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        for (Session session : sessions) {
+            session.close();
+        }
+    }
+
+    private class Session implements Watcher {
+
+        private final int index;
+
+        private volatile ZooKeeper zooKeeper;
+
+        private volatile CountDownLatch connected;
+
+        private volatile boolean closed;
+
+        Session(int index) throws IOException {
+            this.index = index;
+            connect();
+        }
+
+        private synchronized void connect() throws IOException {
+            connected = new CountDownLatch(1);
+            zooKeeper = new ZooKeeper(connectString, sessionTimeout, this);
+            notifyAll();
+        }
+
+        ZooKeeper get() throws KeeperException, InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sessionTimeout);
+            synchronized (this) {
+                //会话已过期（客户端已关闭）但还没重建时等待重建，不返回失效的会话
+                while (!zooKeeper.getState().isAlive() && !closed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new KeeperException.ConnectionLossException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+            if (!connected.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new KeeperException.ConnectionLossException();
+            }
+            return zooKeeper;
+        }
+
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getType() != Event.EventType.None) {
+                return;
+            }
+            switch (event.getState()) {
+                case SyncConnected:
+                    connected.countDown();
+                    break;
+                case Expired:
+                    if (!closed) {
+                        log.error("Zookeeper 会话[{}]已过期，该会话持有的锁全部失效，重新建立会话", index);
+                        reconnect();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void reconnect() {
+            try {
+                zooKeeper.close();
+                connect();
+            } catch (Exception e) {
+                log.error("重建 Zookeeper 会话失败：{}", e.getMessage());
+            }
+        }
+
+        void close() throws InterruptedException {
+            closed = true;
+            zooKeeper.close();
+        }
+    }
+}
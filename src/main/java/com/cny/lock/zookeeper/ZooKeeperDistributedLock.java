@@ -0,0 +1,89 @@
+package com.cny.lock.zookeeper;
+
+import com.cny.controller.ZkDistirbuteLock;
+import com.cny.lock.AsyncLockSupport;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockException;
+import com.cny.lock.LockHandle;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 基于原生 Zookeeper 临时顺序节点（{@link ZkDistirbuteLock}）实现分布式锁，所有锁复用 {@link ZkSessionManager} 中的共享会话
+ */
+public class ZooKeeperDistributedLock implements DistributedLock {
+
+    private final ZkSessionManager sessionManager;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ZkLockPathReaper reaper;
+
+    public ZooKeeperDistributedLock(ZkSessionManager sessionManager, ScheduledExecutorService scheduler) {
+        this(sessionManager, scheduler, null);
+    }
+
+    /**
+     * @param reaper 清理空闲的锁根节点，为 null 时不清理
+     */
+    public ZooKeeperDistributedLock(ZkSessionManager sessionManager, ScheduledExecutorService scheduler, ZkLockPathReaper reaper) {
+        this.sessionManager = sessionManager;
+        this.scheduler = scheduler;
+        this.reaper = reaper;
+    }
+
+    /**
+     * 删除空的锁根节点，与加锁使用同一个会话
+     */
+    public static ZkLockPathReaper.PathDeleter pathDeleter(ZkSessionManager sessionManager) {
+        return path -> sessionManager.session(path.substring(1)).delete(path, -1);
+    }
+
+    @Override
+    public LockBackend backend() {
+        return LockBackend.ZOOKEEPER;
+    }
+
+    @Override
+    public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        ZkDistirbuteLock lock = new ZkDistirbuteLock(sessionManager.session(key));
+        return AsyncLockSupport.await(acquire(lock, key, waitTime, unit), lock::abandon);
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        try {
+            return acquire(new ZkDistirbuteLock(sessionManager.session(key)), key, waitTime, unit);
+        } catch (Exception e) {
+            CompletableFuture<LockHandle> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private CompletableFuture<LockHandle> acquire(ZkDistirbuteLock lock, String key, long waitTime, TimeUnit unit) {
+        if (reaper != null) {
+            reaper.touch("/" + key);
+        }
+        if (waitTime <= 0) {
+            return lock.lockAsync(key, true).thenApply(granted -> granted ? new LockHandle(this, key, lock, lock.getFencingToken()) : null);
+        }
+        CompletableFuture<Boolean> acquired = lock.lockAsync(key);
+        AsyncLockSupport.scheduleTimeout(acquired, waitTime, unit, scheduler, lock::abandon);
+        return acquired.thenApply(granted -> granted ? new LockHandle(this, key, lock, lock.getFencingToken()) : null);
+    }
+
+    @Override
+    public void unlock(LockHandle handle) {
+        ZkDistirbuteLock lock = handle.owner();
+        try {
+            lock.close();
+        } catch (Exception e) {
+            throw new LockException("释放Zookeeper锁失败 key=" + handle.getKey(), e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.cny.service;
+
+import lombok.Getter;
+
+/**
+ * @author : chennengyuan
+ * 幂等请求第一次执行的结果：HTTP 状态码和序列化后的响应体，重复提交时原样回放
+ * <p>
+ * 在 redis 中保存为 "状态码\n响应体"
+ */
+@Getter
+public class IdempotentResponse {
+
+    private final int status;
+
+    private final String body;
+
+    public IdempotentResponse(int status, String body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    String serialize() {
+        return status + "\n" + body;
+    }
+
+    static IdempotentResponse parse(String value) {
+        int separator = value.indexOf('\n');
+        return new IdempotentResponse(Integer.parseInt(value.substring(0, separator)), value.substring(separator + 1));
+    }
+}
@@ -0,0 +1,359 @@
+package com.cny.service;
+
+import com.cny.config.RedisShards;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockUnavailableException;
+import com.cny.lock.health.BackendCircuitBreaker;
+import com.cny.lock.health.LockBackendHealth;
+import com.cny.lock.redis.RedisLockNotifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 接口幂等 token 的发放与消费
+ * <p>
+ * 每个会话的 token 保存在 USER_ADDRESS_TOKENS_{sessionId} 有序集合中，分数为各自的过期时间，
+ * 同一会话同时打开的多个表单各用各的 token，互不覆盖；批量发放在一个脚本里写入，一次网络往返。
+ * 消费时通过 Lua 脚本在 redis 中原子地完成 比较+删除，一次网络往返，
+ * 并发的重复请求中只有一个能删除成功，不再需要额外的 Zookeeper 锁；
+ * 本节点刚消费过的 token 由 {@link ReplayedTokenFilter} 在进程内直接识别。
+ * 每次消费的耗时按结果记录到 idempotent.token.consume 指标
+ * <p>
+ * 消费成功的同一个脚本里写入 USER_ADDRESS_RESULT_{sessionId}:{token} 执行中标记（空串，in-flight-timeout 后过期，
+ * 执行者宕机时不会永远挂起），执行完成后替换为第一次执行的结果并保留 result-ttl。
+ * 重复提交不再报错：结果已存在时直接回放，仍在执行中时等待结果写入（通过 {@link RedisLockNotifier} 的释放频道唤醒，
+ * 兜底定期重新读取），避免重复执行业务，也避免客户端因为报错再次重试
+ * <p>
+ * token 与 REDIS 锁后端使用同一个 redis：消费脚本的耗时和异常计入 REDIS 后端的健康统计。
+ * REDIS 熔断期间，配置了 idempotent.fallback-redis 时新 token 在备用 redis 上发放（带 f- 前缀），
+ * 之后的校验、保存结果和等待结果都按前缀路由到发放它的 redis；熔断前发放的 token 只在主 redis 上，
+ * 这些 token 的校验以及没有备用 redis 时的发放直接抛出 {@link LockUnavailableException}，不再等 redis 超时。
+ * lock.health.enabled 关闭时没有健康探测把熔断恢复，token 既不记录 REDIS 后端的健康统计，也不因熔断快速失败
+ */
+@Service
+public class IdempotentTokenService {
+
+    /**
+     * 每个会话一个 zset，成员为 token，分数为过期时间（毫秒时间戳）；与之前的单 token 字符串 key 区分前缀，避免类型冲突
+     */
+    private static final String TOKEN_KEY_PREFIX = "USER_ADDRESS_TOKENS_";
+
+    private static final String RESULT_KEY_PREFIX = "USER_ADDRESS_RESULT_";
+
+    /**
+     * 在备用 redis 上发放的 token 的前缀
+     */
+    private static final String FALLBACK_TOKEN_PREFIX = "f-";
+
+    /**
+     * 执行中标记，与已保存的结果（至少包含状态码）区分
+     */
+    private static final String IN_FLIGHT = "";
+
+    /**
+     * 等待执行中的结果时，没有收到通知也会每隔该时间（毫秒）重新读取一次
+     */
+    private static final long RECHECK_MILLIS = 500;
+
+    /**
+     * 发放 token：KEYS 为会话的 token 集合，ARGV 为当前时间、过期时间、每个会话最多保留的 token 数和新 token；
+     * 先清理已过期的 token，加入新 token 后超出上限时淘汰最早过期的，一次往返发放一批；
+     * 同一批的过期时间依次加 1 毫秒，分数相同时 zset 按成员字典序排列，淘汰顺序就不再是发放顺序
+     */
+    private static final RedisScript<Long> ISSUE_SCRIPT = RedisScript.of(
+            "redis.call(\"zremrangebyscore\",KEYS[1],\"-inf\",ARGV[1])\n" +
+                    "local expireAt = tonumber(ARGV[1]) + tonumber(ARGV[2])\n" +
+                    "for i = 4, #ARGV do\n" +
+                    " redis.call(\"zadd\",KEYS[1],expireAt + i - 4,ARGV[i])\n" +
+                    "end\n" +
+                    "local excess = redis.call(\"zcard\",KEYS[1]) - tonumber(ARGV[3])\n" +
+                    "if excess > 0 then\n" +
+                    " redis.call(\"zremrangebyrank\",KEYS[1],0,excess - 1)\n" +
+                    "end\n" +
+                    "redis.call(\"pexpire\",KEYS[1],ARGV[2])\n" +
+                    "return #ARGV - 3", Long.class);
+
+    /**
+     * 消费 token：KEYS 为 token 集合、结果，ARGV 为 token、执行中标记的过期时间、当前时间；
+     * token 在集合中且未过期时移除 token 并写入执行中标记返回 1，
+     * 已有该 token 的结果或执行中标记返回 2，会话没有未过期的 token 返回 0，token 不在其中返回 -1
+     */
+    private static final RedisScript<Long> CONSUME_SCRIPT = RedisScript.of(
+            "local expireAt = redis.call(\"zscore\",KEYS[1],ARGV[1])\n" +
+                    "if expireAt and tonumber(expireAt) > tonumber(ARGV[3]) then\n" +
+                    " redis.call(\"zrem\",KEYS[1],ARGV[1])\n" +
+                    " redis.call(\"set\",KEYS[2],\"\",\"PX\",ARGV[2])\n" +
+                    " return 1\n" +
+                    "end\n" +
+                    "if redis.call(\"exists\",KEYS[2]) == 1 then\n" +
+                    " return 2\n" +
+                    "end\n" +
+                    "if redis.call(\"zcount\",KEYS[1],\"(\" .. ARGV[3],\"+inf\") == 0 then\n" +
+                    " return 0\n" +
+                    "end\n" +
+                    "return -1", Long.class);
+
+    /**
+     * 保存结果（ARGV[1] 非空）或删除执行中标记（ARGV[1] 为空），并唤醒等待结果的重复请求
+     */
+    private static final RedisScript<Long> COMPLETE_SCRIPT = RedisScript.of(
+            "if ARGV[1] == \"\" then\n" +
+                    " redis.call(\"del\",KEYS[1])\n" +
+                    "else\n" +
+                    " redis.call(\"set\",KEYS[1],ARGV[1],\"PX\",ARGV[2])\n" +
+                    "end\n" +
+                    "redis.call(\"publish\",ARGV[3],\"\")\n" +
+                    "return 1", Long.class);
+
+    @Resource(name = "myRedisTemplate")
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private ReplayedTokenFilter replayedTokenFilter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RedisLockNotifier redisLockNotifier;
+
+    @Autowired
+    private LockBackendHealth lockBackendHealth;
+
+    @Resource(name = "idempotentFallbackRedis")
+    private RedisShards fallbackRedis;
+
+    @Value("${lock.health.enabled:true}")
+    private boolean healthEnabled;
+
+    @Value("${idempotent.result.in-flight-timeout:60000}")
+    private long inFlightTimeoutMillis;
+
+    @Value("${idempotent.token.ttl:1800000}")
+    private long tokenTtlMillis;
+
+    @Value("${idempotent.token.max-per-session:100}")
+    private int maxTokensPerSession;
+
+    @Value("${idempotent.token.max-batch:50}")
+    private int maxBatch;
+
+    @Value("${idempotent.result.ttl:86400000}")
+    private long resultTtlMillis;
+
+    @Value("${idempotent.result.wait:10000}")
+    private long resultWaitMillis;
+
+    private final Map<TokenConsumeResult, Timer> consumeTimers = new EnumMap<>(TokenConsumeResult.class);
+
+    private Timer consumeErrorTimer;
+
+    @PostConstruct
+    public void initMetrics() {
+        for (TokenConsumeResult result : TokenConsumeResult.values()) {
+            consumeTimers.put(result, consumeTimer(result.name().toLowerCase()));
+        }
+        consumeErrorTimer = consumeTimer("error");
+    }
+
+    private Timer consumeTimer(String result) {
+        return Timer.builder("idempotent.token.consume")
+                .description("校验并删除幂等 token 的耗时")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 生成token，保存到redis中；同一会话之前发放的 token 仍然有效
+     */
+    public String issueToken(String sessionId) {
+        return issueTokens(sessionId, 1).get(0);
+    }
+
+    /**
+     * 一次生成 count 个 token，一次 redis 往返；每个 token 独立在 idempotent.token.ttl 后过期，
+     * 会话内未使用的 token 超过 idempotent.token.max-per-session 时淘汰最早的
+     */
+    public List<String> issueTokens(String sessionId, int count) {
+        if (count < 1 || count > maxBatch) {
+            throw new IllegalArgumentException("一次发放的 token 数量应在 1 到 " + maxBatch + " 之间：" + count);
+        }
+        //主 redis 熔断时改在备用 redis 上发放
+        boolean fallback = healthEnabled && !lockBackendHealth.get(LockBackend.REDIS).allowRequest();
+        RedisTemplate<String, String> store = fallback ? fallbackShard().getRedisTemplate() : redisTemplate;
+        List<String> tokens = new ArrayList<>(count);
+        Object[] args = new Object[count + 3];
+        args[0] = String.valueOf(System.currentTimeMillis());
+        args[1] = String.valueOf(tokenTtlMillis);
+        args[2] = String.valueOf(maxTokensPerSession);
+        for (int i = 0; i < count; i++) {
+            String token = (fallback ? FALLBACK_TOKEN_PREFIX : "") + UUID.randomUUID().toString();
+            tokens.add(token);
+            args[i + 3] = token;
+        }
+        store.execute(ISSUE_SCRIPT, Collections.singletonList(TOKEN_KEY_PREFIX + sessionId), args);
+        return tokens;
+    }
+
+    /**
+     * 校验并删除token
+     */
+    public TokenConsumeResult consumeToken(String sessionId, String token) {
+        long start = System.nanoTime();
+        try {
+            TokenConsumeResult result = doConsumeToken(sessionId, token);
+            consumeTimers.get(result).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            consumeErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private TokenConsumeResult doConsumeToken(String sessionId, String token) {
+        if (StringUtils.isEmpty(token)) {
+            return TokenConsumeResult.MISMATCH;
+        }
+        String replayKey = sessionId + ":" + token;
+        if (replayedTokenFilter.isReplayed(replayKey)) {
+            return TokenConsumeResult.REPLAYED;
+        }
+        Long result;
+        List<String> keys = Arrays.asList(TOKEN_KEY_PREFIX + sessionId, resultKey(sessionId, token));
+        String now = String.valueOf(System.currentTimeMillis());
+        if (isFallbackToken(token)) {
+            result = fallbackShard().getRedisTemplate().execute(CONSUME_SCRIPT, keys, token, String.valueOf(inFlightTimeoutMillis), now);
+        } else {
+            BackendCircuitBreaker redisHealth = availableRedis();
+            long start = System.nanoTime();
+            try {
+                result = redisTemplate.execute(CONSUME_SCRIPT, keys, token, String.valueOf(inFlightTimeoutMillis), now);
+            } catch (RuntimeException e) {
+                if (redisHealth != null) {
+                    redisHealth.record(-1, false);
+                }
+                throw e;
+            }
+            if (redisHealth != null) {
+                redisHealth.record(System.nanoTime() - start, true);
+            }
+        }
+        if (result == null || result == 0) {
+            return TokenConsumeResult.MISSING;
+        }
+        if (result < 0) {
+            return TokenConsumeResult.MISMATCH;
+        }
+        if (result == 2) {
+            return TokenConsumeResult.DUPLICATE;
+        }
+        replayedTokenFilter.record(replayKey);
+        return TokenConsumeResult.CONSUMED;
+    }
+
+    /**
+     * 保存第一次执行的结果，消费成功的请求执行完业务后调用
+     */
+    public void complete(String sessionId, String token, IdempotentResponse response) {
+        String key = resultKey(sessionId, token);
+        store(token).execute(COMPLETE_SCRIPT, Collections.singletonList(key), response.serialize(),
+                String.valueOf(resultTtlMillis), RedisLockNotifier.channel(key));
+    }
+
+    /**
+     * 第一次执行失败，删除执行中标记，之后的重复提交按 token 不存在处理
+     */
+    public void abandon(String sessionId, String token) {
+        String key = resultKey(sessionId, token);
+        store(token).execute(COMPLETE_SCRIPT, Collections.singletonList(key), IN_FLIGHT, "0", RedisLockNotifier.channel(key));
+    }
+
+    /**
+     * 重复提交时获取第一次执行的结果，仍在执行中时最多等待 idempotent.result.wait 毫秒
+     *
+     * @return 第一次执行的结果；执行失败、标记已过期或等待超时返回 null
+     */
+    public IdempotentResponse awaitResponse(String sessionId, String token) throws InterruptedException {
+        if (!isFallbackToken(token)) {
+            availableRedis();
+        }
+        RedisTemplate<String, String> store = store(token);
+        RedisLockNotifier notifier = isFallbackToken(token) ? fallbackShard().getNotifier() : redisLockNotifier;
+        String key = resultKey(sessionId, token);
+        long deadline = System.currentTimeMillis() + resultWaitMillis;
+        Semaphore signal = new Semaphore(0);
+        RedisLockNotifier.Listener listener = next -> signal.release();
+        //先注册再读取，避免错过两者之间写入结果的通知
+        notifier.register(key, listener);
+        try {
+            while (true) {
+                String stored = store.opsForValue().get(key);
+                if (stored == null) {
+                    return null;
+                }
+                if (!IN_FLIGHT.equals(stored)) {
+                    return IdempotentResponse.parse(stored);
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                signal.tryAcquire(Math.min(remaining, RECHECK_MILLIS), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            notifier.unregister(key, listener);
+        }
+    }
+
+    private static boolean isFallbackToken(String token) {
+        return token.startsWith(FALLBACK_TOKEN_PREFIX);
+    }
+
+    private RedisTemplate<String, String> store(String token) {
+        return isFallbackToken(token) ? fallbackShard().getRedisTemplate() : redisTemplate;
+    }
+
+    private RedisShards.Shard fallbackShard() {
+        if (fallbackRedis.isEmpty()) {
+            throw new LockUnavailableException("redis 熔断中且未配置 idempotent.fallback-redis，暂时无法发放、校验幂等 token");
+        }
+        return fallbackRedis.getShards().get(0);
+    }
+
+    /**
+     * @return REDIS 后端的熔断器，lock.health.enabled 关闭时返回 null
+     */
+    private BackendCircuitBreaker availableRedis() {
+        if (!healthEnabled) {
+            return null;
+        }
+        BackendCircuitBreaker redisHealth = lockBackendHealth.get(LockBackend.REDIS);
+        if (!redisHealth.allowRequest()) {
+            throw new LockUnavailableException("redis 熔断中，暂时无法校验幂等 token");
+        }
+        return redisHealth;
+    }
+
+    private static String resultKey(String sessionId, String token) {
+        return RESULT_KEY_PREFIX + sessionId + ":" + token;
+    }
+}
@@ -0,0 +1,87 @@
+package com.cny.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author : chennengyuan
+ * 本节点最近消费过的幂等 token，重复提交（双击、客户端重试）直接在进程内识别，不再访问 redis 校验 token
+ * <p>
+ * 按时间分成新旧两代，每代是一个精确的 token 集合，不会误拒首次提交的 token
+ * （不用布隆过滤器：误判会把首次提交当成重复提交直接拒绝，而精确集合的一次哈希查找已经足够快）。
+ * 当前代存在超过半个窗口或写满后轮换，旧的一代整体丢弃，内存有上限，记录至少保留半个窗口。
+ * 这里只是加速识别，是否首次提交仍以 redis 为准。
+ */
+@Component
+public class ReplayedTokenFilter {
+
+    private final long windowMillis;
+
+    private final int maxTokensPerGeneration;
+
+    private volatile Generation current;
+
+    private volatile Generation previous;
+
+    public ReplayedTokenFilter(@Value("${idempotent.replay-filter.window:600000}") long windowMillis,
+                               @Value("${idempotent.replay-filter.max-tokens:100000}") int maxTokensPerGeneration) {
+        this.windowMillis = windowMillis;
+        this.maxTokensPerGeneration = maxTokensPerGeneration;
+        this.current = new Generation(System.currentTimeMillis());
+        this.previous = current;
+    }
+
+    /**
+     * @return token 最近已在本节点被消费过
+     */
+    public boolean isReplayed(String token) {
+        rotateIfNeeded();
+        return current.contains(token) || previous.contains(token);
+    }
+
+    /**
+     * 记录在 redis 中消费成功的 token
+     */
+    public void record(String token) {
+        rotateIfNeeded();
+        current.add(token);
+    }
+
+    private void rotateIfNeeded() {
+        Generation generation = current;
+        long now = System.currentTimeMillis();
+        if (now - generation.createdAt < windowMillis / 2 && generation.tokens.size() < maxTokensPerGeneration) {
+            return;
+        }
+        synchronized (this) {
+            if (current != generation) {
+                return;
+            }
+            //长时间没有请求时当前代已超过一个窗口，其中的记录也一并丢弃
+            previous = now - generation.createdAt >= windowMillis ? new Generation(now) : generation;
+            current = new Generation(now);
+        }
+    }
+
+    private class Generation {
+
+        private final long createdAt;
+
+        private final Set<String> tokens = ConcurrentHashMap.newKeySet();
+
+        Generation(long createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        boolean contains(String token) {
+            return tokens.contains(token);
+        }
+
+        void add(String token) {
+            tokens.add(token);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.cny.service;
+
+/**
+ * @author : chennengyuan
+ * 幂等 token 校验并删除的结果
+ */
+public enum TokenConsumeResult {
+
+    /**
+     * token 匹配，已被当前请求删除
+     */
+    CONSUMED,
+
+    /**
+     * redis 中不存在 token（已被消费或已过期）
+     */
+    MISSING,
+
+    /**
+     * redis 中的 token 与请求携带的不一致
+     */
+    MISMATCH,
+
+    /**
+     * token 已被之前的请求消费，第一次执行的结果（或执行中标记）还在，重复提交应回放该结果
+     */
+    DUPLICATE,
+
+    /**
+     * token 刚在本节点被消费过，不访问 redis 直接识别为重复提交
+     */
+    REPLAYED;
+
+    public boolean isConsumed() {
+        return this == CONSUMED;
+    }
+
+    public boolean isDuplicate() {
+        return this == DUPLICATE || this == REPLAYED;
+    }
+}
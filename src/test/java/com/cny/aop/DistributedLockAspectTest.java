@@ -0,0 +1,183 @@
+package com.cny.aop;
+
+import com.cny.annotation.DistributedLock;
+import com.cny.lock.LockAdmission;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockException;
+import com.cny.lock.LockHandle;
+import com.cny.lock.LockProvider;
+import com.cny.lock.LockRejectedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DistributedLockAspectTest {
+
+    private final RecordingLock lock = new RecordingLock();
+
+    private final OrderService target = new OrderService();
+
+    private final LockAdmission admission = new LockAdmission(1);
+
+    private OrderService orders;
+
+    @BeforeEach
+    void setUp() {
+        DistributedLockAspect aspect = new DistributedLockAspect();
+        ReflectionTestUtils.setField(aspect, "lockProvider", new LockProvider(Collections.singletonList(lock)));
+        ReflectionTestUtils.setField(aspect, "lockAdmission", admission);
+        ReflectionTestUtils.setField(aspect, "lockBusinessExecutor", (Executor) Runnable::run);
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        orders = factory.getProxy();
+    }
+
+    @Test
+    void evaluatesKeyFromArgumentsAndReleasesAfterwards() {
+        assertThat(orders.pay("42", new Item("A"))).isEqualTo("paid");
+        assertThat(orders.pay("43", new Item("B"))).isEqualTo("paid");
+        assertThat(lock.keys).containsExactly("order:42:A", "order:43:B");
+        assertThat(target.invocations).isEqualTo(2);
+        assertThat(lock.released).isEqualTo(2);
+        assertThat(lock.waitTime).isEqualTo(3);
+        assertThat(lock.unit).isEqualTo(TimeUnit.SECONDS);
+    }
+
+    @Test
+    void constantKeyAndReleaseOnException() {
+        assertThatThrownBy(() -> orders.fail()).isInstanceOf(IllegalStateException.class);
+        assertThat(lock.keys).containsExactly("fixed");
+        assertThat(lock.released).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotInvokeMethodWhenLockIsNotAcquired() {
+        lock.grant = false;
+        assertThatThrownBy(() -> orders.pay("42", new Item("A")))
+                .isInstanceOf(LockException.class)
+                .hasMessageContaining("order:42:A");
+        assertThat(target.invocations).isZero();
+        assertThat(lock.released).isZero();
+    }
+
+    @Test
+    void asyncMethodHoldsLockUntilItsFutureCompletes() throws Exception {
+        CompletableFuture<String> result = orders.ship("42");
+        assertThat(target.invocations).isEqualTo(1);
+        assertThat(lock.keys).containsExactly("ship:42");
+        assertThat(lock.released).isZero();
+        assertThat(admission.admitted("ship:42")).isEqualTo(1);
+
+        target.shipment.complete("shipped");
+        assertThat(result.get()).isEqualTo("shipped");
+        assertThat(lock.released).isEqualTo(1);
+        assertThat(admission.admitted("ship:42")).isZero();
+    }
+
+    @Test
+    void asyncMethodIsRejectedWhenTooManyRequestsWaitForTheKey() {
+        CompletableFuture<String> first = orders.ship("42");
+
+        assertThatThrownBy(() -> orders.ship("42").join()).hasCauseInstanceOf(LockRejectedException.class);
+        assertThat(target.invocations).isEqualTo(1);
+        assertThat(lock.keys).containsExactly("ship:42");
+
+        target.shipment.complete("shipped");
+        assertThat(first.join()).isEqualTo("shipped");
+        assertThat(orders.ship("42")).isNotNull();
+        assertThat(lock.keys).containsExactly("ship:42", "ship:42");
+    }
+
+    @Test
+    void asyncMethodFailsWithoutInvocationWhenLockIsNotAcquired() {
+        lock.grant = false;
+        assertThatThrownBy(() -> orders.ship("42").join()).hasCauseInstanceOf(LockException.class);
+        assertThat(target.invocations).isZero();
+        assertThat(admission.admitted("ship:42")).isZero();
+    }
+
+    static class OrderService {
+
+        int invocations;
+
+        final CompletableFuture<String> shipment = new CompletableFuture<>();
+
+        @DistributedLock(key = "'ship:' + #orderId", waitTime = 3)
+        public CompletableFuture<String> ship(String orderId) {
+            invocations++;
+            return shipment;
+        }
+
+        @DistributedLock(key = "'order:' + #orderId + ':' + #p1.sku", waitTime = 3)
+        public String pay(String orderId, Item item) {
+            invocations++;
+            return "paid";
+        }
+
+        @DistributedLock(key = "'fixed'")
+        public String fail() {
+            throw new IllegalStateException("boom");
+        }
+    }
+
+    public static class Item {
+
+        private final String sku;
+
+        Item(String sku) {
+            this.sku = sku;
+        }
+
+        public String getSku() {
+            return sku;
+        }
+    }
+
+    private static class RecordingLock implements com.cny.lock.DistributedLock {
+
+        private final List<String> keys = new ArrayList<>();
+
+        private boolean grant = true;
+
+        private int released;
+
+        private long waitTime;
+
+        private TimeUnit unit;
+
+        @Override
+        public LockBackend backend() {
+            return LockBackend.REDIS;
+        }
+
+        @Override
+        public LockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+            keys.add(key);
+            this.waitTime = waitTime;
+            this.unit = unit;
+            return grant ? new LockHandle(this, key, key, LockHandle.NO_FENCING_TOKEN) : null;
+        }
+
+        @Override
+        public CompletableFuture<LockHandle> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit) {
+            return CompletableFuture.completedFuture(tryLock(key, waitTime, leaseTime, unit));
+        }
+
+        @Override
+        public void unlock(LockHandle handle) {
+            released++;
+        }
+    }
+}
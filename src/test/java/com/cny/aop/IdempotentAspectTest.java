@@ -0,0 +1,139 @@
+package com.cny.aop;
+
+import com.cny.annotation.Idempotent;
+import com.cny.service.IdempotentResponse;
+import com.cny.service.IdempotentTokenService;
+import com.cny.service.TokenConsumeResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotentAspectTest {
+
+    private final InMemoryTokenService tokenService = new InMemoryTokenService();
+
+    private final AddressService target = new AddressService();
+
+    private AddressService addresses;
+
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        IdempotentAspect aspect = new IdempotentAspect();
+        ReflectionTestUtils.setField(aspect, "tokenService", tokenService);
+        ReflectionTestUtils.setField(aspect, "objectMapper", new ObjectMapper());
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        addresses = factory.getProxy();
+        tokenService.tokens.add("t1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void statusOfAResponseEntityIsStoredAndReplayed() {
+        submit();
+        ResponseEntity<String> first = addresses.create();
+        assertThat(tokenService.completed.get("t1").getStatus()).isEqualTo(201);
+        assertThat(tokenService.completed.get("t1").getBody()).isEqualTo("\"created\"");
+
+        submit();
+        ResponseEntity<String> replayed = addresses.create();
+        assertThat(target.invocations).isEqualTo(1);
+        assertThat(replayed.getStatusCodeValue()).isEqualTo(201);
+        assertThat(replayed.getBody()).isEqualTo(first.getBody());
+        assertThat(response.getHeader(IdempotentAspect.REPLAYED_HEADER)).isEqualTo("true");
+    }
+
+    @Test
+    void statusOfResponseStatusIsStoredAndReplayed() {
+        submit();
+        assertThat(addresses.accept()).isEqualTo("accepted");
+        assertThat(tokenService.completed.get("t1").getStatus()).isEqualTo(202);
+
+        submit();
+        assertThat(addresses.accept()).isEqualTo("accepted");
+        assertThat(target.invocations).isEqualTo(1);
+        assertThat(response.getStatus()).isEqualTo(202);
+    }
+
+    private void submit() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setParameter("token", "t1");
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+    }
+
+    static class AddressService {
+
+        int invocations;
+
+        @Idempotent
+        public ResponseEntity<String> create() {
+            invocations++;
+            return ResponseEntity.status(HttpStatus.CREATED).body("created");
+        }
+
+        @Idempotent
+        @ResponseStatus(HttpStatus.ACCEPTED)
+        public String accept() {
+            invocations++;
+            return "accepted";
+        }
+    }
+
+    /**
+     * 只记录 token 是否被消费和第一次的结果，不访问 redis
+     */
+    static class InMemoryTokenService extends IdempotentTokenService {
+
+        final Set<String> tokens = new HashSet<>();
+
+        final Map<String, IdempotentResponse> completed = new HashMap<>();
+
+        @Override
+        public TokenConsumeResult consumeToken(String sessionId, String token) {
+            if (tokens.remove(token)) {
+                return TokenConsumeResult.CONSUMED;
+            }
+            return completed.containsKey(token) ? TokenConsumeResult.DUPLICATE : TokenConsumeResult.MISSING;
+        }
+
+        @Override
+        public void complete(String sessionId, String token, IdempotentResponse response) {
+            completed.put(token, response);
+        }
+
+        @Override
+        public void abandon(String sessionId, String token) {
+            completed.remove(token);
+        }
+
+        @Override
+        public IdempotentResponse awaitResponse(String sessionId, String token) {
+            return completed.get(token);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.cny.benchmark;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockHandle;
+import com.cny.lock.TwoTierDistributedLock;
+import com.cny.support.LocalLockBackends;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author : chennengyuan
+ * 各后端分布式锁 加锁+解锁 的延迟与吞吐对比
+ * <p>
+ * 运行方式：mvn -Pbenchmark test-compile exec:exec
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DistributedLockBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Backends {
+
+        @Param({"REDIS", "REDISSON", "CURATOR", "ZOOKEEPER"})
+        public LockBackend backend;
+
+        /**
+         * 是否在远程锁前面加 JVM 本地锁层
+         */
+        @Param({"false", "true"})
+        public boolean localTier;
+
+        LocalLockBackends backends;
+
+        DistributedLock lock;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            backends = new LocalLockBackends().start();
+            lock = localTier ? new TwoTierDistributedLock(backends.lock(backend), true, 16) : backends.lock(backend);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            backends.close();
+        }
+    }
+
+    /**
+     * 每个线程使用独立的key，测量无竞争时的开销
+     */
+    @State(Scope.Thread)
+    public static class ThreadKey {
+        String key = "bench-" + UUID.randomUUID();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LockHandle uncontended(Backends backends, ThreadKey threadKey) throws Exception {
+        return acquireAndRelease(backends.lock, threadKey.key);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public LockHandle uncontendedParallel(Backends backends, ThreadKey threadKey) throws Exception {
+        return acquireAndRelease(backends.lock, threadKey.key);
+    }
+
+    /**
+     * 所有线程竞争同一个key
+     */
+    @Benchmark
+    @Threads(4)
+    public LockHandle contended(Backends backends) throws Exception {
+        return acquireAndRelease(backends.lock, "bench-contended");
+    }
+
+    private static LockHandle acquireAndRelease(DistributedLock lock, String key) throws Exception {
+        LockHandle handle = lock.tryLock(key, 30, -1, TimeUnit.SECONDS);
+        if (handle == null) {
+            throw new IllegalStateException("等待锁超时 key=" + key);
+        }
+        handle.unlock();
+        return handle;
+    }
+}
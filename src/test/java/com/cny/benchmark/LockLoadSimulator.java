@@ -0,0 +1,234 @@
+package com.cny.benchmark;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockHandle;
+import com.cny.lock.TwoTierDistributedLock;
+import com.cny.support.LocalLockBackends;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author : chennengyuan
+ * 锁竞争压测：threads 个线程在 duration 秒内反复 加锁 -> 持有 hold 微秒 -> 解锁，key 按 Zipf 分布从 keys 个 key 中选择，
+ * 复现热点 key 集中竞争的场景
+ * <p>
+ * 每个后端使用本地替身环境，记录获取锁等待时间的 HdrHistogram 百分位和吞吐，
+ * 同时检查同一个 key 同一时刻只有一个持有者、fencing token 单调递增，结果写入 JSON 报告便于跟踪性能回归；
+ * 发现互斥被破坏时进程以非 0 退出。
+ * <p>
+ * 运行方式：mvn -Pload test-compile exec:exec -Dload.threads=32 -Dload.keys=100 -Dload.skew=1.2
+ */
+public class LockLoadSimulator {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    public static void main(String[] args) throws Exception {
+        Scenario scenario = Scenario.fromSystemProperties();
+        List<Result> results = new ArrayList<>();
+        for (String backend : System.getProperty("load.backends", "REDIS,REDISSON,CURATOR,ZOOKEEPER").split(",")) {
+            try (LocalLockBackends backends = new LocalLockBackends().start()) {
+                DistributedLock lock = backends.lock(LockBackend.valueOf(backend.trim()));
+                if (scenario.localTier) {
+                    lock = new TwoTierDistributedLock(lock, true, 16);
+                }
+                Result result = run(lock, scenario);
+                System.out.println(result.summary());
+                results.add(result);
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("scenario", scenario);
+        report.put("results", results);
+        File file = new File(System.getProperty("load.report", "target/lock-load-report.json"));
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+        System.out.println("报告已写入 " + file.getAbsolutePath());
+
+        if (results.stream().anyMatch(r -> r.violations > 0 || r.fencingRegressions > 0)) {
+            System.exit(1);
+        }
+    }
+
+    public static Result run(DistributedLock lock, Scenario scenario) throws InterruptedException {
+        ZipfKeys keys = new ZipfKeys("load-" + lock.backend().name().toLowerCase() + "-", scenario.keys, scenario.skew);
+        Recorder acquireLatency = new Recorder(MAX_LATENCY_MICROS, 3);
+        LongAdder operations = new LongAdder();
+        LongAdder timeouts = new LongAdder();
+        LongAdder errors = new LongAdder();
+        AtomicLong violations = new AtomicLong();
+        AtomicLong fencingRegressions = new AtomicLong();
+        ConcurrentMap<String, AtomicInteger> holders = new ConcurrentHashMap<>();
+        ConcurrentMap<String, AtomicLong> lastTokens = new ConcurrentHashMap<>();
+
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(scenario.warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(scenario.durationSeconds);
+        CountDownLatch done = new CountDownLatch(scenario.threads);
+        for (int i = 0; i < scenario.threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        boolean measured = now >= warmupEnd;
+                        String key = keys.next();
+                        try {
+                            LockHandle handle = lock.tryLock(key, scenario.waitMillis, -1, TimeUnit.MILLISECONDS);
+                            if (measured) {
+                                acquireLatency.recordValue(Math.min(MAX_LATENCY_MICROS,
+                                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - now)));
+                            }
+                            if (handle == null) {
+                                if (measured) {
+                                    timeouts.increment();
+                                }
+                                continue;
+                            }
+                            AtomicInteger holder = holders.computeIfAbsent(key, k -> new AtomicInteger());
+                            if (holder.incrementAndGet() != 1) {
+                                violations.incrementAndGet();
+                            }
+                            long token = handle.getFencingToken();
+                            if (token != LockHandle.NO_FENCING_TOKEN) {
+                                AtomicLong last = lastTokens.computeIfAbsent(key, k -> new AtomicLong(LockHandle.NO_FENCING_TOKEN));
+                                //本地锁层交接期间多个持有者共用同一个 token，允许相等
+                                if (last.getAndAccumulate(token, Math::max) > token) {
+                                    fencingRegressions.incrementAndGet();
+                                }
+                            }
+                            if (scenario.holdMicros > 0) {
+                                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(scenario.holdMicros));
+                            }
+                            holder.decrementAndGet();
+                            handle.unlock();
+                            if (measured) {
+                                operations.increment();
+                            }
+                        } catch (Exception e) {
+                            if (measured) {
+                                errors.increment();
+                            }
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-" + i);
+            worker.start();
+        }
+        done.await();
+        return new Result(lock.backend(), scenario, acquireLatency.getIntervalHistogram(), operations.sum(), timeouts.sum(),
+                errors.sum(), violations.get(), fencingRegressions.get());
+    }
+
+    /**
+     * 压测参数，均可用 -Dload.xxx 覆盖
+     */
+    @Getter
+    public static class Scenario {
+
+        private final int threads;
+
+        private final int keys;
+
+        /**
+         * Zipf 分布的倾斜度，0 为均匀分布，越大热点越集中
+         */
+        private final double skew;
+
+        private final long holdMicros;
+
+        private final long waitMillis;
+
+        private final int warmupSeconds;
+
+        private final int durationSeconds;
+
+        private final boolean localTier;
+
+        public Scenario(int threads, int keys, double skew, long holdMicros, long waitMillis, int warmupSeconds,
+                        int durationSeconds, boolean localTier) {
+            this.threads = threads;
+            this.keys = keys;
+            this.skew = skew;
+            this.holdMicros = holdMicros;
+            this.waitMillis = waitMillis;
+            this.warmupSeconds = warmupSeconds;
+            this.durationSeconds = durationSeconds;
+            this.localTier = localTier;
+        }
+
+        static Scenario fromSystemProperties() {
+            return new Scenario(Integer.getInteger("load.threads", 16),
+                    Integer.getInteger("load.keys", 100),
+                    Double.parseDouble(System.getProperty("load.skew", "1.1")),
+                    Long.getLong("load.hold-micros", 1000L),
+                    Long.getLong("load.wait-millis", 5000L),
+                    Integer.getInteger("load.warmup", 3),
+                    Integer.getInteger("load.duration", 10),
+                    Boolean.getBoolean("load.local-tier"));
+        }
+    }
+
+    /**
+     * 一个后端的压测结果，延迟单位为微秒
+     */
+    @Getter
+    public static class Result {
+
+        private final LockBackend backend;
+
+        private final long operations;
+
+        private final double throughput;
+
+        private final long timeouts;
+
+        private final long errors;
+
+        private final long violations;
+
+        private final long fencingRegressions;
+
+        private final Map<String, Long> acquireLatencyMicros = new LinkedHashMap<>();
+
+        Result(LockBackend backend, Scenario scenario, Histogram latency, long operations, long timeouts, long errors,
+               long violations, long fencingRegressions) {
+            this.backend = backend;
+            this.operations = operations;
+            this.throughput = operations / (double) scenario.durationSeconds;
+            this.timeouts = timeouts;
+            this.errors = errors;
+            this.violations = violations;
+            this.fencingRegressions = fencingRegressions;
+            acquireLatencyMicros.put("p50", latency.getValueAtPercentile(50));
+            acquireLatencyMicros.put("p90", latency.getValueAtPercentile(90));
+            acquireLatencyMicros.put("p99", latency.getValueAtPercentile(99));
+            acquireLatencyMicros.put("p999", latency.getValueAtPercentile(99.9));
+            acquireLatencyMicros.put("max", latency.getMaxValue());
+        }
+
+        String summary() {
+            return String.format("%-10s ops/s=%.1f timeouts=%d errors=%d violations=%d fencingRegressions=%d acquire(us)=%s",
+                    backend, throughput, timeouts, errors, violations, fencingRegressions, acquireLatencyMicros);
+        }
+    }
+}
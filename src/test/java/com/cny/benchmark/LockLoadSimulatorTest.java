@@ -0,0 +1,39 @@
+package com.cny.benchmark;
+
+import com.cny.lock.LockBackend;
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LockLoadSimulatorTest {
+
+    private static LocalLockBackends backends;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void hotKeysStayMutuallyExclusive(LockBackend backend) throws Exception {
+        LockLoadSimulator.Scenario scenario = new LockLoadSimulator.Scenario(8, 4, 1.2, 200, 5000, 0, 1, false);
+
+        LockLoadSimulator.Result result = LockLoadSimulator.run(backends.lock(backend), scenario);
+
+        assertThat(result.getOperations()).isPositive();
+        assertThat(result.getViolations()).isZero();
+        assertThat(result.getFencingRegressions()).isZero();
+        assertThat(result.getErrors()).isZero();
+        assertThat(result.getAcquireLatencyMicros()).containsKeys("p50", "p99", "max");
+    }
+}
@@ -0,0 +1,40 @@
+package com.cny.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author : chennengyuan
+ * 按 Zipf 分布选择 key：第 k 个 key 被选中的概率与 1/k^skew 成正比，skew 为 0 时均匀分布
+ * <p>
+ * 预先计算累积分布，每次选择一次二分查找
+ */
+public class ZipfKeys {
+
+    private final String[] keys;
+
+    private final double[] cumulative;
+
+    public ZipfKeys(String prefix, int count, double skew) {
+        this.keys = new String[count];
+        this.cumulative = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            keys[i] = prefix + i;
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    public String next() {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        return keys[Math.min(index >= 0 ? index : -index - 1, keys.length - 1)];
+    }
+
+    public int size() {
+        return keys.length;
+    }
+}
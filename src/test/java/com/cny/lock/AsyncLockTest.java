@@ -0,0 +1,110 @@
+package com.cny.lock;
+
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncLockTest {
+
+    private static LocalLockBackends backends;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void waitersAreGrantedWhenTheHolderReleasesAndTimeOutOtherwise(LockBackend backend) throws Exception {
+        DistributedLock lock = backends.lock(backend);
+        String key = "async-" + backend.name().toLowerCase();
+        LockHandle holder = lock.tryLockAsync(key, 1, -1, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        assertThat(holder).isNotNull();
+        assertThat(lock.tryLockAsync(key, 0, -1, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS)).isNull();
+
+        CompletableFuture<LockHandle> waiter = lock.tryLockAsync(key, 10, -1, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        CompletableFuture<LockHandle> timedOut = lock.tryLockAsync(key, 300, -1, TimeUnit.MILLISECONDS);
+        assertThat(timedOut.get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(250));
+        assertThat(waiter).isNotDone();
+
+        holder.unlock();
+        LockHandle granted = waiter.get(5, TimeUnit.SECONDS);
+        assertThat(granted).isNotNull();
+        assertThat(lock.tryLock(key, 0, -1, TimeUnit.SECONDS)).isNull();
+
+        granted.unlock();
+        LockHandle next = lock.tryLock(key, 1, -1, TimeUnit.SECONDS);
+        assertThat(next).isNotNull();
+        next.unlock();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void asyncWaiterIsGrantedWhenASynchronousHolderReleases(LockBackend backend) throws Exception {
+        DistributedLock lock = backends.lock(backend);
+        String key = "async-sync-" + backend.name().toLowerCase();
+        LockHandle holder = lock.tryLock(key, 1, -1, TimeUnit.SECONDS);
+        assertThat(holder).isNotNull();
+
+        CompletableFuture<LockHandle> waiter = lock.tryLockAsync(key, 10, -1, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        assertThat(waiter).isNotDone();
+
+        holder.unlock();
+        LockHandle granted = waiter.get(5, TimeUnit.SECONDS);
+        assertThat(granted).isNotNull();
+        granted.unlock();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void manyAsyncWaitersAreGrantedOneAtATime(LockBackend backend) throws Exception {
+        DistributedLock lock = backends.lock(backend);
+        String key = "async-burst-" + backend.name().toLowerCase();
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<CompletableFuture<Void>> released = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            released.add(done);
+            lock.tryLockAsync(key, 60, -1, TimeUnit.SECONDS).whenComplete((handle, e) -> {
+                if (e != null || handle == null) {
+                    done.completeExceptionally(e != null ? e : new AssertionError("等待超时"));
+                    return;
+                }
+                if (inside.incrementAndGet() != 1) {
+                    overlaps.incrementAndGet();
+                }
+                //在另一个线程上稍后释放，等待期间不占用线程
+                backends.scheduler().schedule(() -> {
+                    inside.decrementAndGet();
+                    try {
+                        handle.unlock();
+                        done.complete(null);
+                    } catch (Exception ex) {
+                        done.completeExceptionally(ex);
+                    }
+                }, 1, TimeUnit.MILLISECONDS);
+            });
+        }
+        CompletableFuture.allOf(released.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        assertThat(overlaps).hasValue(0);
+    }
+}
@@ -0,0 +1,94 @@
+package com.cny.lock;
+
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CombiningLockExecutorTest {
+
+    private static LocalLockBackends backends;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = {"REDIS", "CURATOR"})
+    void batchesQueuedTasksUnderOneAcquisition(LockBackend backend) throws Exception {
+        String key = "combine-" + backend.name().toLowerCase();
+        Set<Long> tokens = ConcurrentHashMap.newKeySet();
+        int[] counter = new int[1];
+        CountDownLatch blocked = new CountDownLatch(1);
+        try (CombiningLockExecutor executor = new CombiningLockExecutor(backends.lock(backend), 5000, 64, 2)) {
+            //第一个任务执行期间其余任务都在本地排队
+            CompletableFuture<Integer> first = executor.submit(key, handle -> {
+                blocked.await();
+                return ++counter[0];
+            });
+            List<CompletableFuture<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(key, handle -> {
+                    tokens.add(handle.getFencingToken());
+                    return ++counter[0];
+                }));
+            }
+            blocked.countDown();
+
+            assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get(10, TimeUnit.SECONDS)).isEqualTo(i + 2);
+            }
+            assertThat(counter[0]).isEqualTo(201);
+            assertThat(tokens).hasSizeLessThanOrEqualTo(5);
+        }
+    }
+
+    @Test
+    void failsQueuedTasksWhenTheLockIsHeldElsewhere() throws Exception {
+        DistributedLock lock = backends.lock(LockBackend.REDIS);
+        LockHandle other = lock.tryLock("combine-held", 0, -1, TimeUnit.SECONDS);
+        try (CombiningLockExecutor executor = new CombiningLockExecutor(lock, 200, 64, 1)) {
+            CompletableFuture<String> result = executor.submit("combine-held", handle -> "done");
+
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(LockException.class);
+            other.unlock();
+            assertThat(executor.submit("combine-held", handle -> "done").get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        }
+    }
+
+    @Test
+    void taskFailureDoesNotAffectTheRestOfTheBatch() throws Exception {
+        try (CombiningLockExecutor executor = new CombiningLockExecutor(backends.lock(LockBackend.REDIS), 5000, 64, 1)) {
+            CompletableFuture<String> failed = executor.submit("combine-failure", handle -> {
+                throw new IllegalStateException("boom");
+            });
+            CompletableFuture<String> succeeded = executor.submit("combine-failure", handle -> "ok");
+
+            assertThat(succeeded.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+            assertThatThrownBy(failed::join).hasCauseInstanceOf(IllegalStateException.class);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.cny.lock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 100000;
+
+    @Test
+    void spreadsKeysEvenly() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes(4), 160);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.get("order:" + i), 1, Integer::sum);
+        }
+        assertThat(counts).hasSize(4);
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10));
+    }
+
+    @Test
+    void addingANodeOnlyMovesKeysToIt() {
+        ConsistentHashRing<String> before = new ConsistentHashRing<>(nodes(4), 160);
+        ConsistentHashRing<String> after = new ConsistentHashRing<>(nodes(5), 160);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "order:" + i;
+            if (!before.get(key).equals(after.get(key))) {
+                assertThat(after.get(key)).isEqualTo("redis-4:6379");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(KEYS / 5 * 7 / 10, KEYS / 5 * 13 / 10);
+    }
+
+    private static Map<String, String> nodes(int count) {
+        Map<String, String> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            nodes.put("redis-" + i + ":6379", "redis-" + i + ":6379");
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,99 @@
+package com.cny.lock;
+
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FencingTokenTest {
+
+    private static LocalLockBackends backends;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void tokensIncreaseWithEveryAcquisition(LockBackend backend) throws Exception {
+        DistributedLock lock = backends.lock(backend);
+        long previous = -1;
+        for (int i = 0; i < 3; i++) {
+            LockHandle sync = lock.tryLock("fence", 1, -1, TimeUnit.SECONDS);
+            assertThat(sync.getFencingToken()).isGreaterThan(previous);
+            sync.unlock();
+            LockHandle async = lock.tryLockAsync("fence", 1, -1, TimeUnit.SECONDS).get();
+            assertThat(async.getFencingToken()).isGreaterThan(sync.getFencingToken());
+            async.unlock();
+            previous = async.getFencingToken();
+        }
+
+        try (LockHandle all = lock.tryLockAll(Arrays.asList("fence", "fence-other"), 1, -1, TimeUnit.SECONDS)) {
+            assertThat(all.getFencingToken("fence")).isGreaterThan(previous);
+            assertThat(all.getFencingToken("fence-other")).isPositive();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void tokensFollowTheOrderOfAcquisitionUnderContention(LockBackend backend) throws Exception {
+        DistributedLock lock = backends.lock(backend);
+        String key = "fence-order-" + backend.name().toLowerCase();
+        List<Long> tokens = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10; j++) {
+                        boolean async = j % 2 == 0;
+                        LockHandle handle = async ? lock.tryLockAsync(key, 10, -1, TimeUnit.SECONDS).get()
+                                : lock.tryLock(key, 10, -1, TimeUnit.SECONDS);
+                        try {
+                            tokens.add(handle.getFencingToken());
+                        } finally {
+                            handle.unlock();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(tokens).hasSize(40).isSorted().doesNotHaveDuplicates();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = {"REDIS", "REDISSON"})
+    void writeLockTokensAreIssuedWhileHeld(LockBackend backend) throws Exception {
+        DistributedReadWriteLock readWriteLock = backends.readWriteLock(backend);
+        LockHandle write = readWriteLock.writeLock().tryLock("fence-rw", 1, -1, TimeUnit.SECONDS);
+        assertThat(write.getFencingToken()).isPositive();
+        write.unlock();
+        LockHandle read = readWriteLock.readLock().tryLock("fence-rw", 1, -1, TimeUnit.SECONDS);
+        assertThat(read.getFencingToken()).isGreaterThan(write.getFencingToken());
+        read.unlock();
+    }
+}
@@ -0,0 +1,108 @@
+package com.cny.lock;
+
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MultiKeyLockTest {
+
+    private static LocalLockBackends backends;
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        executor.shutdownNow();
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void oneHeldKeyLeavesNoneOfTheOthersLockedAfterTheWaitTimesOut(LockBackend backend) throws Exception {
+        DistributedLock lock = backends.lock(backend);
+        String prefix = "multi-" + backend.name().toLowerCase() + "-";
+        List<String> keys = Arrays.asList(prefix + "c", prefix + "a", prefix + "b");
+        LockHandle holder = lock.tryLock(prefix + "b", 0, -1, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        assertThat(lock.tryLockAll(keys, 300, -1, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(250));
+        assertThat(tryOnAnotherThread(lock, prefix + "a")).isTrue();
+        assertThat(tryOnAnotherThread(lock, prefix + "c")).isTrue();
+        if (backend == LockBackend.REDIS) {
+            assertThat(backends.redisTemplate().hasKey(prefix + "a")).isFalse();
+            assertThat(backends.redisTemplate().hasKey(prefix + "c")).isFalse();
+        }
+
+        holder.unlock();
+        try (LockHandle all = lock.tryLockAll(keys, 1, -1, TimeUnit.SECONDS)) {
+            assertThat(all).isNotNull();
+            assertThat(tryOnAnotherThread(lock, prefix + "a")).isFalse();
+            assertThat(tryOnAnotherThread(lock, prefix + "b")).isFalse();
+        }
+        assertThat(tryOnAnotherThread(lock, prefix + "b")).isTrue();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void callersPassingTheSameKeysInOppositeOrderDoNotDeadlock(LockBackend backend) throws Exception {
+        DistributedLock lock = backends.lock(backend);
+        String x = "order-" + backend.name().toLowerCase() + "-x";
+        String y = "order-" + backend.name().toLowerCase() + "-y";
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        Future<?> forward = executor.submit(() -> lockRepeatedly(lock, Arrays.asList(x, y), inside, overlaps));
+        Future<?> backward = executor.submit(() -> lockRepeatedly(lock, Arrays.asList(y, x), inside, overlaps));
+        forward.get(30, TimeUnit.SECONDS);
+        backward.get(30, TimeUnit.SECONDS);
+        assertThat(overlaps).hasValue(0);
+    }
+
+    private static Void lockRepeatedly(DistributedLock lock, List<String> keys, AtomicInteger inside,
+                                       AtomicInteger overlaps) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            LockHandle handle = lock.tryLockAll(keys, 10, -1, TimeUnit.SECONDS);
+            assertThat(handle).isNotNull();
+            try {
+                if (inside.incrementAndGet() != 1) {
+                    overlaps.incrementAndGet();
+                }
+                Thread.sleep(1);
+                inside.decrementAndGet();
+            } finally {
+                handle.unlock();
+            }
+        }
+        return null;
+    }
+
+    private static boolean tryOnAnotherThread(DistributedLock lock, String key) throws Exception {
+        return executor.submit(() -> {
+            LockHandle handle = lock.tryLock(key, 0, -1, TimeUnit.MILLISECONDS);
+            if (handle == null) {
+                return false;
+            }
+            handle.unlock();
+            return true;
+        }).get();
+    }
+}
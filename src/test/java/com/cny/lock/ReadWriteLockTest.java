@@ -0,0 +1,68 @@
+package com.cny.lock;
+
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadWriteLockTest {
+
+    private static LocalLockBackends backends;
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        executor.shutdownNow();
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = {"REDIS", "REDISSON", "CURATOR"})
+    void readersShareAndWritersExclude(LockBackend backend) throws Exception {
+        DistributedReadWriteLock lock = backends.readWriteLock(backend);
+        String key = "rw-" + backend.name().toLowerCase();
+
+        LockHandle read = lock.readLock().tryLock(key, 1, -1, TimeUnit.SECONDS);
+        assertThat(read).isNotNull();
+        assertThat(tryAndRelease(lock.readLock(), key, 1000)).isTrue();
+        assertThat(tryAndRelease(lock.writeLock(), key, 200)).isFalse();
+        read.unlock();
+
+        LockHandle write = lock.writeLock().tryLockAsync(key, 1, -1, TimeUnit.SECONDS).get();
+        assertThat(write).isNotNull();
+        assertThat(tryAndRelease(lock.readLock(), key, 200)).isFalse();
+        assertThat(tryAndRelease(lock.writeLock(), key, 200)).isFalse();
+        write.unlock();
+
+        assertThat(tryAndRelease(lock.readLock(), key, 1000)).isTrue();
+        assertThat(tryAndRelease(lock.writeLock(), key, 1000)).isTrue();
+    }
+
+    /**
+     * 在另一个线程上加锁并立即释放，Curator 的同步锁和线程绑定
+     */
+    private static boolean tryAndRelease(DistributedLock lock, String key, long waitMillis) throws Exception {
+        return executor.submit(() -> {
+            LockHandle handle = lock.tryLock(key, waitMillis, -1, TimeUnit.MILLISECONDS);
+            if (handle == null) {
+                return false;
+            }
+            handle.unlock();
+            return true;
+        }).get();
+    }
+}
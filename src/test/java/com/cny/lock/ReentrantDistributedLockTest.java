@@ -0,0 +1,100 @@
+package com.cny.lock;
+
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReentrantDistributedLockTest {
+
+    private static LocalLockBackends backends;
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        executor.shutdownNow();
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void nestedAcquiresStayLocalUntilTheOutermostRelease(LockBackend backend) throws Exception {
+        ReentrantDistributedLock lock = new ReentrantDistributedLock(backends.lock(backend));
+        String key = "reentrant-" + backend.name().toLowerCase();
+
+        LockHandle outer = lock.tryLock(key, 1, -1, TimeUnit.SECONDS);
+        assertThat(outer).isNotNull();
+        LockHandle inner = lock.tryLock(key, 0, -1, TimeUnit.SECONDS);
+        assertThat(inner).isNotNull();
+        assertThat(inner.getFencingToken()).isEqualTo(outer.getFencingToken());
+        assertThat(lock.getHoldCount(key)).isEqualTo(2);
+
+        inner.unlock();
+        assertThat(lock.getHoldCount(key)).isEqualTo(1);
+        assertThat(tryOnAnotherThread(lock, key)).isFalse();
+
+        outer.unlock();
+        assertThat(lock.getHoldCount(key)).isZero();
+        assertThat(tryOnAnotherThread(lock, key)).isTrue();
+    }
+
+    @Test
+    void threadBoundHandlesStayLockedWhenAnotherThreadTriesToRelease() throws Exception {
+        ReentrantDistributedLock lock = new ReentrantDistributedLock(backends.lock(LockBackend.CURATOR));
+        LockHandle handle = lock.tryLock("reentrant-owner", 0, -1, TimeUnit.SECONDS);
+
+        assertThatThrownBy(() -> executor.submit(handle::unlock).get())
+                .hasCauseInstanceOf(IllegalMonitorStateException.class);
+        assertThat(handle.isReleased()).isFalse();
+        assertThat(tryOnAnotherThread(lock, "reentrant-owner")).isFalse();
+
+        handle.unlock();
+        assertThat(handle.isReleased()).isTrue();
+        assertThat(tryOnAnotherThread(lock, "reentrant-owner")).isTrue();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = {"REDIS", "REDISSON", "ZOOKEEPER"})
+    void handlesOfUnboundBackendsMayBeReleasedByAnotherThread(LockBackend backend) throws Exception {
+        ReentrantDistributedLock lock = new ReentrantDistributedLock(backends.lock(backend));
+        String key = "reentrant-handoff-" + backend.name().toLowerCase();
+        LockHandle handle = lock.tryLock(key, 0, -1, TimeUnit.SECONDS);
+
+        executor.submit(handle::unlock).get();
+        assertThat(handle.isReleased()).isTrue();
+        assertThat(lock.getHoldCount(key)).isZero();
+        assertThat(tryOnAnotherThread(lock, key)).isTrue();
+        //释放后当前线程再次加锁访问后端，而不是沿用已释放的持有记录
+        LockHandle again = lock.tryLock(key, 1, -1, TimeUnit.SECONDS);
+        assertThat(again).isNotNull();
+        assertThat(again.getFencingToken()).isGreaterThan(handle.getFencingToken());
+        again.unlock();
+    }
+
+    private static boolean tryOnAnotherThread(DistributedLock lock, String key) throws Exception {
+        return executor.submit(() -> {
+            LockHandle handle = lock.tryLock(key, 200, -1, TimeUnit.MILLISECONDS);
+            if (handle == null) {
+                return false;
+            }
+            handle.unlock();
+            return true;
+        }).get();
+    }
+}
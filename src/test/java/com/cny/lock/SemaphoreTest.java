@@ -0,0 +1,95 @@
+package com.cny.lock;
+
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemaphoreTest {
+
+    private static LocalLockBackends backends;
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        executor.shutdownNow();
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = {"REDIS", "REDISSON", "CURATOR"})
+    void grantsAtMostMaxPermits(LockBackend backend) throws Exception {
+        DistributedSemaphore semaphore = backends.semaphore(backend);
+        String key = "sem-" + backend.name().toLowerCase();
+
+        PermitHandle two = semaphore.tryAcquire(key, 2, 3, 1, -1, TimeUnit.SECONDS);
+        assertThat(two).isNotNull();
+        assertThat(semaphore.tryAcquire(key, 2, 3, 200, -1, TimeUnit.MILLISECONDS)).isNull();
+        PermitHandle one = semaphore.tryAcquire(key, 1, 3, 1, -1, TimeUnit.SECONDS);
+        assertThat(one).isNotNull();
+
+        Future<PermitHandle> waiting = executor.submit(() -> semaphore.tryAcquire(key, 2, 3, 5, -1, TimeUnit.SECONDS));
+        two.release();
+        PermitHandle granted = waiting.get();
+        assertThat(granted).isNotNull();
+        granted.release();
+        one.release();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = {"REDIS", "REDISSON", "CURATOR"})
+    void boundsConcurrency(LockBackend backend) throws Exception {
+        DistributedSemaphore semaphore = backends.semaphore(backend);
+        String key = "sem-concurrency-" + backend.name().toLowerCase();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            workers.add(executor.submit(() -> {
+                for (int j = 0; j < 5; j++) {
+                    try (PermitHandle permit = semaphore.tryAcquire(key, 1, 3, 10, -1, TimeUnit.SECONDS)) {
+                        assertThat(permit).isNotNull();
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        Thread.sleep(20);
+                        running.decrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        assertThat(maxRunning.get()).isBetween(2, 3);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = {"REDIS", "REDISSON"})
+    void expiredPermitsReturnToThePool(LockBackend backend) throws Exception {
+        DistributedSemaphore semaphore = backends.semaphore(backend);
+        String key = "sem-lease-" + backend.name().toLowerCase();
+
+        assertThat(semaphore.tryAcquire(key, 2, 2, 1, 300, TimeUnit.MILLISECONDS)).isNotNull();
+        PermitHandle afterExpiry = semaphore.tryAcquire(key, 2, 2, 3, -1, TimeUnit.SECONDS);
+        assertThat(afterExpiry).isNotNull();
+        afterExpiry.release();
+    }
+}
@@ -0,0 +1,92 @@
+package com.cny.lock;
+
+import com.cny.config.RedisShards;
+import com.cny.lock.redis.RedisDistributedLock;
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.embedded.RedisServer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardedDistributedLockTest {
+
+    private final List<RedisServer> servers = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    private RedisShards shards;
+
+    private ConsistentHashRing<DistributedLock> ring;
+
+    private ShardedDistributedLock lock;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            int port = LocalLockBackends.freePort();
+            RedisServer server = new RedisServer(port);
+            server.start();
+            servers.add(server);
+            addresses.add("127.0.0.1:" + port);
+        }
+        shards = new RedisShards(addresses, 30000);
+        ring = shards.ring(shard -> new RedisDistributedLock(shard.getRedisTemplate(), shard.getWatchdog(),
+                shard.getNotifier(), scheduler), 160);
+        lock = new ShardedDistributedLock(ring);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        shards.close();
+        servers.forEach(RedisServer::stop);
+    }
+
+    @Test
+    void routesEachKeyToOneShard() throws Exception {
+        int[] perShard = new int[2];
+        for (int i = 0; i < 20; i++) {
+            String key = "shard-" + i;
+            try (LockHandle handle = lock.tryLock(key, 1, -1, TimeUnit.SECONDS)) {
+                assertThat(handle).isNotNull();
+                assertThat(lock.tryLock(key, 0, -1, TimeUnit.SECONDS)).isNull();
+                assertThat(handle.getLock()).isSameAs(ring.get(key));
+                perShard[ring.nodes().indexOf(handle.getLock())]++;
+            }
+        }
+        assertThat(perShard[0]).isPositive();
+        assertThat(perShard[1]).isPositive();
+    }
+
+    @Test
+    void locksKeysAcrossShards() throws Exception {
+        //分片地址带随机端口，按哈希环挑选 key 直到两个分片都被覆盖
+        List<String> keys = new ArrayList<>();
+        Set<DistributedLock> covered = new HashSet<>();
+        for (int i = 0; keys.size() < 5 || covered.size() < 2; i++) {
+            String key = "shard-" + i;
+            keys.add(key);
+            covered.add(ring.get(key));
+        }
+        try (LockHandle all = lock.tryLockAll(keys, 1, -1, TimeUnit.SECONDS)) {
+            assertThat(all).isNotNull();
+            for (String key : keys) {
+                assertThat(lock.tryLock(key, 0, -1, TimeUnit.SECONDS)).isNull();
+            }
+        }
+        for (String key : keys) {
+            lock.tryLock(key, 0, -1, TimeUnit.SECONDS).unlock();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.cny.lock;
+
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TwoTierDistributedLockTest {
+
+    private static LocalLockBackends backends;
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        executor.shutdownNow();
+        backends.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LockBackend.class, names = "REDLOCK", mode = EnumSource.Mode.EXCLUDE)
+    void threadsOfTwoNodesNeverHoldTheLockTogether(LockBackend backend) throws Exception {
+        //两个实例模拟两个节点，各自有本地锁层，共用同一个远程锁
+        DistributedLock first = new TwoTierDistributedLock(backends.lock(backend), true, 3);
+        DistributedLock second = new TwoTierDistributedLock(backends.lock(backend), true, 3);
+        String key = "two-tier-" + backend.name().toLowerCase();
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger granted = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            DistributedLock lock = i % 2 == 0 ? first : second;
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 10; j++) {
+                    LockHandle handle = lock.tryLock(key, 10, -1, TimeUnit.SECONDS);
+                    assertThat(handle).isNotNull();
+                    try {
+                        if (inside.incrementAndGet() != 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        granted.incrementAndGet();
+                        inside.decrementAndGet();
+                    } finally {
+                        handle.unlock();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        assertThat(granted).hasValue(80);
+        assertThat(overlaps).hasValue(0);
+
+        //所有本地持有者释放后远程锁也已释放
+        assertThat(remoteIsFree(backend, key)).isTrue();
+    }
+
+    @Test
+    void remoteLockIsHandedToLocalWaitersAtMostMaxHandoffsTimes() throws Exception {
+        DistributedLock lock = new TwoTierDistributedLock(backends.lock(LockBackend.REDIS), true, 1);
+        LockHandle first = lock.tryLock("two-tier-handoff", 0, -1, TimeUnit.SECONDS);
+        String firstOwner = remoteOwner("two-tier-handoff");
+        Future<LockHandle> second = waitLocally(lock, "two-tier-handoff");
+        first.unlock();
+        LockHandle secondHandle = second.get(5, TimeUnit.SECONDS);
+        //远程锁没有释放过，持有者不变
+        assertThat(remoteOwner("two-tier-handoff")).isEqualTo(firstOwner);
+
+        Future<LockHandle> third = waitLocally(lock, "two-tier-handoff");
+        secondHandle.unlock();
+        LockHandle thirdHandle = third.get(5, TimeUnit.SECONDS);
+        //达到交接上限后远程锁重新获取
+        assertThat(remoteOwner("two-tier-handoff")).isNotNull().isNotEqualTo(firstOwner);
+
+        thirdHandle.unlock();
+        assertThat(backends.redisTemplate().hasKey("two-tier-handoff")).isFalse();
+    }
+
+    @Test
+    void leasedLocksAreNotHandedOff() throws Exception {
+        DistributedLock lock = new TwoTierDistributedLock(backends.lock(LockBackend.REDIS), true, 3);
+        LockHandle first = lock.tryLock("two-tier-leased", 0, 30, TimeUnit.SECONDS);
+        String firstOwner = remoteOwner("two-tier-leased");
+        Future<LockHandle> second = waitLocally(lock, "two-tier-leased");
+        first.unlock();
+        LockHandle secondHandle = second.get(5, TimeUnit.SECONDS);
+        assertThat(remoteOwner("two-tier-leased")).isNotNull().isNotEqualTo(firstOwner);
+        secondHandle.unlock();
+    }
+
+    @Test
+    void localWaiterThatTimesOutDoesNotTouchTheRemoteLock() throws Exception {
+        DistributedLock lock = new TwoTierDistributedLock(backends.lock(LockBackend.REDIS), true, 3);
+        LockHandle holder = lock.tryLock("two-tier-timeout", 0, -1, TimeUnit.SECONDS);
+        assertThat(lock.tryLock("two-tier-timeout", 200, -1, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(remoteOwner("two-tier-timeout")).isNotNull();
+
+        holder.unlock();
+        assertThat(backends.redisTemplate().hasKey("two-tier-timeout")).isFalse();
+    }
+
+    private static Future<LockHandle> waitLocally(DistributedLock lock, String key) throws InterruptedException {
+        Future<LockHandle> waiter = executor.submit(() -> lock.tryLock(key, 5, -1, TimeUnit.SECONDS));
+        //等待线程进入本地队列
+        Thread.sleep(200);
+        assertThat(waiter).isNotDone();
+        return waiter;
+    }
+
+    private static String remoteOwner(String key) {
+        return backends.redisTemplate().opsForValue().get(key);
+    }
+
+    private static boolean remoteIsFree(LockBackend backend, String key) throws Exception {
+        return executor.submit(() -> {
+            LockHandle handle = backends.lock(backend).tryLock(key, 1, -1, TimeUnit.SECONDS);
+            if (handle == null) {
+                return false;
+            }
+            handle.unlock();
+            return true;
+        }).get();
+    }
+}
@@ -0,0 +1,63 @@
+package com.cny.lock.health;
+
+import com.cny.lock.LockBackend;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BackendCircuitBreakerTest {
+
+    @Test
+    void binsCoverTheirValuesWithinAQuarterOfAPowerOfTwo() {
+        for (long micros : new long[]{0, 1, 3, 4, 7, 8, 100, 999, 1000, 123456, 60_000_000L}) {
+            long upper = BackendCircuitBreaker.upperBound(BackendCircuitBreaker.bin(micros));
+            assertThat(upper).isGreaterThanOrEqualTo(micros);
+            assertThat(upper).isLessThanOrEqualTo(Math.max(micros + micros / 4, 3));
+        }
+    }
+
+    @Test
+    void tripsWhenP99ExceedsTheThresholdAndRecoversAfterSuccessfulTrials() throws Exception {
+        BackendCircuitBreaker breaker = new BackendCircuitBreaker(LockBackend.ZOOKEEPER, 100, 0.5, 10, 10000, 200, 2);
+        for (int i = 0; i < 95; i++) {
+            breaker.record(TimeUnit.MILLISECONDS.toNanos(2), true);
+        }
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.snapshot().getP99Micros()).isLessThan(3000);
+
+        Thread.sleep(120);
+        for (int i = 0; i < 5; i++) {
+            breaker.record(TimeUnit.SECONDS.toNanos(3), true);
+        }
+        assertThat(breaker.getState()).isEqualTo(BackendCircuitBreaker.State.OPEN);
+        assertThat(breaker.allowRequest()).isFalse();
+
+        Thread.sleep(250);
+        assertThat(breaker.allowRequest()).isFalse();
+        assertThat(breaker.getState()).isEqualTo(BackendCircuitBreaker.State.HALF_OPEN);
+        breaker.record(TimeUnit.MILLISECONDS.toNanos(1), true);
+        breaker.record(TimeUnit.MILLISECONDS.toNanos(1), true);
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.snapshot().getCalls()).isZero();
+    }
+
+    @Test
+    void tripsOnErrorRateAndAFailedTrialReopens() throws Exception {
+        BackendCircuitBreaker breaker = new BackendCircuitBreaker(LockBackend.REDIS, 1000, 0.5, 4, 10000, 100, 1);
+        breaker.record(-1, true);
+        breaker.record(-1, false);
+        breaker.record(-1, false);
+        assertThat(breaker.allowRequest()).isTrue();
+
+        Thread.sleep(120);
+        breaker.record(-1, false);
+        assertThat(breaker.allowRequest()).isFalse();
+
+        Thread.sleep(150);
+        assertThat(breaker.allowRequest()).isFalse();
+        breaker.record(TimeUnit.MILLISECONDS.toNanos(1), false);
+        assertThat(breaker.getState()).isEqualTo(BackendCircuitBreaker.State.OPEN);
+    }
+}
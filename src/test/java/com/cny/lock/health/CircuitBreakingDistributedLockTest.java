@@ -0,0 +1,101 @@
+package com.cny.lock.health;
+
+import com.cny.config.RedisShards;
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockHandle;
+import com.cny.lock.LockUnavailableException;
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakingDistributedLockTest {
+
+    private static LocalLockBackends backends;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        backends.close();
+    }
+
+    @Test
+    void openCircuitFailsFastWithoutTouchingAnyBackend() throws Exception {
+        LockBackendHealth health = new LockBackendHealth(1000, 0.3, 1, 10000, 60000, 1);
+        BackendCircuitBreaker breaker = health.get(LockBackend.CURATOR);
+        DistributedLock lock = new CircuitBreakingDistributedLock(backends.lock(LockBackend.CURATOR), breaker);
+
+        try (LockHandle handle = lock.tryLock("breaker-closed", 1, -1, TimeUnit.SECONDS)) {
+            assertThat(handle).isNotNull();
+            assertThat(handle.getBackend()).isEqualTo(LockBackend.CURATOR);
+        }
+
+        //两次评估至少间隔 100ms
+        Thread.sleep(120);
+        breaker.record(-1, false);
+        assertThat(breaker.getState()).isEqualTo(BackendCircuitBreaker.State.OPEN);
+        assertThat(health.health().getStatus().getCode()).isEqualTo("OUT_OF_SERVICE");
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> lock.tryLock("breaker-open", 60, -1, TimeUnit.SECONDS))
+                .isInstanceOf(LockUnavailableException.class);
+        assertThatThrownBy(() -> lock.tryLockAll(Arrays.asList("breaker-a", "breaker-b"), 60, -1, TimeUnit.SECONDS))
+                .isInstanceOf(LockUnavailableException.class);
+        assertThat(lock.tryLockAsync("breaker-open", 60, -1, TimeUnit.SECONDS))
+                .isCompletedExceptionally();
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void probesRecordHealthyRoundTripsAndFailedPings() throws Exception {
+        LockBackendHealth health = new LockBackendHealth(1000, 0.5, 5, 10000, 60000, 1);
+        //第一次建立 Lettuce 连接需要数秒，先建好连接，只统计稳定后的探测
+        RedisShards.ping(backends.redisTemplate());
+        backends.zkSessionManager().session("/").exists("/", false);
+        Map<LockBackend, BackendHealthProbe.Ping> pings = new EnumMap<>(LockBackend.class);
+        pings.put(LockBackend.REDIS, () -> RedisShards.ping(backends.redisTemplate()));
+        pings.put(LockBackend.ZOOKEEPER, () -> backends.zkSessionManager().session("/").exists("/", false));
+        pings.put(LockBackend.CURATOR, () -> {
+            throw new IllegalStateException("down");
+        });
+        try (BackendHealthProbe ignored = new BackendHealthProbe(pings, health, backends.scheduler(), 50, 1000)) {
+            Thread.sleep(1000);
+        }
+        for (LockBackend backend : Arrays.asList(LockBackend.REDIS, LockBackend.ZOOKEEPER)) {
+            BackendCircuitBreaker.Snapshot snapshot = health.get(backend).snapshot();
+            assertThat(snapshot.getCalls()).as(backend.name()).isGreaterThanOrEqualTo(5);
+            assertThat(snapshot.getErrors()).isZero();
+            assertThat(snapshot.getState()).isEqualTo(BackendCircuitBreaker.State.CLOSED);
+        }
+        assertThat(health.get(LockBackend.CURATOR).getState()).isEqualTo(BackendCircuitBreaker.State.OPEN);
+        assertThat(health.health().getStatus().getCode()).isEqualTo("OUT_OF_SERVICE");
+    }
+
+    @Test
+    void aPingThatHangsPastTheTimeoutCountsAsAFailureEveryRound() throws Exception {
+        LockBackendHealth health = new LockBackendHealth(1000, 0.5, 3, 10000, 60000, 1);
+        CountDownLatch hang = new CountDownLatch(1);
+        Map<LockBackend, BackendHealthProbe.Ping> pings = new EnumMap<>(LockBackend.class);
+        pings.put(LockBackend.REDISSON, hang::await);
+        try (BackendHealthProbe ignored = new BackendHealthProbe(pings, health, backends.scheduler(), 50, 100)) {
+            Thread.sleep(800);
+            assertThat(health.get(LockBackend.REDISSON).getState()).isEqualTo(BackendCircuitBreaker.State.OPEN);
+        } finally {
+            hang.countDown();
+        }
+    }
+}
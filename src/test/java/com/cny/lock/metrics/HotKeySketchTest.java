@@ -0,0 +1,44 @@
+package com.cny.lock.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotKeySketchTest {
+
+    @Test
+    void keepsHeavyHittersAmongHighCardinalityKeys() {
+        HotKeySketch sketch = new HotKeySketch(64, 4);
+        for (int i = 0; i < 100000; i++) {
+            sketch.offer(UUID.randomUUID().toString());
+            if (i % 10 == 0) {
+                sketch.offer("hot-1");
+            }
+            if (i % 20 == 0) {
+                sketch.offer("hot-2");
+            }
+        }
+
+        List<HotKeySketch.HotKey> top = sketch.top(2);
+        assertThat(top.stream().map(HotKeySketch.HotKey::getKey).collect(Collectors.toList())).containsExactly("hot-1", "hot-2");
+        assertThat(top.get(0).getCount()).isGreaterThanOrEqualTo(10000);
+        assertThat(top.get(0).getCount() - top.get(0).getError()).isLessThanOrEqualTo(10000);
+        assertThat(sketch.top(1000)).hasSize(64);
+    }
+
+    @Test
+    void classifiesHighCardinalityKeys() {
+        assertThat(KeyClassifier.normalize("USER_ADDRESS_LOCK_" + UUID.randomUUID())).isEqualTo("USER_ADDRESS_LOCK_{id}");
+        assertThat(KeyClassifier.normalize("order:12345:pay")).isEqualTo("order:{id}:pay");
+        assertThat(KeyClassifier.normalize("/user")).isEqualTo("/user");
+        assertThat(KeyClassifier.normalize("session:ABCDEFABCDEF")).isEqualTo("session:{id}");
+
+        KeyClassifier classifier = new KeyClassifier(1);
+        assertThat(classifier.classify("/user")).isEqualTo("/user");
+        assertThat(classifier.classify("/order")).isEqualTo(KeyClassifier.OTHER);
+    }
+}
@@ -0,0 +1,52 @@
+package com.cny.lock.metrics;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockHandle;
+import com.cny.support.LocalLockBackends;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstrumentedDistributedLockTest {
+
+    private LocalLockBackends backends;
+
+    private SimpleMeterRegistry registry;
+
+    private LockMetrics metrics;
+
+    private DistributedLock lock;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        registry = new SimpleMeterRegistry();
+        metrics = new LockMetrics(registry, new KeyClassifier(10), new HotKeySketch(16, 1));
+        lock = new InstrumentedDistributedLock(backends.lock(LockBackend.REDIS), metrics);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        backends.close();
+    }
+
+    @Test
+    void recordsWaitHoldAndTimeoutByKeyClass() throws Exception {
+        LockHandle handle = lock.tryLock("order:1", 0, -1, TimeUnit.SECONDS);
+        assertThat(handle.getFencingToken()).isPositive();
+        assertThat(lock.tryLock("order:1", 50, -1, TimeUnit.MILLISECONDS)).isNull();
+        handle.unlock();
+        lock.tryLockAsync("order:2", 0, -1, TimeUnit.SECONDS).get().unlock();
+
+        assertThat(registry.get("lock.acquire").tags("backend", "redis", "key", "order:{id}", "outcome", "acquired").timer().count()).isEqualTo(2);
+        assertThat(registry.get("lock.acquire").tags("outcome", "timeout").timer().count()).isEqualTo(1);
+        assertThat(registry.get("lock.hold").tags("key", "order:{id}").timer().count()).isEqualTo(2);
+        assertThat(metrics.getHotKeys().top(1).get(0).getKey()).isEqualTo("redis:order:1");
+    }
+}
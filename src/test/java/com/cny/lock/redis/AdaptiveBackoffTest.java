@@ -0,0 +1,74 @@
+package com.cny.lock.redis;
+
+import com.cny.lock.LockHandle;
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveBackoffTest {
+
+    @Test
+    void spinsOnlyForShortHolds() {
+        AdaptiveBackoff backoff = new AdaptiveBackoff(500, 2, 5, 1000, 100);
+        backoff.recordHold("short", TimeUnit.MICROSECONDS.toNanos(100));
+        backoff.recordHold("long", TimeUnit.MILLISECONDS.toNanos(80));
+
+        AdaptiveBackoff.Sequence spinning = backoff.sequence("short", true);
+        assertThat(spinning.nextDelayMillis()).isZero();
+        assertThat(spinning.nextDelayMillis()).isZero();
+        assertThat(spinning.nextDelayMillis()).isEqualTo(5);
+
+        assertThat(backoff.sequence("short", false).nextDelayMillis()).isEqualTo(5);
+        assertThat(backoff.sequence("long", true).nextDelayMillis()).isEqualTo(80);
+    }
+
+    @Test
+    void jitteredDelaysStayWithinBaseAndCap() {
+        AdaptiveBackoff backoff = new AdaptiveBackoff(500, 0, 5, 200, 100);
+        backoff.recordHold("key", TimeUnit.MILLISECONDS.toNanos(50));
+
+        AdaptiveBackoff.Sequence sequence = backoff.sequence("key", true);
+        assertThat(sequence.nextDelayMillis()).isEqualTo(50);
+        for (int i = 0; i < 100; i++) {
+            assertThat(sequence.nextDelayMillis()).isBetween(5L, 200L);
+        }
+    }
+
+    @Test
+    void estimateFollowsRecentHoldsAndFallsBackToAllKeys() {
+        AdaptiveBackoff backoff = new AdaptiveBackoff(500, 0, 5, 1000, 2);
+        assertThat(backoff.estimatedHoldMicros("key")).isEqualTo(-1);
+
+        for (int i = 0; i < 50; i++) {
+            backoff.recordHold("key", TimeUnit.MILLISECONDS.toNanos(i < 25 ? 100 : 10));
+        }
+        assertThat(backoff.estimatedHoldMicros("key")).isBetween(10000L, 11000L);
+        assertThat(backoff.estimatedHoldMicros("unknown")).isBetween(10000L, 11000L);
+    }
+
+    @Test
+    void waiterRecoversFromLostReleaseMessage() throws Exception {
+        try (LocalLockBackends backends = new LocalLockBackends().start()) {
+            RedisTemplate<String, String> redisTemplate = backends.redisTemplate();
+            RedisDistributedLock lock = new RedisDistributedLock(redisTemplate, backends.watchdog(), backends.notifier(),
+                    backends.scheduler(), false, 5000, new AdaptiveBackoff(500, 3, 5, 200, 100));
+            //其他节点持有 30 秒租约，释放时没有发布消息
+            redisTemplate.opsForValue().set("lost-release", "other", 30, TimeUnit.SECONDS);
+
+            CompletableFuture<LockHandle> waiter = lock.tryLockAsync("lost-release", 10, -1, TimeUnit.SECONDS);
+            Thread.sleep(300);
+            long released = System.nanoTime();
+            redisTemplate.delete("lost-release");
+
+            LockHandle handle = waiter.get(5, TimeUnit.SECONDS);
+            assertThat(handle).isNotNull();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - released)).isLessThan(1000);
+            handle.unlock();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.cny.lock.redis;
+
+import com.cny.lock.LockHandle;
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisDistributedLockTest {
+
+    private static LocalLockBackends backends;
+
+    private static RedisTemplate<String, String> redis;
+
+    private static RedisDistributedLock lock;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        redis = backends.redisTemplate();
+        lock = new RedisDistributedLock(redis, backends.watchdog(), backends.notifier(), backends.scheduler(), true, 1000);
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        backends.close();
+    }
+
+    @Test
+    void waitersAreGrantedTheLockInArrivalOrder() throws Exception {
+        LockHandle holder = lock.tryLock("fifo", 0, -1, TimeUnit.SECONDS);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<?>> waiters = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            waiters.add(lock.tryLockAsync("fifo", 10, -1, TimeUnit.SECONDS).thenAccept(handle -> {
+                order.add(n);
+                handle.unlock();
+            }));
+            awaitCondition(() -> queueSize("fifo") == n + 1);
+        }
+
+        holder.unlock();
+        CompletableFuture.allOf(waiters.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertThat(order).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertThat(queueSize("fifo")).isZero();
+        assertThat(redis.opsForZSet().zCard(RedisDistributedLock.queueTimeoutKey("fifo"))).isZero();
+    }
+
+    @Test
+    void aWaiterThatTimesOutLeavesTheQueueWithoutBlockingTheOnesBehind() throws Exception {
+        LockHandle holder = lock.tryLock("give-up", 0, -1, TimeUnit.SECONDS);
+        CompletableFuture<LockHandle> impatient = lock.tryLockAsync("give-up", 300, -1, TimeUnit.MILLISECONDS);
+        awaitCondition(() -> queueSize("give-up") == 1);
+        String impatientEntry = redis.opsForList().index(RedisDistributedLock.queueKey("give-up"), 0);
+        CompletableFuture<LockHandle> patient = lock.tryLockAsync("give-up", 10, -1, TimeUnit.SECONDS);
+        awaitCondition(() -> queueSize("give-up") == 2);
+
+        assertThat(impatient.get(2, TimeUnit.SECONDS)).isNull();
+        awaitCondition(() -> queueSize("give-up") == 1);
+        assertThat(redis.opsForList().range(RedisDistributedLock.queueKey("give-up"), 0, -1)).doesNotContain(impatientEntry);
+        assertThat(redis.opsForZSet().score(RedisDistributedLock.queueTimeoutKey("give-up"), impatientEntry)).isNull();
+        assertThat(redis.opsForZSet().zCard(RedisDistributedLock.queueTimeoutKey("give-up"))).isEqualTo(1);
+
+        long released = System.nanoTime();
+        holder.unlock();
+        LockHandle handle = patient.get(2, TimeUnit.SECONDS);
+        assertThat(handle).isNotNull();
+        //队头直接收到释放消息，不等兜底重试
+        assertThat(System.nanoTime() - released).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+        handle.unlock();
+    }
+
+    @Test
+    void aCrashedWaiterAtTheHeadIsPurgedOnceItsEntryExpires() throws Exception {
+        LockHandle holder = lock.tryLock("crashed", 0, -1, TimeUnit.SECONDS);
+        //宕机节点留下的排队记录：不会再刷新，也不会主动出队
+        redis.opsForList().rightPush(RedisDistributedLock.queueKey("crashed"), "crashed-node");
+        redis.opsForZSet().add(RedisDistributedLock.queueTimeoutKey("crashed"), "crashed-node", System.currentTimeMillis() + 200);
+        CompletableFuture<LockHandle> waiter = lock.tryLockAsync("crashed", 10, -1, TimeUnit.SECONDS);
+        awaitCondition(() -> queueSize("crashed") == 2);
+
+        holder.unlock();
+        LockHandle handle = waiter.get(3, TimeUnit.SECONDS);
+        assertThat(handle).isNotNull();
+        assertThat(queueSize("crashed")).isZero();
+        handle.unlock();
+    }
+
+    private static long queueSize(String key) {
+        Long size = redis.opsForList().size(RedisDistributedLock.queueKey(key));
+        return size == null ? 0 : size;
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("等待条件超时").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
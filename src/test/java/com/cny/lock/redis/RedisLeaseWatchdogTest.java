@@ -0,0 +1,86 @@
+package com.cny.lock.redis;
+
+import com.cny.lock.LockHandle;
+import com.cny.lock.PermitHandle;
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisLeaseWatchdogTest {
+
+    private LocalLockBackends backends;
+
+    private RedisTemplate<String, String> redisTemplate;
+
+    private RedisLeaseWatchdog watchdog;
+
+    private RedisDistributedLock lock;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        redisTemplate = backends.redisTemplate();
+        watchdog = new RedisLeaseWatchdog(redisTemplate, 300);
+        lock = new RedisDistributedLock(redisTemplate, watchdog, backends.notifier(), backends.scheduler());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        watchdog.close();
+        backends.close();
+    }
+
+    @Test
+    void renewsLeaseUntilUnlocked() throws Exception {
+        LockHandle handle = lock.tryLock("watchdog-key", 0, -1, TimeUnit.MILLISECONDS);
+        assertThat(handle).isNotNull();
+
+        Thread.sleep(1000);
+        assertThat(redisTemplate.opsForValue().get("watchdog-key")).isEqualTo(handle.<String>owner());
+
+        handle.unlock();
+        assertThat(redisTemplate.hasKey("watchdog-key")).isFalse();
+        assertThat(watchdog.size()).isZero();
+    }
+
+    @Test
+    void fixedLeaseIsNotRenewed() throws Exception {
+        LockHandle handle = lock.tryLock("fixed-key", 0, 300, TimeUnit.MILLISECONDS);
+        assertThat(handle).isNotNull();
+        assertThat(watchdog.size()).isZero();
+
+        Thread.sleep(600);
+        assertThat(redisTemplate.hasKey("fixed-key")).isFalse();
+    }
+
+    @Test
+    void renewsSemaphorePermitsUntilReleased() throws Exception {
+        RedisDistributedSemaphore semaphore = new RedisDistributedSemaphore(redisTemplate, watchdog, backends.notifier());
+        PermitHandle permit = semaphore.tryAcquire("watchdog-sem", 1, 1, 0, -1, TimeUnit.MILLISECONDS);
+        assertThat(permit).isNotNull();
+
+        Thread.sleep(1000);
+        assertThat(semaphore.tryAcquire("watchdog-sem", 1, 1, 0, -1, TimeUnit.MILLISECONDS)).isNull();
+
+        permit.release();
+        assertThat(watchdog.size()).isZero();
+        assertThat(semaphore.tryAcquire("watchdog-sem", 1, 1, 0, -1, TimeUnit.MILLISECONDS)).isNotNull();
+    }
+
+    @Test
+    void stopsRenewingLostLease() throws Exception {
+        LockHandle handle = lock.tryLock("lost-key", 0, -1, TimeUnit.MILLISECONDS);
+        assertThat(handle).isNotNull();
+
+        redisTemplate.opsForValue().set("lost-key", "other-owner");
+        watchdog.renewAll();
+
+        assertThat(watchdog.size()).isZero();
+    }
+}
@@ -0,0 +1,89 @@
+package com.cny.lock.redis;
+
+import com.cny.config.RedisShards;
+import com.cny.lock.LockHandle;
+import com.cny.support.LocalLockBackends;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedlockDistributedLockTest {
+
+    private final List<RedisServer> servers = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    private RedisShards nodes;
+
+    private List<RedisTemplate<String, String>> templates;
+
+    private RedlockDistributedLock lock;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int port = LocalLockBackends.freePort();
+            RedisServer server = new RedisServer(port);
+            server.start();
+            servers.add(server);
+            addresses.add("127.0.0.1:" + port);
+        }
+        nodes = new RedisShards(addresses, 30000);
+        templates = nodes.getShards().stream().map(RedisShards.Shard::getRedisTemplate).collect(Collectors.toList());
+        lock = new RedlockDistributedLock(templates, scheduler, 30000, 200, 20, 6);
+    }
+
+    @AfterEach
+    void tearDown() {
+        lock.close();
+        scheduler.shutdownNow();
+        nodes.close();
+        servers.forEach(RedisServer::stop);
+    }
+
+    @Test
+    void excludesOtherClientsAndReleasesEveryNode() throws Exception {
+        LockHandle handle = lock.tryLock("redlock", 1, -1, TimeUnit.SECONDS);
+        assertThat(handle).isNotNull();
+        assertThat(RedlockDistributedLock.remainingValidityMillis(handle)).isBetween(20000L, 30000L);
+        assertThat(lock.tryLock("redlock", 100, -1, TimeUnit.MILLISECONDS)).isNull();
+
+        handle.unlock();
+        assertThat(templates).allSatisfy(node -> assertThat(node.hasKey("lock:redlock:redlock")).isFalse());
+        lock.tryLock("redlock", 0, -1, TimeUnit.SECONDS).unlock();
+    }
+
+    @Test
+    void acquiresWithOneNodeDown() throws Exception {
+        servers.get(0).stop();
+
+        LockHandle handle = lock.tryLock("redlock-degraded", 1, -1, TimeUnit.SECONDS);
+        assertThat(handle).isNotNull();
+        assertThat(templates.get(1).hasKey("lock:redlock:redlock-degraded")).isTrue();
+        assertThat(templates.get(2).hasKey("lock:redlock:redlock-degraded")).isTrue();
+        handle.unlock();
+    }
+
+    @Test
+    void failsWithoutQuorumAndReleasesPartialLocks() throws Exception {
+        //另一个客户端已经持有两个节点，只能拿到剩下一个节点
+        templates.get(0).opsForValue().set("lock:redlock:redlock-minority", "other", 30, TimeUnit.SECONDS);
+        templates.get(1).opsForValue().set("lock:redlock:redlock-minority", "other", 30, TimeUnit.SECONDS);
+
+        assertThat(lock.tryLock("redlock-minority", 200, -1, TimeUnit.MILLISECONDS)).isNull();
+        Thread.sleep(100);
+        assertThat(templates.get(2).hasKey("lock:redlock:redlock-minority")).isFalse();
+    }
+}
@@ -0,0 +1,68 @@
+package com.cny.lock.zookeeper;
+
+import com.cny.lock.LockHandle;
+import com.cny.support.LocalLockBackends;
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZkLockPathReaperTest {
+
+    private LocalLockBackends backends;
+
+    private CuratorFramework client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        client = backends.curatorFramework();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        backends.close();
+    }
+
+    @Test
+    void removesIdleParentsAndKeepsHeldOnes() throws Exception {
+        ZkSessionManager sessionManager = backends.zkSessionManager();
+        try (ZkLockPathReaper reaper = new ZkLockPathReaper(ZooKeeperDistributedLock.pathDeleter(sessionManager), 0, 60000, 100)) {
+            ZooKeeperDistributedLock lock = new ZooKeeperDistributedLock(sessionManager, backends.scheduler(), reaper);
+            lock.tryLock("reap-idle", 1, -1, TimeUnit.SECONDS).unlock();
+            LockHandle held = lock.tryLock("reap-held", 1, -1, TimeUnit.SECONDS);
+            assertThat(reaper.size()).isEqualTo(2);
+
+            reaper.reap();
+            assertThat(client.checkExists().forPath("/reap-idle")).isNull();
+            assertThat(client.checkExists().forPath("/reap-held")).isNotNull();
+            assertThat(reaper.size()).isEqualTo(1);
+
+            held.unlock();
+            reaper.reap();
+            assertThat(client.checkExists().forPath("/reap-held")).isNull();
+            assertThat(reaper.size()).isZero();
+        }
+    }
+
+    @Test
+    void limitsDeletesPerRun() throws Exception {
+        try (ZkLockPathReaper reaper = new ZkLockPathReaper(CuratorDistributedLock.pathDeleter(client), 0, 60000, 2)) {
+            CuratorDistributedLock lock = new CuratorDistributedLock(client, backends.scheduler(), reaper);
+            for (int i = 0; i < 5; i++) {
+                lock.tryLock("reap-" + i, 1, -1, TimeUnit.SECONDS).unlock();
+            }
+
+            reaper.reap();
+            assertThat(reaper.size()).isEqualTo(3);
+            reaper.reap();
+            reaper.reap();
+            assertThat(reaper.size()).isZero();
+            assertThat(client.getChildren().forPath("/")).noneMatch(child -> child.startsWith("reap-"));
+        }
+    }
+}
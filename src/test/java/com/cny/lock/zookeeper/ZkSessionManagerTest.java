@@ -0,0 +1,141 @@
+package com.cny.lock.zookeeper;
+
+import com.cny.lock.LockHandle;
+import com.cny.support.LocalLockBackends;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZkSessionManagerTest {
+
+    private LocalLockBackends backends;
+
+    private ZkSessionManager sessionManager;
+
+    private ZooKeeperDistributedLock lock;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        sessionManager = new ZkSessionManager(backends.zookeeperConnectString(), 30000, 2);
+        lock = new ZooKeeperDistributedLock(sessionManager, backends.scheduler());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sessionManager.close();
+        backends.close();
+    }
+
+    @Test
+    void locksShareThePooledSessions() throws Exception {
+        Set<Long> sessionIds = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            String key = "pooled-" + i;
+            assertThat(sessionManager.session(key)).isSameAs(sessionManager.session(key));
+            sessionIds.add(sessionManager.session(key).getSessionId());
+            LockHandle handle = lock.tryLock(key, 1, -1, TimeUnit.SECONDS);
+            assertThat(handle).isNotNull();
+            handle.unlock();
+            assertThat(backends.curatorFramework().getChildren().forPath("/" + key)).isEmpty();
+        }
+        assertThat(sessionIds).hasSize(2);
+    }
+
+    @Test
+    void waitersOnASharedSessionAreGrantedOneAtATime() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger granted = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10; j++) {
+                        LockHandle handle = lock.tryLock("pooled-contended", 10, -1, TimeUnit.SECONDS);
+                        assertThat(handle).isNotNull();
+                        try {
+                            if (inside.incrementAndGet() != 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            granted.incrementAndGet();
+                            inside.decrementAndGet();
+                        } finally {
+                            handle.unlock();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(granted).hasValue(80);
+        assertThat(overlaps).hasValue(0);
+    }
+
+    @Test
+    void expiredSessionIsRebuilt() throws Exception {
+        //会话超时取服务端允许的最小值，过期后的重连和 Expired 事件都能很快到达
+        try (ZkSessionManager shortSessions = new ZkSessionManager(backends.zookeeperConnectString(), 6000, 1)) {
+            ZooKeeperDistributedLock shortLock = new ZooKeeperDistributedLock(shortSessions, backends.scheduler());
+            ZooKeeper expired = shortSessions.session("pooled-expired");
+            assertThat(shortLock.tryLock("pooled-expired", 1, -1, TimeUnit.SECONDS)).isNotNull();
+            CountDownLatch expiredEvent = new CountDownLatch(1);
+            expired.exists("/pooled-expired", event -> {
+                if (event.getState() == Watcher.Event.KeeperState.Expired) {
+                    expiredEvent.countDown();
+                }
+            });
+
+            expireSession(expired);
+            assertThat(expiredEvent.await(30, TimeUnit.SECONDS)).isTrue();
+
+            //重建完成前 session() 等待新会话，不会返回已过期的会话
+            ZooKeeper rebuilt = shortSessions.session("pooled-expired");
+            assertThat(rebuilt).isNotSameAs(expired);
+            assertThat(rebuilt.getSessionId()).isNotEqualTo(expired.getSessionId());
+
+            //过期会话的临时节点已被删除，锁可以重新获取
+            LockHandle handle = shortLock.tryLock("pooled-expired", 1, -1, TimeUnit.SECONDS);
+            assertThat(handle).isNotNull();
+            handle.unlock();
+        }
+    }
+
+    /**
+     * 用同一个会话 id 和密码连上后关闭，服务端立即让该会话过期，原客户端重连时收到 Expired
+     */
+    private void expireSession(ZooKeeper client) throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper duplicate = new ZooKeeper(backends.zookeeperConnectString(), 6000, event -> {
+            if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+            }
+        }, client.getSessionId(), client.getSessionPasswd());
+        try {
+            assertThat(connected.await(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            duplicate.close();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.cny.service;
+
+import com.cny.config.RedisShards;
+import com.cny.lock.LockBackend;
+import com.cny.lock.LockUnavailableException;
+import com.cny.lock.health.LockBackendHealth;
+import com.cny.support.LocalLockBackends;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotentTokenServiceTest {
+
+    private LocalLockBackends backends;
+
+    private IdempotentTokenService tokenService;
+
+    private LockBackendHealth lockBackendHealth;
+
+    private RedisShards fallbackRedis;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backends = new LocalLockBackends().start();
+        tokenService = new IdempotentTokenService();
+        ReflectionTestUtils.setField(tokenService, "redisTemplate", backends.redisTemplate());
+        ReflectionTestUtils.setField(tokenService, "replayedTokenFilter", new ReplayedTokenFilter(60000, 1000));
+        ReflectionTestUtils.setField(tokenService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenService, "redisLockNotifier", backends.notifier());
+        lockBackendHealth = new LockBackendHealth(1000, 0.5, 1, 10000, 60000, 3);
+        ReflectionTestUtils.setField(tokenService, "lockBackendHealth", lockBackendHealth);
+        ReflectionTestUtils.setField(tokenService, "healthEnabled", true);
+        fallbackRedis = new RedisShards(Collections.emptyList(), 30000);
+        ReflectionTestUtils.setField(tokenService, "fallbackRedis", fallbackRedis);
+        ReflectionTestUtils.setField(tokenService, "tokenTtlMillis", 60000L);
+        ReflectionTestUtils.setField(tokenService, "maxTokensPerSession", 3);
+        ReflectionTestUtils.setField(tokenService, "maxBatch", 10);
+        ReflectionTestUtils.setField(tokenService, "inFlightTimeoutMillis", 60000L);
+        ReflectionTestUtils.setField(tokenService, "resultTtlMillis", 60000L);
+        ReflectionTestUtils.setField(tokenService, "resultWaitMillis", 5000L);
+        tokenService.initMetrics();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        fallbackRedis.close();
+        backends.close();
+    }
+
+    @Test
+    void duplicateWaitsForTheFirstExecutionAndReplaysItsResult() throws Exception {
+        String token = tokenService.issueToken("s1");
+        assertThat(tokenService.consumeToken("s1", token)).isEqualTo(TokenConsumeResult.CONSUMED);
+        assertThat(tokenService.consumeToken("s1", token).isDuplicate()).isTrue();
+
+        CompletableFuture<IdempotentResponse> duplicate = CompletableFuture.supplyAsync(() -> {
+            try {
+                return tokenService.awaitResponse("s1", token);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(duplicate).isNotDone();
+
+        tokenService.complete("s1", token, new IdempotentResponse(201, "{\"id\":7}"));
+        IdempotentResponse replayed = duplicate.get(2, TimeUnit.SECONDS);
+        assertThat(replayed.getStatus()).isEqualTo(201);
+        assertThat(replayed.getBody()).isEqualTo("{\"id\":7}");
+        assertThat(tokenService.awaitResponse("s1", token).getBody()).isEqualTo("{\"id\":7}");
+    }
+
+    @Test
+    void duplicateOfAFailedExecutionIsNotReplayed() throws Exception {
+        String token = tokenService.issueToken("s2");
+        assertThat(tokenService.consumeToken("s2", token)).isEqualTo(TokenConsumeResult.CONSUMED);
+
+        tokenService.abandon("s2", token);
+        assertThat(tokenService.awaitResponse("s2", token)).isNull();
+    }
+
+    @Test
+    void duplicateWithAnOldTokenIsRecognisedAfterANewTokenIsIssued() throws Exception {
+        String first = tokenService.issueToken("s3");
+        assertThat(tokenService.consumeToken("s3", first)).isEqualTo(TokenConsumeResult.CONSUMED);
+        tokenService.complete("s3", first, new IdempotentResponse(200, "\"success\""));
+        String second = tokenService.issueToken("s3");
+
+        //另一个节点收到的重复提交，本地过滤器里没有记录
+        ReflectionTestUtils.setField(tokenService, "replayedTokenFilter", new ReplayedTokenFilter(60000, 1000));
+        assertThat(tokenService.consumeToken("s3", first)).isEqualTo(TokenConsumeResult.DUPLICATE);
+        assertThat(tokenService.consumeToken("s3", "unknown")).isEqualTo(TokenConsumeResult.MISMATCH);
+        assertThat(tokenService.consumeToken("s3", second)).isEqualTo(TokenConsumeResult.CONSUMED);
+    }
+
+    @Test
+    void tokensIssuedTogetherAreConsumedIndependentlyAndTheOldestAreEvicted() {
+        List<String> tokens = tokenService.issueTokens("s4", 2);
+        assertThat(tokens).hasSize(2).doesNotHaveDuplicates();
+        String third = tokenService.issueToken("s4");
+
+        assertThat(tokenService.consumeToken("s4", tokens.get(1))).isEqualTo(TokenConsumeResult.CONSUMED);
+        assertThat(tokenService.consumeToken("s4", third)).isEqualTo(TokenConsumeResult.CONSUMED);
+        assertThat(tokenService.consumeToken("s4", tokens.get(0))).isEqualTo(TokenConsumeResult.CONSUMED);
+        assertThat(tokenService.consumeToken("s4", "unknown")).isEqualTo(TokenConsumeResult.MISSING);
+
+        //超过每个会话的上限时淘汰最早发放的
+        List<String> more = tokenService.issueTokens("s5", 4);
+        assertThat(tokenService.consumeToken("s5", more.get(0))).isEqualTo(TokenConsumeResult.MISMATCH);
+        assertThat(tokenService.consumeToken("s5", more.get(3))).isEqualTo(TokenConsumeResult.CONSUMED);
+
+        assertThatThrownBy(() -> tokenService.issueTokens("s5", 11)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void expiredTokensAreNotConsumed() throws Exception {
+        ReflectionTestUtils.setField(tokenService, "tokenTtlMillis", 100L);
+        String token = tokenService.issueToken("s6");
+        Thread.sleep(150);
+        assertThat(tokenService.consumeToken("s6", token)).isEqualTo(TokenConsumeResult.MISSING);
+    }
+
+    @Test
+    void concurrentSubmissionsOfOneTokenConsumeItExactlyOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (int round = 0; round < 20; round++) {
+                String token = tokenService.issueToken("s8");
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<TokenConsumeResult>> results = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return tokenService.consumeToken("s8", token);
+                    }));
+                }
+                start.countDown();
+                int consumed = 0;
+                for (Future<TokenConsumeResult> result : results) {
+                    TokenConsumeResult consumeResult = result.get(5, TimeUnit.SECONDS);
+                    if (consumeResult.isConsumed()) {
+                        consumed++;
+                    } else {
+                        assertThat(consumeResult.isDuplicate()).isTrue();
+                    }
+                }
+                assertThat(consumed).isEqualTo(1);
+                tokenService.complete("s8", token, new IdempotentResponse(200, "\"success\""));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void whileRedisIsDegradedNewTokensAreIssuedAndCheckedOnTheFallback() throws Exception {
+        String issuedBefore = tokenService.issueToken("s7");
+        openRedisCircuit();
+        assertThatThrownBy(() -> tokenService.issueToken("s7")).isInstanceOf(LockUnavailableException.class);
+
+        RedisServer server = new RedisServer(LocalLockBackends.freePort());
+        server.start();
+        try {
+            fallbackRedis = new RedisShards(Collections.singletonList("127.0.0.1:" + server.ports().get(0)), 30000);
+            ReflectionTestUtils.setField(tokenService, "fallbackRedis", fallbackRedis);
+
+            String token = tokenService.issueToken("s7");
+            assertThat(token).startsWith("f-");
+            assertThat(backends.redisTemplate().opsForZSet().score("USER_ADDRESS_TOKENS_s7", token)).isNull();
+            assertThat(tokenService.consumeToken("s7", token)).isEqualTo(TokenConsumeResult.CONSUMED);
+            tokenService.complete("s7", token, new IdempotentResponse(200, "\"success\""));
+            ReflectionTestUtils.setField(tokenService, "replayedTokenFilter", new ReplayedTokenFilter(60000, 1000));
+            assertThat(tokenService.consumeToken("s7", token)).isEqualTo(TokenConsumeResult.DUPLICATE);
+            assertThat(tokenService.awaitResponse("s7", token).getBody()).isEqualTo("\"success\"");
+
+            //熔断前发放的 token 只在主 redis 上，快速失败
+            assertThatThrownBy(() -> tokenService.consumeToken("s7", issuedBefore)).isInstanceOf(LockUnavailableException.class);
+        } finally {
+            fallbackRedis.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    void withoutHealthChecksAnOpenCircuitIsIgnored() throws Exception {
+        ReflectionTestUtils.setField(tokenService, "healthEnabled", false);
+        openRedisCircuit();
+        String token = tokenService.issueToken("s8");
+        assertThat(token).doesNotStartWith("f-");
+        assertThat(tokenService.consumeToken("s8", token)).isEqualTo(TokenConsumeResult.CONSUMED);
+        assertThat(lockBackendHealth.get(LockBackend.REDIS).snapshot().getCalls()).isEqualTo(1);
+    }
+
+    private void openRedisCircuit() throws InterruptedException {
+        //两次评估至少间隔 100ms
+        Thread.sleep(120);
+        lockBackendHealth.get(LockBackend.REDIS).record(-1, false);
+        assertThat(lockBackendHealth.get(LockBackend.REDIS).allowRequest()).isFalse();
+    }
+}
@@ -0,0 +1,46 @@
+package com.cny.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplayedTokenFilterTest {
+
+    @Test
+    void rejectsOnlyRecordedTokens() {
+        ReplayedTokenFilter filter = new ReplayedTokenFilter(60000, 1000);
+        for (int i = 0; i < 1000; i++) {
+            filter.record("session:" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.isReplayed("session:" + i)).isTrue();
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertThat(filter.isReplayed(UUID.randomUUID().toString())).isFalse();
+        }
+    }
+
+    @Test
+    void forgetsTokensAfterTwoRotations() {
+        ReplayedTokenFilter filter = new ReplayedTokenFilter(60000, 2);
+        filter.record("a");
+        filter.record("b");
+        filter.record("c");
+        assertThat(filter.isReplayed("a")).isTrue();
+
+        filter.record("d");
+        filter.record("e");
+        assertThat(filter.isReplayed("a")).isFalse();
+        assertThat(filter.isReplayed("e")).isTrue();
+    }
+
+    @Test
+    void forgetsTokensAfterWindow() throws InterruptedException {
+        ReplayedTokenFilter filter = new ReplayedTokenFilter(100, 1000);
+        filter.record("a");
+        Thread.sleep(150);
+        assertThat(filter.isReplayed("a")).isFalse();
+    }
+}
@@ -0,0 +1,221 @@
+package com.cny.support;
+
+import com.cny.lock.DistributedLock;
+import com.cny.lock.DistributedReadWriteLock;
+import com.cny.lock.DistributedSemaphore;
+import com.cny.lock.LockBackend;
+import com.cny.lock.redis.RedisDistributedLock;
+import com.cny.lock.redis.RedisDistributedSemaphore;
+import com.cny.lock.redis.RedisLeaseWatchdog;
+import com.cny.lock.redis.RedisLockNotifier;
+import com.cny.lock.redis.RedisReadWriteLock;
+import com.cny.lock.redisson.RedissonDistributedLock;
+import com.cny.lock.redisson.RedissonDistributedSemaphore;
+import com.cny.lock.redisson.RedissonReadWriteLock;
+import com.cny.lock.zookeeper.CuratorDistributedLock;
+import com.cny.lock.zookeeper.CuratorDistributedSemaphore;
+import com.cny.lock.zookeeper.CuratorReadWriteLock;
+import com.cny.lock.zookeeper.ZkSessionManager;
+import com.cny.lock.zookeeper.ZooKeeperDistributedLock;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * @author : chennengyuan
+ * 本地替身环境：Curator TestingServer + 内嵌 Redis，供基准测试和压测使用
+ */
+public class LocalLockBackends implements AutoCloseable {
+
+    private TestingServer zookeeperServer;
+    private RedisServer redisServer;
+    private int redisPort;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate<String, String> redisTemplate;
+    private RedissonClient redissonClient;
+    private CuratorFramework curatorFramework;
+    private ZkSessionManager zkSessionManager;
+    private RedisLeaseWatchdog watchdog;
+    private RedisLockNotifier notifier;
+    private RedisMessageListenerContainer listenerContainer;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    public LocalLockBackends start() throws Exception {
+        zookeeperServer = new TestingServer(true);
+        redisPort = freePort();
+        redisServer = new RedisServer(redisPort);
+        redisServer.start();
+        return this;
+    }
+
+    public String zookeeperConnectString() {
+        return zookeeperServer.getConnectString();
+    }
+
+    public int redisPort() {
+        return redisPort;
+    }
+
+    public LettuceConnectionFactory connectionFactory() {
+        if (connectionFactory == null) {
+            connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redisPort));
+            connectionFactory.afterPropertiesSet();
+        }
+        return connectionFactory;
+    }
+
+    public RedisTemplate<String, String> redisTemplate() {
+        if (redisTemplate == null) {
+            redisTemplate = newRedisTemplate(connectionFactory());
+        }
+        return redisTemplate;
+    }
+
+    public RedisLeaseWatchdog watchdog() {
+        if (watchdog == null) {
+            watchdog = new RedisLeaseWatchdog(redisTemplate(), 30000);
+        }
+        return watchdog;
+    }
+
+    public ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    public RedisLockNotifier notifier() {
+        if (notifier == null) {
+            notifier = new RedisLockNotifier();
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(connectionFactory());
+            listenerContainer.addMessageListener(notifier, RedisLockNotifier.TOPIC);
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+        }
+        return notifier;
+    }
+
+    public RedissonClient redissonClient() {
+        if (redissonClient == null) {
+            Config config = new Config();
+            config.useSingleServer().setAddress("redis://127.0.0.1:" + redisPort);
+            redissonClient = Redisson.create(config);
+        }
+        return redissonClient;
+    }
+
+    public CuratorFramework curatorFramework() {
+        if (curatorFramework == null) {
+            curatorFramework = CuratorFrameworkFactory.newClient(zookeeperConnectString(), new ExponentialBackoffRetry(1000, 3));
+            curatorFramework.start();
+        }
+        return curatorFramework;
+    }
+
+    public ZkSessionManager zkSessionManager() throws IOException {
+        if (zkSessionManager == null) {
+            zkSessionManager = new ZkSessionManager(zookeeperConnectString(), 30000, 1);
+        }
+        return zkSessionManager;
+    }
+
+    public DistributedLock lock(LockBackend backend) throws IOException {
+        switch (backend) {
+            case REDIS:
+                return new RedisDistributedLock(redisTemplate(), watchdog(), notifier(), scheduler);
+            case REDISSON:
+                return new RedissonDistributedLock(redissonClient());
+            case CURATOR:
+                return new CuratorDistributedLock(curatorFramework(), scheduler);
+            case ZOOKEEPER:
+                return new ZooKeeperDistributedLock(zkSessionManager(), scheduler);
+            default:
+                throw new IllegalArgumentException("未知后端：" + backend);
+        }
+    }
+
+    public DistributedReadWriteLock readWriteLock(LockBackend backend) {
+        switch (backend) {
+            case REDIS:
+                return new RedisReadWriteLock(redisTemplate(), watchdog(), notifier(), scheduler, 5000);
+            case REDISSON:
+                return new RedissonReadWriteLock(redissonClient());
+            case CURATOR:
+                return new CuratorReadWriteLock(curatorFramework(), scheduler, null);
+            default:
+                throw new IllegalArgumentException("不支持读写锁的后端：" + backend);
+        }
+    }
+
+    public DistributedSemaphore semaphore(LockBackend backend) {
+        switch (backend) {
+            case REDIS:
+                return new RedisDistributedSemaphore(redisTemplate(), watchdog(), notifier());
+            case REDISSON:
+                return new RedissonDistributedSemaphore(redissonClient(), scheduler);
+            case CURATOR:
+                return new CuratorDistributedSemaphore(curatorFramework());
+            default:
+                throw new IllegalArgumentException("不支持信号量的后端：" + backend);
+        }
+    }
+
+    public static RedisTemplate<String, String> newRedisTemplate(LettuceConnectionFactory connectionFactory) {
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new StringRedisSerializer());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    public static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        scheduler.shutdownNow();
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+        if (watchdog != null) {
+            watchdog.close();
+        }
+        if (zkSessionManager != null) {
+            zkSessionManager.close();
+        }
+        if (curatorFramework != null) {
+            curatorFramework.close();
+        }
+        if (redissonClient != null) {
+            redissonClient.shutdown();
+        }
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+        if (zookeeperServer != null) {
+            zookeeperServer.close();
+        }
+    }
+}